@@ -0,0 +1,79 @@
+/**
+ * An axis-aligned rectangle in world coordinates that contains a fractal, given by its
+ * smallest and largest coordinates.
+ * 
+ * @param minX The smallest x-coordinate
+ * @param minY The smallest y-coordinate
+ * @param maxX The largest x-coordinate
+ * @param maxY The largest y-coordinate
+ * @author Ethan Hunt
+ */
+public record Bounds(double minX, double minY, double maxX, double maxY) {
+
+  /**
+   * Returns the smallest bounds containing every point.
+   * 
+   * @param points The points, at least one
+   * @return The bounds of the points
+   */
+  public static Bounds of(Point... points) {
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (Point point : points) {
+      minX = Math.min(minX, point.getX());
+      minY = Math.min(minY, point.getY());
+      maxX = Math.max(maxX, point.getX());
+      maxY = Math.max(maxY, point.getY());
+    }
+    return new Bounds(minX, minY, maxX, maxY);
+  }
+
+  /**
+   * Returns the smallest bounds containing these bounds and a point.
+   * 
+   * @param x The x-coordinate of the point
+   * @param y The y-coordinate of the point
+   * @return The grown bounds
+   */
+  public Bounds include(double x, double y) {
+    return new Bounds(Math.min(minX, x), Math.min(minY, y), Math.max(maxX, x), Math.max(maxY, y));
+  }
+
+  /**
+   * Returns the width of the bounds.
+   * 
+   * @return maxX - minX
+   */
+  public double width() {
+    return maxX - minX;
+  }
+
+  /**
+   * Returns the height of the bounds.
+   * 
+   * @return maxY - minY
+   */
+  public double height() {
+    return maxY - minY;
+  }
+
+  /**
+   * Returns the x-coordinate of the middle of the bounds.
+   * 
+   * @return The center's x-coordinate
+   */
+  public double centerX() {
+    return (minX + maxX) / 2;
+  }
+
+  /**
+   * Returns the y-coordinate of the middle of the bounds.
+   * 
+   * @return The center's y-coordinate
+   */
+  public double centerY() {
+    return (minY + maxY) / 2;
+  }
+}
@@ -0,0 +1,75 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fills a rectangle fractal into a framebuffer pixel by pixel with CarpetRasterizer.
+ * The cost grows with the number of pixels and levels, not with the 8^n cells.
+ *
+ * @author Ethan Hunt
+ */
+public class CarpetRasterEngine implements FractalEngine {
+
+  /** The approximate time to test one pixel against one level on one thread, in nanoseconds */
+  private static final long NANOS_PER_PIXEL_LEVEL = 4;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "carpet-raster"
+   */
+  @Override
+  public String getName() {
+    return "carpet-raster";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Raster-direct, parallel and filled
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.RASTER_DIRECT, Capability.PARALLEL, Capability.FILLED);
+  }
+
+  /**
+   * Supports rectangle fractals drawn into a framebuffer.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.RASTER && fractal instanceof RectangleFractal<?>;
+  }
+
+  /**
+   * Estimates the cost from the number of pixels and levels.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    long pixels = (long) request.view().width() * request.view().height();
+    int threads = Runtime.getRuntime().availableProcessors();
+    return pixels * (fractal.getNumLevels() + 1) * NANOS_PER_PIXEL_LEVEL / threads;
+  }
+
+  /**
+   * Fills the fractal's cells into the request's framebuffer.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return Always true, since filling does not depend on the deadline
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    CarpetRasterizer.rasterize((RectangleFractal<?>) fractal, request.view(), request.pixels(), request.argb());
+    return true;
+  }
+}
@@ -0,0 +1,75 @@
+import java.util.stream.IntStream;
+
+/**
+ * Fills a framebuffer with a RectangleFractal directly, one pixel at a time, without
+ * generating any geometry. A point of the base rectangle belongs to the carpet unless,
+ * at some level, both base-3 digits of its position are 1 (the removed center piece),
+ * so each pixel is decided in O(levels). Rows are filled in parallel, and the cost
+ * grows with the number of pixels rather than with the 8^n rectangles of the fractal.
+ * 
+ * @author Ethan Hunt
+ */
+public class CarpetRasterizer {
+
+  /**
+   * Fills the pixels covered by a carpet with a color. Pixels outside the carpet are left
+   * unchanged. Levels finer than a pixel are not examined, so any number of levels renders
+   * in the same time. The base rectangle is used without rotation, as RectangleFractal
+   * does from level 1 on.
+   * 
+   * @param fractal The carpet to rasterize
+   * @param view The mapping from world coordinates to pixels
+   * @param pixels The framebuffer, view.width() * view.height() ARGB pixels in row order
+   * @param argb The fill color as ARGB
+   */
+  public static void rasterize(RectangleFractal<?> fractal, Viewport view, int[] pixels, int argb) {
+    Rectangle rec = (Rectangle) fractal.getBaseShape();
+    double left = rec.getCenter().getX() - rec.getWidth() / 2;
+    double bottom = rec.getCenter().getY() - rec.getHeight() / 2;
+    double width = rec.getWidth();
+    double height = rec.getHeight();
+
+    // Stop once a level's cells are smaller than a pixel; deeper digits only add aliasing
+    double largestSide = Math.max(width, height) * view.scale();
+    int visibleLevels = (int) Math.ceil(Math.log(Math.max(largestSide, 1)) / Math.log(3)) + 1;
+    int levels = Math.min(fractal.getNumLevels(), visibleLevels);
+
+    IntStream.range(0, view.height()).parallel().forEach(row -> {
+      double v = (view.toWorldY(row + 0.5) - bottom) / height;
+      if (v < 0 || v >= 1) {
+        return;
+      }
+      int offset = row * view.width();
+      for (int column = 0; column < view.width(); column++) {
+        double u = (view.toWorldX(column + 0.5) - left) / width;
+        if (u >= 0 && u < 1 && isInCarpet(u, v, levels)) {
+          pixels[offset + column] = argb;
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns whether a point of the unit square belongs to the carpet, by walking the
+   * base-3 digits of its coordinates.
+   * 
+   * @param u The horizontal position in the base rectangle, from 0 to 1
+   * @param v The vertical position in the base rectangle, from 0 to 1
+   * @param levels The number of digits to examine
+   * @return True if no examined digit pair is (1, 1)
+   */
+  static boolean isInCarpet(double u, double v, int levels) {
+    for (int level = 0; level < levels; level++) {
+      u *= 3;
+      v *= 3;
+      int digitU = (int) u;
+      int digitV = (int) v;
+      if (digitU == 1 && digitV == 1) {
+        return false;
+      }
+      u -= digitU;
+      v -= digitV;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,81 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Renders the limit set of a triangle fractal into a framebuffer with ChaosGameRenderer.
+ * The cost depends only on the number of samples and pixels, so it suits deep fractals.
+ *
+ * @author Ethan Hunt
+ */
+public class ChaosGameEngine implements FractalEngine {
+
+  /** The approximate time to take one sample on one thread, in nanoseconds */
+  private static final long NANOS_PER_SAMPLE = 15;
+
+  /** The approximate time to merge and tone-map one pixel, in nanoseconds */
+  private static final long NANOS_PER_PIXEL = 2;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "chaos-game"
+   */
+  @Override
+  public String getName() {
+    return "chaos-game";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Raster-direct, parallel and filled
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.RASTER_DIRECT, Capability.PARALLEL, Capability.FILLED);
+  }
+
+  /**
+   * Supports triangle fractals drawn into a framebuffer.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.RASTER && fractal instanceof TriangleFractal<?>;
+  }
+
+  /**
+   * Estimates the cost from the default number of samples and the number of pixels.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    long pixels = (long) request.view().width() * request.view().height();
+    int threads = Runtime.getRuntime().availableProcessors();
+    return ChaosGameRenderer.DEFAULT_SAMPLES * NANOS_PER_SAMPLE / threads + pixels * NANOS_PER_PIXEL;
+  }
+
+  /**
+   * Samples the fractal's limit set into the request's framebuffer, stopping early at the deadline.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if every sample was taken, false if the deadline stopped the walk first;
+   *         the framebuffer then holds a usable, sparser image
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    long remaining = budget.getRemainingMillis();
+    return ChaosGameRenderer.render((TriangleFractal<?>) fractal, request.view(), request.argb(),
+                                    ChaosGameRenderer.DEFAULT_SAMPLES, remaining == Long.MAX_VALUE ? 0 : remaining, 0,
+                                    request.pixels());
+  }
+}
@@ -0,0 +1,183 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Renders the limit set of a TriangleFractal with the chaos game instead of generating
+ * its 3^n triangles. Each subdivision step of TriangleFractal moves the center of a
+ * triangle to (center + a + b) / 3 for one side (a, b) of the base triangle, so the
+ * centers of the infinitely deep fractal are the attractor of those three affine maps.
+ * A random walk that applies a random map at every step visits that attractor, and the
+ * number of visits per pixel gives its density. The walk runs on several threads, each
+ * counting into its own histogram, and the histograms are summed and tone-mapped into
+ * an image. Time and memory depend only on the number of samples and pixels.
+ *
+ * @author Ethan Hunt
+ */
+public class ChaosGameRenderer {
+
+  /** The default total number of points sampled for one image */
+  public static final long DEFAULT_SAMPLES = 20_000_000L;
+
+  /** The number of steps taken before points are counted, so the walk has reached the attractor */
+  private static final int BURN_IN = 32;
+
+  /** How many steps are taken between checks of the clock */
+  private static final int CHECK_INTERVAL = 4096;
+
+  /**
+   * Renders the density of the fractal's limit set into an image. Each pixel gets the color
+   * with an opacity that grows with the logarithm of its number of visits; pixels that were
+   * never visited are transparent.
+   *
+   * @param fractal The triangle fractal whose base triangle defines the maps
+   * @param view The mapping from world coordinates to pixels
+   * @param argb The color of the densest pixels as ARGB
+   * @param samples The total number of points to sample across all threads
+   * @param timeLimitMillis The time after which sampling stops early, or 0 for no limit
+   * @param seed The seed of the random walks, so the same arguments give the same image
+   * @return The image, view.width() * view.height() ARGB pixels in row order
+   */
+  public static int[] render(TriangleFractal<?> fractal, Viewport view, int argb,
+                             long samples, long timeLimitMillis, long seed) {
+    int[] pixels = new int[view.width() * view.height()];
+    render(fractal, view, argb, samples, timeLimitMillis, seed, pixels);
+    return pixels;
+  }
+
+  /**
+   * Renders the density of the fractal's limit set into an existing framebuffer, as
+   * render does into a new image. Pixels that were never visited keep their color.
+   *
+   * @param fractal The triangle fractal whose base triangle defines the maps
+   * @param view The mapping from world coordinates to pixels
+   * @param argb The color of the densest pixels as ARGB
+   * @param samples The total number of points to sample across all threads
+   * @param timeLimitMillis The time after which sampling stops early, or 0 for no limit
+   * @param seed The seed of the random walks, so the same arguments give the same image
+   * @param pixels The framebuffer, view.width() * view.height() ARGB pixels in row order
+   * @return True if every sample was taken, false if the time limit stopped the walk first
+   */
+  public static boolean render(TriangleFractal<?> fractal, Viewport view, int argb,
+                               long samples, long timeLimitMillis, long seed, int[] pixels) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    AtomicBoolean stoppedEarly = new AtomicBoolean();
+    int[] density = sampleDensity(fractal, view, samples, threads, timeLimitMillis, seed, stoppedEarly);
+    toneMap(density, argb, pixels);
+    return !stoppedEarly.get();
+  }
+
+  /**
+   * Counts the visits of the chaos game to every pixel. Each thread walks with its own
+   * random generator and histogram; the histograms are summed at the end.
+   *
+   * @param fractal The triangle fractal whose base triangle defines the maps
+   * @param view The mapping from world coordinates to pixels
+   * @param samples The total number of points to sample across all threads
+   * @param threads The number of independent walks
+   * @param timeLimitMillis The time after which sampling stops early, or 0 for no limit
+   * @param seed The seed of the random walks
+   * @param stoppedEarly Set if the time limit stopped any walk before all its samples
+   * @return The number of visits per pixel, in row order
+   */
+  static int[] sampleDensity(TriangleFractal<?> fractal, Viewport view, long samples,
+                             int threads, long timeLimitMillis, long seed, AtomicBoolean stoppedEarly) {
+    // Map i moves a point p to p / 3 + (v[i] + v[i + 1]) / 3
+    Point[] vertices = fractal.getBaseShape().getPoints();
+    double[] offsets = new double[2 * vertices.length];
+    for (int i = 0; i < vertices.length; i++) {
+      Point a = vertices[i];
+      Point b = vertices[(i + 1) % vertices.length];
+      offsets[2 * i] = (a.getX() + b.getX()) / 3;
+      offsets[2 * i + 1] = (a.getY() + b.getY()) / 3;
+    }
+    Point start = fractal.getBaseShape().getCenter();
+    long deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1_000_000L : 0;
+
+    // Split the generators up front so every walk is independent and reproducible
+    SplittableRandom root = new SplittableRandom(seed);
+    SplittableRandom[] randoms = new SplittableRandom[threads];
+    for (int t = 0; t < threads; t++) {
+      randoms[t] = root.split();
+    }
+    long samplesPerThread = samples / threads;
+
+    return IntStream.range(0, threads).parallel()
+      .mapToObj(t -> walk(offsets, start.getX(), start.getY(), view, samplesPerThread, deadline, randoms[t],
+                              stoppedEarly))
+      .reduce((total, histogram) -> {
+        for (int i = 0; i < total.length; i++) {
+          total[i] += histogram[i];
+        }
+        return total;
+      })
+      .orElseGet(() -> new int[view.width() * view.height()]);
+  }
+
+  /**
+   * Tone-maps visit counts into pixels of one color. The opacity is log(1 + count)
+   * relative to log(1 + the largest count), which keeps sparse parts of the attractor
+   * visible next to dense ones.
+   *
+   * @param density The number of visits per pixel
+   * @param argb The color of the densest pixels as ARGB
+   * @param pixels The ARGB pixels to write, the same length as density
+   */
+  static void toneMap(int[] density, int argb, int[] pixels) {
+    int max = 0;
+    for (int count : density) {
+      max = Math.max(max, count);
+    }
+    if (max == 0) {
+      return;
+    }
+    double scale = (argb >>> 24) / Math.log1p(max);
+    int rgb = argb & 0xFFFFFF;
+    for (int i = 0; i < density.length; i++) {
+      if (density[i] > 0) {
+        int alpha = (int) Math.round(Math.log1p(density[i]) * scale);
+        pixels[i] = (alpha << 24) | rgb;
+      }
+    }
+  }
+
+  /**
+   * Runs one walk of the chaos game and counts its visits per pixel.
+   *
+   * @param offsets The translation of each map, x then y, applied after scaling by 1/3
+   * @param x The x-coordinate to start from
+   * @param y The y-coordinate to start from
+   * @param view The mapping from world coordinates to pixels
+   * @param samples The number of points to sample
+   * @param deadline The System.nanoTime() after which the walk stops, or 0 for no limit
+   * @param random The random generator of this walk
+   * @param stoppedEarly Set if the deadline stops the walk before all its samples
+   * @return The number of visits per pixel, in row order
+   */
+  private static int[] walk(double[] offsets, double x, double y, Viewport view,
+                            long samples, long deadline, SplittableRandom random, AtomicBoolean stoppedEarly) {
+    int width = view.width();
+    int height = view.height();
+    int[] histogram = new int[width * height];
+    int maps = offsets.length / 2;
+
+    for (long i = 0; i < BURN_IN + samples; i++) {
+      if (deadline != 0 && (i % CHECK_INTERVAL) == 0 && System.nanoTime() - deadline > 0) {
+        stoppedEarly.set(true);
+        break;
+      }
+      int map = random.nextInt(maps);
+      x = x / 3 + offsets[2 * map];
+      y = y / 3 + offsets[2 * map + 1];
+      if (i < BURN_IN) {
+        continue;
+      }
+      int column = (int) Math.floor(view.toPixelX(x));
+      int row = (int) Math.floor(view.toPixelY(y));
+      if (column >= 0 && column < width && row >= 0 && row < height) {
+        histogram[row * width + column]++;
+      }
+    }
+    return histogram;
+  }
+}
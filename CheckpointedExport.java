@@ -0,0 +1,350 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Exports the segments of a fractal to a file that can be opened with
+ * OffHeapSegmentStore.open, recording its progress in a checkpoint file so an export
+ * that crashes or runs out of time resumes where it stopped instead of starting over.
+ *
+ * The fractal is split CHECKPOINT_DEPTH levels down its recursion into many small
+ * partitions, generated one at a time in order. Every few seconds the output is flushed
+ * to disk and the checkpoint records the partition in progress, how many of its segments
+ * have been written, and the length of the flushed output. A resumed export checks the
+ * output against that length and cuts it back to it, skips the partitions already done,
+ * and generates only the partition in progress again, dropping the segments it wrote
+ * before. Generation is deterministic, so the finished file is the same as one written
+ * in a single run. The checkpoint is replaced atomically, so a crash while it is written
+ * leaves the previous one, and it is deleted when the export finishes.
+ *
+ * @author Ethan Hunt
+ */
+public class CheckpointedExport {
+
+  /** The time between checkpoints when none is given, in milliseconds */
+  public static final long DEFAULT_CHECKPOINT_INTERVAL = 5_000L;
+
+  /** The depth the fractal is split at, so a resume repeats at most one small partition */
+  public static final int CHECKPOINT_DEPTH = 4;
+
+  /** The number of segments written between looks at the clock */
+  private static final int CLOCK_INTERVAL = 1 << 16;
+
+  /** The size of the output buffer in bytes */
+  private static final int BUFFER_BYTES = 1 << 20;
+
+  // The fractal to export
+  private final FractalSpec spec;
+
+  // The file receiving the segments, and the file recording the progress of the export
+  private final Path output;
+  private final Path checkpoint;
+
+  // The time between checkpoints, in nanoseconds
+  private final long checkpointInterval;
+
+  /**
+   * Constructs an export with the checkpoint next to the output and the default interval.
+   *
+   * @param spec The fractal to export
+   * @param output The file receiving the segments
+   */
+  public CheckpointedExport(FractalSpec spec, Path output) {
+    this(spec, output, output.resolveSibling(output.getFileName() + ".checkpoint"), DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * Constructs an export.
+   *
+   * @param spec The fractal to export
+   * @param output The file receiving the segments
+   * @param checkpoint The file recording the progress of the export
+   * @param checkpointIntervalMillis The time between checkpoints, in milliseconds
+   */
+  public CheckpointedExport(FractalSpec spec, Path output, Path checkpoint, long checkpointIntervalMillis) {
+    this.spec = spec;
+    this.output = output;
+    this.checkpoint = checkpoint;
+    this.checkpointInterval = checkpointIntervalMillis * 1_000_000L;
+  }
+
+  /**
+   * Exports a fractal from the command line. Running the same command again after a crash
+   * resumes the export.
+   *
+   * @param args The file to write, then the fractal as name=value parameters read by FractalSpec.parse
+   * @throws IOException If the output or the checkpoint cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: CheckpointedExport <file> type=... levels=... [name=value...]");
+      System.exit(2);
+    }
+    Map<String, String> params = new HashMap<String, String>();
+    for (int i = 1; i < args.length; i++) {
+      int equals = args[i].indexOf('=');
+      params.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+    }
+    long start = System.nanoTime();
+    CheckpointedExport export = new CheckpointedExport(FractalSpec.parse(params), Paths.get(args[0]));
+    if (export.isResuming()) {
+      System.out.println("Resuming from " + export.checkpoint);
+    }
+    export.run(GenerationBudget.unlimited());
+    System.out.println("Wrote " + Files.size(export.output) / OffHeapSegmentStore.BYTES_PER_SEGMENT + " segments to "
+                       + args[0] + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+  }
+
+  /**
+   * Returns whether a checkpoint of an earlier run exists, so run() will resume it.
+   *
+   * @return True if the checkpoint file exists
+   */
+  public boolean isResuming() {
+    return Files.exists(checkpoint);
+  }
+
+  /**
+   * Runs the export, resuming from the checkpoint if there is one. Only the budget's
+   * deadline applies; the fractal is exported at its full number of levels.
+   *
+   * @param budget The limits the export has to stay within
+   * @return True if the export finished, false if the deadline passed first; the checkpoint is kept to resume later
+   * @throws IOException If the output or the checkpoint cannot be written
+   * @throws IllegalStateException If the checkpoint belongs to another fractal or the output is shorter than it records
+   */
+  public boolean run(GenerationBudget budget) throws IOException {
+    Fractal<?> fractal = spec.createFractal();
+    fractal.rotate(spec.rotation());
+    int partitions = fractal.getPartitionCount(CHECKPOINT_DEPTH);
+
+    Progress progress = readCheckpoint();
+    try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      // Anything written after the last checkpoint is generated again
+      long offset = progress.segments * OffHeapSegmentStore.BYTES_PER_SEGMENT;
+      if (channel.size() < offset) {
+        throw new IllegalStateException(output + " is shorter than " + checkpoint + " records");
+      }
+      channel.truncate(offset);
+      channel.position(offset);
+
+      CheckpointingSink sink = new CheckpointingSink(channel, progress);
+      try {
+        while (progress.partition < partitions) {
+          sink.startPartition();
+          if (!fractal.generatePartition(CHECKPOINT_DEPTH, progress.partition, sink, budget)) {
+            sink.checkpoint();
+            return false;
+          }
+          progress.partition++;
+          progress.partitionSegments = 0;
+          sink.checkpointIfDue();
+        }
+        sink.flush();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    Files.deleteIfExists(checkpoint);
+    return true;
+  }
+
+  /**
+   * Reads the progress recorded by an earlier run.
+   *
+   * @return The progress, or the start of the export if there is no checkpoint
+   * @throws IOException If the checkpoint cannot be read
+   * @throws IllegalStateException If the checkpoint belongs to another fractal or cannot be parsed
+   */
+  private Progress readCheckpoint() throws IOException {
+    Progress progress = new Progress();
+    if (!Files.exists(checkpoint)) {
+      return progress;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(checkpoint)) {
+      properties.load(in);
+    }
+    if (!spec.toString().equals(properties.getProperty("spec"))) {
+      throw new IllegalStateException(checkpoint + " belongs to another fractal; delete it to start over");
+    }
+    if (!Integer.toString(CHECKPOINT_DEPTH).equals(properties.getProperty("depth"))) {
+      throw new IllegalStateException(checkpoint + " numbers its partitions differently; delete it to start over");
+    }
+    long offset;
+    try {
+      progress.partition = Integer.parseInt(properties.getProperty("partition"));
+      progress.partitionSegments = Long.parseLong(properties.getProperty("partitionSegments"));
+      progress.segments = Long.parseLong(properties.getProperty("segments"));
+      offset = Long.parseLong(properties.getProperty("offset"));
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException(checkpoint + " cannot be read; delete it to start over");
+    }
+    if (offset != progress.segments * OffHeapSegmentStore.BYTES_PER_SEGMENT) {
+      throw new IllegalStateException(checkpoint + " cannot be read; delete it to start over");
+    }
+    return progress;
+  }
+
+  /**
+   * Records progress in the checkpoint, replacing the previous one in a single step.
+   *
+   * @param progress The progress, whose segments have all been flushed to disk
+   * @throws IOException If the checkpoint cannot be written
+   */
+  private void writeCheckpoint(Progress progress) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("spec", spec.toString());
+    properties.setProperty("depth", Integer.toString(CHECKPOINT_DEPTH));
+    properties.setProperty("partition", Integer.toString(progress.partition));
+    properties.setProperty("partitionSegments", Long.toString(progress.partitionSegments));
+    properties.setProperty("segments", Long.toString(progress.segments));
+    properties.setProperty("offset", Long.toString(progress.segments * OffHeapSegmentStore.BYTES_PER_SEGMENT));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    properties.store(bytes, "Progress of the export to " + output.getFileName());
+
+    // Write the new checkpoint beside the old one, make it durable, then swap it in
+    Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * How far an export has got.
+   */
+  private static class Progress {
+
+    // The partition in progress
+    private int partition = 0;
+
+    // The number of segments of the partition in progress already written
+    private long partitionSegments = 0;
+
+    // The number of segments written in all
+    private long segments = 0;
+  }
+
+  /**
+   * Writes segments to the output through a buffer, dropping those a previous run already
+   * wrote, and checkpoints whenever the interval has passed.
+   */
+  private class CheckpointingSink implements SegmentSink {
+
+    // The output and the buffer in front of it
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.nativeOrder());
+
+    // The progress, updated as segments are written
+    private final Progress progress;
+
+    // The number of segments of the current partition generated, and how many of them to drop
+    private long generated = 0;
+    private long skip = 0;
+
+    // The time of the last checkpoint
+    private long lastCheckpoint = System.nanoTime();
+
+    /**
+     * Constructs a sink continuing from recorded progress.
+     *
+     * @param channel The output, positioned at the end of the written segments
+     * @param progress The progress to continue from
+     */
+    private CheckpointingSink(FileChannel channel, Progress progress) {
+      this.channel = channel;
+      this.progress = progress;
+    }
+
+    /**
+     * Prepares for the partition in progress, dropping the segments of it already written.
+     */
+    private void startPartition() {
+      generated = 0;
+      skip = progress.partitionSegments;
+    }
+
+    /**
+     * Writes a segment unless a previous run already wrote it.
+     *
+     * @param firstX The x-coordinate of the first endpoint
+     * @param firstY The y-coordinate of the first endpoint
+     * @param secondX The x-coordinate of the second endpoint
+     * @param secondY The y-coordinate of the second endpoint
+     * @throws UncheckedIOException If the output or the checkpoint cannot be written
+     */
+    @Override
+    public void add(double firstX, double firstY, double secondX, double secondY) {
+      if (generated++ < skip) {
+        return;
+      }
+      try {
+        if (buffer.remaining() < OffHeapSegmentStore.BYTES_PER_SEGMENT) {
+          flush();
+        }
+        buffer.putDouble(firstX).putDouble(firstY).putDouble(secondX).putDouble(secondY);
+        progress.partitionSegments++;
+        progress.segments++;
+        if ((progress.segments & (CLOCK_INTERVAL - 1)) == 0) {
+          checkpointIfDue();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Checkpoints if the interval has passed since the last checkpoint.
+     *
+     * @throws IOException If the output or the checkpoint cannot be written
+     */
+    private void checkpointIfDue() throws IOException {
+      if (System.nanoTime() - lastCheckpoint >= checkpointInterval) {
+        checkpoint();
+      }
+    }
+
+    /**
+     * Flushes the written segments to disk and records the progress.
+     *
+     * @throws IOException If the output or the checkpoint cannot be written
+     */
+    private void checkpoint() throws IOException {
+      flush();
+      channel.force(false);
+      writeCheckpoint(progress);
+      lastCheckpoint = System.nanoTime();
+    }
+
+    /**
+     * Writes the buffered segments to the output.
+     *
+     * @throws IOException If the output cannot be written
+     */
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Chooses the fastest FractalEngine for a render. The engines are discovered once with
+ * ServiceLoader; for each render, the planner keeps the engines that support the fractal
+ * and the target and have every required capability, asks each of them to estimate the
+ * cost within the budget, and picks the cheapest one that fits.
+ *
+ * @author Ethan Hunt
+ */
+public class EnginePlanner {
+
+  // The engines to choose from, in the order they were discovered
+  private final List<FractalEngine> engines;
+
+  /**
+   * Constructs a planner over the engines listed in META-INF/services/FractalEngine.
+   */
+  public EnginePlanner() {
+    this(ServiceLoader.load(FractalEngine.class));
+  }
+
+  /**
+   * Constructs a planner over the given engines.
+   *
+   * @param engines The engines to choose from
+   */
+  public EnginePlanner(Iterable<FractalEngine> engines) {
+    List<FractalEngine> found = new ArrayList<FractalEngine>();
+    for (FractalEngine engine : engines) {
+      found.add(engine);
+    }
+    this.engines = Collections.unmodifiableList(found);
+  }
+
+  /**
+   * Returns the engines the planner chooses from.
+   *
+   * @return The engines, in the order they were discovered
+   */
+  public List<FractalEngine> getEngines() {
+    return engines;
+  }
+
+  /**
+   * Chooses the engine with the lowest estimated cost for a render. Ties go to the engine
+   * discovered first.
+   *
+   * @param fractal The fractal to render
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @param required The capabilities the engine must have
+   * @return The cheapest engine, or null if no engine supports the render within the budget
+   */
+  public FractalEngine plan(Fractal<?> fractal, RenderRequest request, GenerationBudget budget,
+                            Set<FractalEngine.Capability> required) {
+    FractalEngine best = null;
+    long bestCost = Long.MAX_VALUE;
+    for (FractalEngine engine : engines) {
+      if (!engine.supports(fractal, request.target()) || !engine.getCapabilities().containsAll(required)) {
+        continue;
+      }
+      long cost = engine.estimateCost(fractal, request, budget);
+      if (cost < bestCost) {
+        best = engine;
+        bestCost = cost;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Renders with the engine plan() chooses.
+   *
+   * @param fractal The fractal to render
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @param required The capabilities the engine must have
+   * @return True if the render completed, false if the deadline passed first
+   * @throws IllegalStateException If no engine supports the render within the budget
+   */
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget,
+                        Set<FractalEngine.Capability> required) {
+    FractalEngine engine = plan(fractal, request, budget, required);
+    if (engine == null) {
+      throw new IllegalStateException("No engine can render a " + fractal.getClass().getSimpleName()
+                                      + " to " + request.target() + " with " + required);
+    }
+    return engine.render(fractal, request, budget);
+  }
+}
@@ -2,11 +2,15 @@
  * Represents an equilateral triangle as a subclass of Polygon.
  * The triangle is defined by a center point and a side length, with vertices calculated
  * based on these parameters. Provides methods to set and retrieve the center and side length.
+ * New vertices are computed whenever the triangle changes.
  * 
  * @author Ethan Hunt
  */
 public class EquilateralTriangle extends Polygon  implements Snowflakeable, TriangleShape{
 
+  /** The square root of 3, used to place the vertices */
+  private static final double SQRT_3 = Math.sqrt(3);
+
   /** The center point of the equilateral triangle */
   private Point center;
   
@@ -21,17 +25,7 @@ public class EquilateralTriangle extends Polygon  implements Snowflakeable, Tria
    * @param sideLength The length of each side of the equilateral triangle
    */
   public EquilateralTriangle(Point center, double sideLength) {
-    super(new Point[] {
-        // First vertex (top vertex if oriented upwards)
-        new Point(center.getX(), center.getY() + (sideLength / Math.sqrt(3))),
-        
-        // Second vertex (120 degrees clockwise from the first)
-        new Point(center.getX() - (sideLength / 2), center.getY() - (sideLength / (2 * Math.sqrt(3)))),
-        
-        // Third vertex (240 degrees clockwise from the first, or -120 degrees)
-        new Point(center.getX() + (sideLength / 2), center.getY() - (sideLength / (2 * Math.sqrt(3))))
-    });
-    
+    super(placeVertices(newPoints(3), center, sideLength));
     this.center = center;
     this.sideLength = sideLength;
   }
@@ -53,12 +47,8 @@ public class EquilateralTriangle extends Polygon  implements Snowflakeable, Tria
    */
   @Override
   public void setCenter(Point center) {
-    super.setPoints(new Point[] {
-        new Point(center.getX(), center.getY() + (this.getSideLength() / Math.sqrt(3))),
-        new Point(center.getX() - (this.getSideLength() / 2), center.getY() - (this.getSideLength() / (2 * Math.sqrt(3)))),
-        new Point(center.getX() + (this.getSideLength() / 2), center.getY() - (this.getSideLength() / (2 * Math.sqrt(3))))
-    });
     this.center = center;
+    updatePoints();
   }
 
   /**
@@ -76,11 +66,40 @@ public class EquilateralTriangle extends Polygon  implements Snowflakeable, Tria
    * @param sideLength The new length of each side of the equilateral triangle
    */
   public void setSideLength(double sideLength) {
-    super.setPoints(new Point[] {
-        new Point(this.getCenter().getX(), this.getCenter().getY() + (sideLength / Math.sqrt(3))),
-        new Point(this.getCenter().getX() - (sideLength / 2), this.getCenter().getY() - (sideLength / (2 * Math.sqrt(3)))),
-        new Point(this.getCenter().getX() + (sideLength / 2), this.getCenter().getY() - (sideLength / (2 * Math.sqrt(3))))
-    });
     this.sideLength = sideLength;
+    updatePoints();
+  }
+  
+  /**
+   * Computes three new vertices from the center and side length.
+   *
+   * @return The vertex points
+   */
+  @Override
+  protected Point[] computePoints() {
+    return placeVertices(newPoints(3), center, sideLength);
+  }
+  
+  /**
+   * Moves three points to the vertices of an equilateral triangle pointing upwards.
+   *
+   * @param points The three vertex points to move
+   * @param center The center of the triangle
+   * @param sideLength The length of each side of the triangle
+   * @return The given points
+   */
+  private static Point[] placeVertices(Point[] points, Point center, double sideLength) {
+    // First vertex (top vertex if oriented upwards)
+    points[0].setX(center.getX());
+    points[0].setY(center.getY() + (sideLength / SQRT_3));
+    
+    // Second vertex (120 degrees clockwise from the first)
+    points[1].setX(center.getX() - (sideLength / 2));
+    points[1].setY(center.getY() - (sideLength / (2 * SQRT_3)));
+    
+    // Third vertex (240 degrees clockwise from the first, or -120 degrees)
+    points[2].setX(center.getX() + (sideLength / 2));
+    points[2].setY(center.getY() - (sideLength / (2 * SQRT_3)));
+    return points;
   }
 }
@@ -1,15 +1,31 @@
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * Represents an abstract fractal structure based on a polygonal shape.
  * This class provides common functionality for fractals, such as retrieving
  * the base shape, managing the fractal's levels, and applying transformations.
  * 
+ * Generation only reads the base shape and never changes the points it hands out
+ * afterwards, so several threads may generate the same fractal at once as long as
+ * none of them moves, rotates or resizes the base shape meanwhile.
+ * 
  * @param <T> A type that extends the Polygon class, representing the base shape of the fractal.
  * @author Ethan Hunt
  */
 public abstract class Fractal<T extends Polygon> {
 
+    /**
+     * The approximate number of bytes one generated segment keeps alive: the Line,
+     * up to two new Points, and its slots in the lists and arrays that collect it.
+     */
+    public static final long BYTES_PER_SEGMENT = 24 + 2 * 32 + 8;
+
+    /** The route of a whole top-level subtree, taking every piece at every level */
+    protected static final int[] NO_ROUTE = new int[0];
+
     /** The base polygon shape used to generate the fractal. */
     private T baseShape;
 
@@ -69,18 +85,8 @@ public abstract class Fractal<T extends Polygon> {
      * @param newCenter The new center point for the fractal.
      */
     public void setCenter(Point newCenter) {
-        Point oldCenter = baseShape.getCenter();
-
-        // Calculate the difference between the old and new center
-        double xDiff = newCenter.getX() - oldCenter.getX();
-        double yDiff = newCenter.getY() - oldCenter.getY();
-
-        // Move all points by the calculated difference
-        Point[] points = this.getPoints();
-        for (Point p : points) {
-            p.setX(p.getX() + xDiff);
-            p.setY(p.getY() + yDiff);
-        }
+        // The lines are rebuilt from the base shape, so only the base shape has to move.
+        // Generated points are never changed, since other lines or threads may share them.
         this.baseShape.setCenter(newCenter);
     }
 
@@ -90,13 +96,10 @@ public abstract class Fractal<T extends Polygon> {
      * @param angle The angle in radians by which to rotate the fractal.
      */
     public void rotate(double angle) {
-        Point center = this.getCenter();
-        Point[] points = this.getPoints();
-
-        // Rotate each point around the fractal's center
-        for (Point p : points) {
-            p.rotateAbout(center, angle);
-        }
+        // The lines are rebuilt from the base shape every time they are requested,
+        // so rotating the base shape is what persists. Rotating generated points
+        // would only cost a full generation.
+        this.baseShape.rotate(angle);
     }
 
     /**
@@ -107,11 +110,12 @@ public abstract class Fractal<T extends Polygon> {
     public Point[] getPoints() {
         Line[] lines = this.getLines();
         ArrayList<Point> points = new ArrayList<Point>();
+        Set<Point> seen = Collections.newSetFromMap(new IdentityHashMap<Point, Boolean>());
 
         // Add unique points from the lines to the list
         for (Line currentLine : lines) {
             Point currentPoint = currentLine.getSecondPoint();
-            if (!points.contains(currentPoint)) {
+            if (seen.add(currentPoint)) {
                 points.add(currentPoint);
             }
         }
@@ -120,10 +124,419 @@ public abstract class Fractal<T extends Polygon> {
     }
 
     /**
-     * Abstract method to return the lines that form the fractal.
-     * Subclasses must implement this method to provide specific fractal structures.
+     * Returns the lines that form the fractal.
+     * 
+     * @return An array of lines representing the fractal structure.
+     */
+    public Line[] getLines() {
+        return createLines(this.numLevels, GenerationBudget.unlimited());
+    }
+
+    /**
+     * Returns the lines that form the fractal, staying within a budget. The deepest level
+     * whose estimated size fits the segment and byte limits is generated. If the budget
+     * has a deadline, levels are generated from coarsest to finest and the deepest level
+     * completed before the deadline is returned.
+     * 
+     * @param budget The limits the generation has to stay within.
+     * @return An array of lines representing the fractal at the deepest affordable level.
+     */
+    public Line[] getLines(GenerationBudget budget) {
+        int deepestLevel = deepestLevelWithin(budget, BYTES_PER_SEGMENT);
+        if (!budget.hasDeadline()) {
+            return createLines(deepestLevel, budget);
+        }
+
+        // Level 0 is only the base shape, so it is always completed
+        Line[] deepestLines = createLines(0, GenerationBudget.unlimited());
+        for (int level = 1; level <= deepestLevel; level++) {
+            try {
+                deepestLines = createLines(level, budget);
+            } catch (GenerationBudget.ExceededException e) {
+                break;
+            }
+        }
+        return deepestLines;
+    }
+
+    /**
+     * Returns the segments that form the fractal as immutable values, which may be
+     * read by any number of threads without copying.
+     * 
+     * @return An array of segments in the same order as getLines().
+     */
+    public Segment[] getSegments() {
+        ArrayList<Segment> segments = new ArrayList<Segment>();
+        emitSegments(this.numLevels, (firstX, firstY, secondX, secondY) -> 
+            segments.add(new Segment(new Vertex(firstX, firstY), new Vertex(secondX, secondY))), 
+            GenerationBudget.unlimited());
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+    /**
+     * Returns the fractal as an indexed mesh, built while the segments are generated.
+     * Endpoints shared by several segments are stored once, which roughly halves the
+     * memory of the geometry and lets transforms run over unique vertices only.
+     * 
+     * @return A mesh with one edge per segment, in the same order as getLines().
+     */
+    public IndexedMesh getMesh() {
+        IndexedMesh.Builder builder = new IndexedMesh.Builder();
+        emitSegments(this.numLevels, builder, GenerationBudget.unlimited());
+        return builder.build();
+    }
+
+    /**
+     * Streams the segments of the fractal to a sink instead of collecting them into an array,
+     * so memory use does not grow with the number of segments. The deepest level whose segment
+     * count fits the budget is streamed; the byte limit does not apply since nothing is retained.
+     * 
+     * @param sink The sink receiving each segment.
+     * @param budget The limits the generation has to stay within.
+     * @return True if every segment of that level was streamed, false if the deadline passed first.
+     */
+    public boolean generate(SegmentSink sink, GenerationBudget budget) {
+        try {
+            emitSegments(deepestLevelWithin(budget, 0), sink, budget);
+            return true;
+        } catch (GenerationBudget.ExceededException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Streams the segments of the fractal to a sink, each tagged with its depth and subtree,
+     * so renderers can color the fractal by either. The same segments are streamed, in the
+     * same order, as by generate.
+     * 
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The limits the generation has to stay within.
+     * @return True if every segment of that level was streamed, false if the deadline passed first.
+     */
+    public boolean generateTagged(TaggedSegmentSink sink, GenerationBudget budget) {
+        try {
+            emitTaggedSegments(deepestLevelWithin(budget, 0), sink, budget);
+            return true;
+        } catch (GenerationBudget.ExceededException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of partitions of the fractal at its current number of levels.
+     * Partitions are the independent subtrees at a given depth of the recursion, so they can
+     * be generated separately, on other threads or in other processes. At depth 1 they are
+     * the subtrees at the top of the recursion; each level deeper multiplies their number
+     * by the number of pieces each piece of the fractal is split into.
+     * 
+     * @param depth The depth to split at; it is limited to the depth of the fractal and to
+     *              the deepest one whose partitions can be counted in an int.
+     * @return The number of partitions.
+     */
+    public int getPartitionCount(int depth) {
+        return (int) partitionCount(this.numLevels, partitionDepth(this.numLevels, depth));
+    }
+
+    /**
+     * Streams the segments of one partition of the fractal at its current number of levels.
+     * Streaming every partition of a depth in order gives the same segments, in the same
+     * order, as generate. Unlike generate, the number of levels is not limited by the
+     * budget's size limits; only its deadline is respected.
+     * 
+     * @param depth The depth to split at, limited as by getPartitionCount.
+     * @param partition The partition to stream, from 0 to getPartitionCount(depth) - 1.
+     * @param sink The sink receiving each segment.
+     * @param budget The limits the generation has to stay within.
+     * @return True if every segment of the partition was streamed, false if the deadline passed first.
+     * @throws IllegalArgumentException If there is no such partition.
+     */
+    public boolean generatePartition(int depth, int partition, SegmentSink sink, GenerationBudget budget) {
+        int splitDepth = partitionDepth(this.numLevels, depth);
+        long count = partitionCount(this.numLevels, splitDepth);
+        if (partition < 0 || partition >= count) {
+            throw new IllegalArgumentException("No partition " + partition + " of " + count);
+        }
+
+        // The partition number is the subtree at the top followed by the piece taken at each deeper level
+        int branching = partitionBranching();
+        int[] route = new int[splitDepth - 1];
+        int top = partition;
+        for (int i = route.length - 1; i >= 0; i--) {
+            route[i] = top % branching;
+            top /= branching;
+        }
+        try {
+            emitPartition(this.numLevels, top, route, (firstX, firstY, secondX, secondY, tagDepth, subtree) ->
+                sink.add(firstX, firstY, secondX, secondY), budget);
+            return true;
+        } catch (GenerationBudget.ExceededException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Limits a split depth to the depth of the fractal and to a partition count that fits in an int.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @param depth The requested depth.
+     * @return The depth to split at, at least 1.
+     */
+    private int partitionDepth(int numLevels, int depth) {
+        int splitDepth = Math.max(1, Math.min(depth, maxPartitionDepth(numLevels)));
+        while (splitDepth > 1 && partitionCount(numLevels, splitDepth) > Integer.MAX_VALUE) {
+            splitDepth--;
+        }
+        return splitDepth;
+    }
+
+    /**
+     * Returns the number of partitions at a split depth.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @param depth The depth to split at, from 1 to maxPartitionDepth(numLevels).
+     * @return The number of partitions, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    private long partitionCount(int numLevels, int depth) {
+        return saturatedMultiply(topPartitionCount(numLevels), saturatedPower(partitionBranching(), depth - 1));
+    }
+
+    /**
+     * Returns whether a piece of the recursion lies on the route to the partition being streamed.
+     * 
+     * @param route The piece to take at each level below the top, or an empty array to stream everything.
+     * @param routeIndex The position in the route of the level the piece belongs to.
+     * @param piece The piece.
+     * @return True if the piece is streamed.
+     */
+    protected static boolean onRoute(int[] route, int routeIndex, int piece) {
+        return routeIndex >= route.length || route[routeIndex] == piece;
+    }
+
+    /**
+     * Returns the number of segments the fractal generates at its current number of levels.
+     * 
+     * @return The number of segments, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public long estimateSegmentCount() {
+        return estimateSegmentCount(this.numLevels);
+    }
+
+    /**
+     * Returns the smallest axis-aligned rectangle containing the fractal at its current
+     * number of levels, computed from the base shape without generating anything.
+     * 
+     * @return The bounding box.
+     */
+    public Bounds boundingBox() {
+        return boundingBox(this.numLevels);
+    }
+
+    /**
+     * Returns the length of the boundary of the region the fractal encloses at its
+     * current number of levels, computed in closed form.
      * 
+     * @return The perimeter.
+     */
+    public double perimeter() {
+        return perimeter(this.numLevels);
+    }
+
+    /**
+     * Returns the number of distinct points the segments of the fractal meet at, at its
+     * current number of levels, computed in closed form.
+     * 
+     * @return The number of vertices, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public long vertexCount() {
+        return vertexCount(this.numLevels);
+    }
+
+    /**
+     * Returns the approximate number of bytes the lines of the fractal take up
+     * at its current number of levels.
+     * 
+     * @return The number of bytes, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public long estimateBytes() {
+        return estimateBytes(this.numLevels);
+    }
+
+    /**
+     * Returns the approximate number of bytes the lines of the fractal take up at a given number of levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of bytes, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public long estimateBytes(int numLevels) {
+        return saturatedMultiply(estimateSegmentCount(numLevels), BYTES_PER_SEGMENT);
+    }
+
+    /**
+     * Returns the deepest level, no deeper than the fractal's number of levels, that fits the
+     * segment and byte limits of a budget. Level 0 is returned even if it does not fit.
+     * 
+     * @param budget The budget to fit.
+     * @param bytesPerSegment The number of bytes each segment keeps alive.
+     * @return The deepest level that fits.
+     */
+    private int deepestLevelWithin(GenerationBudget budget, long bytesPerSegment) {
+        int level = this.numLevels;
+        while (level > 0) {
+            long segments = estimateSegmentCount(level);
+            if (budget.allows(segments, saturatedMultiply(segments, bytesPerSegment))) {
+                break;
+            }
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * Multiplies two non-negative numbers, returning Long.MAX_VALUE instead of overflowing.
+     * 
+     * @param a The first factor.
+     * @param b The second factor.
+     * @return The product, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    protected static long saturatedMultiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        long product = a * b;
+        return (high != 0 || product < 0) ? Long.MAX_VALUE : product;
+    }
+
+    /**
+     * Returns the total length of the lines of the base shape.
+     * 
+     * @return The perimeter of the base shape.
+     */
+    protected double basePerimeter() {
+        double length = 0;
+        for (Line line : this.baseShape.getSharedLines()) {
+            length += Math.hypot(line.getSecondPoint().getX() - line.getFirstPoint().getX(),
+                                 line.getSecondPoint().getY() - line.getFirstPoint().getY());
+        }
+        return length;
+    }
+
+    /**
+     * Raises a non-negative number to a power, returning Long.MAX_VALUE instead of overflowing.
+     * 
+     * @param base The base.
+     * @param exponent The exponent.
+     * @return The power, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    protected static long saturatedPower(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result = saturatedMultiply(result, base);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of segments the fractal generates at a given number of levels,
+     * computed in closed form without generating anything.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of segments, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public abstract long estimateSegmentCount(int numLevels);
+
+    /**
+     * Returns the smallest axis-aligned rectangle containing the fractal at a given number of levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The bounding box.
+     */
+    public abstract Bounds boundingBox(int numLevels);
+
+    /**
+     * Returns the length of the boundary of the region the fractal encloses at a given number of levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The perimeter.
+     */
+    public abstract double perimeter(int numLevels);
+
+    /**
+     * Returns the number of distinct points the segments of the fractal meet at, at a given number of levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of vertices, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    public abstract long vertexCount(int numLevels);
+
+    /**
+     * Abstract method to create the lines that form the fractal at a given number of levels.
+     * Subclasses must implement this method to provide specific fractal structures, and
+     * should call budget.checkDeadline() as they recurse.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal structure.
      */
-    public abstract Line[] getLines();   
+    protected abstract Line[] createLines(int numLevels, GenerationBudget budget);
+
+    /**
+     * Streams the segments that form the fractal at a given number of levels, dropping their tags.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param sink The sink receiving each segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    protected void emitSegments(int numLevels, SegmentSink sink, GenerationBudget budget) {
+        emitTaggedSegments(numLevels, (firstX, firstY, secondX, secondY, depth, subtree) ->
+            sink.add(firstX, firstY, secondX, secondY), budget);
+    }
+
+    /**
+     * Streams the tagged segments that form the fractal at a given number of levels, one partition after another.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    protected void emitTaggedSegments(int numLevels, TaggedSegmentSink sink, GenerationBudget budget) {
+        int partitions = topPartitionCount(numLevels);
+        for (int partition = 0; partition < partitions; partition++) {
+            emitPartition(numLevels, partition, NO_ROUTE, sink, budget);
+        }
+    }
+
+    /**
+     * Abstract method to return the number of independent subtrees at the top of the recursion.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of partitions at depth 1, at least 1.
+     */
+    protected abstract int topPartitionCount(int numLevels);
+
+    /**
+     * Abstract method to return the number of pieces each piece of the fractal is split into.
+     * 
+     * @return The number of pieces.
+     */
+    protected abstract int partitionBranching();
+
+    /**
+     * Abstract method to return the deepest depth the fractal can be split at.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The depth, at least 1.
+     */
+    protected abstract int maxPartitionDepth(int numLevels);
+
+    /**
+     * Abstract method to stream the tagged segments of one subtree at the top of the recursion,
+     * or of one piece of it. The segments of every top-level partition in order must be the
+     * same, in the same order, as those returned by createLines.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param partition The subtree at the top, from 0 to topPartitionCount(numLevels) - 1.
+     * @param route The piece to take at each level below the top, checked with onRoute, or NO_ROUTE for the whole subtree.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    protected abstract void emitPartition(int numLevels, int partition, int[] route, TaggedSegmentSink sink,
+                                          GenerationBudget budget);
 }
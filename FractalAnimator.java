@@ -0,0 +1,122 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import java.util.function.LongConsumer;
+
+/**
+ * Spins and zooms a fractal that was rasterized once into an image. Every frame only
+ * clears the canvas and draws the image through a rotation and a scale, so the cost of
+ * a frame does not depend on the number of segments and nothing is regenerated or
+ * rotated point by point. The angle and zoom follow the frame timestamps of the
+ * AnimationTimer rather than a frame count, so the animation keeps its speed when frames
+ * are dropped, and dropped frames are counted.
+ *
+ * The image should be square and cover at least the canvas diagonal, so no corner of the
+ * canvas is left empty as it turns, with MAX_ZOOM image pixels per canvas pixel so the
+ * largest zoom stays sharp.
+ *
+ * @author Ethan Hunt
+ */
+public class FractalAnimator extends AnimationTimer {
+
+  /** The time between frames of a 60 Hz display, in nanoseconds */
+  public static final long FRAME_INTERVAL = 1_000_000_000L / 60;
+
+  /** The largest zoom, relative to the fractal drawn at rest */
+  public static final double MAX_ZOOM = 2;
+
+  /** How fast the fractal turns, in radians per second (one turn in 12 seconds) */
+  private static final double ANGULAR_SPEED = 2 * Math.PI / 12;
+
+  /** The time to zoom in and back out, in seconds */
+  private static final double ZOOM_PERIOD = 8;
+
+  // The graphics context to draw on
+  private final GraphicsContext graph;
+
+  // The rasterized fractal, centered in the image, and how many image pixels make one canvas pixel at rest
+  private final Image image;
+  private final double pixelsPerUnit;
+
+  // Receives the number of dropped frames whenever it changes
+  private final LongConsumer onDroppedFrames;
+
+  // The timestamps of the first and the previous frame, in nanoseconds, and the frames dropped since the start
+  private long firstFrame = 0;
+  private long lastFrame = 0;
+  private long droppedFrames = 0;
+
+  /**
+   * Constructs an animator for a rasterized fractal. Nothing is drawn until start() is called.
+   *
+   * @param image The fractal, rasterized with its center at the center of the image.
+   * @param pixelsPerUnit How many image pixels make one canvas pixel at rest.
+   * @param graph The graphics context to draw on.
+   * @param onDroppedFrames Receives the number of dropped frames whenever it changes.
+   */
+  public FractalAnimator(Image image, double pixelsPerUnit, GraphicsContext graph, LongConsumer onDroppedFrames) {
+    this.image = image;
+    this.pixelsPerUnit = pixelsPerUnit;
+    this.graph = graph;
+    this.onDroppedFrames = onDroppedFrames;
+  }
+
+  /**
+   * Returns the number of frames dropped since the animation started.
+   *
+   * @return The number of dropped frames.
+   */
+  public long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * Counts the frames dropped since the previous one and draws the fractal at the angle
+   * and zoom of this frame's timestamp.
+   *
+   * @param now The timestamp of the current frame in nanoseconds.
+   */
+  @Override
+  public void handle(long now) {
+    if (firstFrame == 0) {
+      firstFrame = now;
+      droppedFrames = 0;
+      onDroppedFrames.accept(0);
+    } else {
+      // A gap of more than one and a half frame intervals means at least one frame was skipped
+      long missed = Math.round((double) (now - lastFrame) / FRAME_INTERVAL) - 1;
+      if (missed > 0) {
+        droppedFrames += missed;
+        onDroppedFrames.accept(droppedFrames);
+      }
+    }
+    lastFrame = now;
+
+    double seconds = (now - firstFrame) / 1e9;
+    double angle = ANGULAR_SPEED * seconds;
+    double zoom = 1 + (MAX_ZOOM - 1) * (1 - Math.cos(2 * Math.PI * seconds / ZOOM_PERIOD)) / 2;
+    double width = graph.getCanvas().getWidth();
+    double height = graph.getCanvas().getHeight();
+
+    graph.save();
+    graph.setTransform(1, 0, 0, 1, 0, 0);
+    graph.clearRect(0, 0, width, height);
+    graph.translate(width / 2, height / 2);
+
+    // The canvas y axis points down, so a counterclockwise turn is a negative angle
+    graph.rotate(-Math.toDegrees(angle));
+    graph.scale(zoom / pixelsPerUnit, zoom / pixelsPerUnit);
+    graph.drawImage(image, -image.getWidth() / 2, -image.getHeight() / 2);
+    graph.restore();
+  }
+
+  /**
+   * Stops the animation. Starting it again restarts it from its first frame.
+   */
+  @Override
+  public void stop() {
+    super.stop();
+    firstFrame = 0;
+    lastFrame = 0;
+  }
+}
@@ -5,17 +5,29 @@ import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.Slider;
 import javafx.geometry.Orientation;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.scene.layout.StackPane;
 import javafx.geometry.Pos;
 import javafx.event.EventHandler;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 
 
 /**
@@ -26,6 +38,32 @@ import javafx.geometry.Insets;
  */
 public class FractalDrawer extends Application {
   
+  // The most segments a single Draw may generate
+  private static final long MAX_SEGMENTS = 20_000_000L;
+  
+  // The longest a single Draw may spend generating, in milliseconds
+  private static final long GENERATION_TIME_LIMIT = 10_000L;
+  
+  // Fractals with at least this many segments are indexed so segments off the canvas can be skipped
+  private static final int CULLING_THRESHOLD = 100_000;
+  
+  // How long the fields have to stay unchanged before a live preview is generated, in milliseconds
+  private static final double PREVIEW_DELAY = 250;
+  
+  // The space kept free around a fractal fitted to the canvas, in pixels
+  private static final double FIT_MARGIN = 10;
+  
+  // The most segments stroked as one path, so a bucket never builds one huge path
+  private static final int PATH_BATCH = 10_000;
+  
+  // The largest side of the image an animated fractal is rasterized into, in pixels
+  private static final int MAX_ANIMATION_IMAGE = 4096;
+  
+  // The choices of how a fractal is colored: in the picked color, or in a gradient by depth or subtree
+  private static final String COLOR_SOLID = "Solid";
+  private static final String COLOR_DEPTH = "By depth";
+  private static final String COLOR_SUBTREE = "By subtree";
+  
   // Canvas for drawing the fractals
   private Canvas canvas;
   
@@ -41,6 +79,32 @@ public class FractalDrawer extends Application {
   private Button buttonRect;
   private Button buttonErase;
   
+  // Check box for drawing fractals progressively over several frames
+  private CheckBox checkProgressive;
+  
+  // Check box for filling fractals pixel by pixel instead of drawing their outlines
+  private CheckBox checkRaster;
+  
+  // Check box for showing the performance overlay, and the overlay itself
+  private CheckBox checkHud;
+  private PerformanceHud hud;
+  
+  // Check box for previewing the fractal live as its fields are edited
+  private CheckBox checkLive;
+  
+  // Chooses whether fractals are drawn in one color or in a gradient by depth or subtree
+  private ChoiceBox<String> choiceColoring;
+  
+  // Check box for scaling and centering each fractal to fit the canvas, from its bounds before it is generated;
+  // progressive draws keep the typed scale
+  private CheckBox checkFit;
+  
+  // Check box for spinning and zooming the next drawn fractal, rasterized once, until it is cleared
+  private CheckBox checkAnimate;
+  
+  // Shows why the fields cannot be drawn
+  private Label labelStatus;
+  
   // Layout containers
   private HBox hboxTop;
   private HBox hboxBottom;
@@ -69,6 +133,31 @@ public class FractalDrawer extends Application {
   private Button buttonDrawTri;
   private Button buttonDrawRect;
   
+  // Chooses the backend that fills raster fractals
+  private final EnginePlanner planner = new EnginePlanner();
+  
+  // The pixel segments already stroked for the fractal being stroked, cleared before each fractal
+  private final PixelSegmentFilter pixelFilter = new PixelSegmentFilter();
+  
+  // Fractals drawn since the last erase, kept so they can be repainted without regenerating them
+  private final ArrayList<DrawnFractal> drawnFractals = new ArrayList<DrawnFractal>();
+  
+  // The progressive draw in progress, or null when there is none
+  private ProgressiveRenderer progressive;
+  
+  // The animation running, or null when there is none
+  private FractalAnimator animator;
+  
+  // The type of fractal whose fields are shown, or null before a type is chosen
+  private FractalSpec.Type currentType;
+  
+  // Waits for the fields to settle, then generates the latest live preview off the application thread
+  private final PauseTransition previewDelay = new PauseTransition(Duration.millis(PREVIEW_DELAY));
+  private final PreviewPipeline previewPipeline = new PreviewPipeline();
+  
+  // The live preview, drawn over the retained fractals until Draw is clicked, or null
+  private SegmentBuffer previewSegments;
+  
       /**
      * The main entry point for the JavaFX application.
      * Initializes the UI components and sets up event handling.
@@ -79,10 +168,17 @@ public class FractalDrawer extends Application {
     // Initialize the canvas for drawing
     canvas = new Canvas(1500, 500);
     
+    // Lay a transparent canvas for the performance overlay over the drawing canvas
+    Canvas overlay = new Canvas(canvas.getWidth(), canvas.getHeight());
+    overlay.setMouseTransparent(true);
+    overlay.setVisible(false);
+    hud = new PerformanceHud(overlay);
+    StackPane canvasStack = new StackPane(canvas, overlay);
+    
     // Create a border pane and add the canvas
     BorderPane pane = new BorderPane();
-    BorderPane.setMargin(canvas, new Insets(10));
-    pane.setBottom(canvas);
+    BorderPane.setMargin(canvasStack, new Insets(10));
+    pane.setBottom(canvasStack);
     
     // Initialize the vertical box layout
     vbox = new VBox();
@@ -108,10 +204,22 @@ public class FractalDrawer extends Application {
     buttonTri = new Button("Triangle Fractal");
     buttonRect = new Button("Rectangle Fractal");
     buttonErase = new Button("Erase");
+    checkProgressive = new CheckBox("Progressive");
+    checkRaster = new CheckBox("Raster");
+    checkHud = new CheckBox("HUD");
+    checkLive = new CheckBox("Live");
+    checkFit = new CheckBox("Fit");
+    checkAnimate = new CheckBox("Animate");
+    choiceColoring = new ChoiceBox<String>();
+    choiceColoring.getItems().addAll(COLOR_SOLID, COLOR_DEPTH, COLOR_SUBTREE);
+    choiceColoring.setValue(COLOR_SOLID);
+    labelStatus = new Label();
+    labelStatus.setTextFill(Color.FIREBRICK);
     
     // Add layouts to the vertical box
     vbox.getChildren().add(hboxTop);
     vbox.getChildren().add(hboxBottom);
+    vbox.getChildren().add(labelStatus);
     vbox.setSpacing(10);
     
     // Add the vertical box to the top of the border pane
@@ -122,6 +230,13 @@ public class FractalDrawer extends Application {
     hboxTop.getChildren().add(buttonTri);
     hboxTop.getChildren().add(buttonRect);
     hboxTop.getChildren().add(buttonErase);
+    hboxTop.getChildren().add(checkProgressive);
+    hboxTop.getChildren().add(checkRaster);
+    hboxTop.getChildren().add(checkHud);
+    hboxTop.getChildren().add(checkLive);
+    hboxTop.getChildren().add(checkFit);
+    hboxTop.getChildren().add(checkAnimate);
+    hboxTop.getChildren().add(choiceColoring);
     
     // Initialize the color picker and add it to the center of the pane
     colorPicker = new ColorPicker(Color.BLACK);
@@ -206,8 +321,42 @@ public class FractalDrawer extends Application {
     slider.setBlockIncrement(.5);
     pane.setRight(slider);
     
+    // Preview the fractal once the fields stop changing
+    previewDelay.setOnFinished(event -> submitPreview());
+    for (TextField field : new TextField[] {fieldNumSides, fieldLength, fieldWidth, fieldHeight, fieldFirstX, fieldFirstY,
+                                            fieldSecondX, fieldSecondY, fieldThirdX, fieldThirdY, fieldNumLevels, fieldRotation}) {
+      field.textProperty().addListener((observable, oldText, newText) -> schedulePreview());
+    }
+    checkLive.selectedProperty().addListener((observable, wasSelected, selected) -> {
+      if (selected) {
+        schedulePreview();
+      } else {
+        clearPreview();
+      }
+    });
+    checkAnimate.selectedProperty().addListener((observable, wasSelected, selected) -> {
+      if (!selected) {
+        stopAnimation();
+      }
+    });
+    
+    // Restyle the last drawn fractal live as the color or stroke width changes
+    colorPicker.valueProperty().addListener((observable, oldColor, newColor) -> restyleLastFractal());
+    slider.valueProperty().addListener((observable, oldWidth, newWidth) -> restyleLastFractal());
+    
     // Create and display the scene
     Scene scene = new Scene(pane);
+    
+    // Show the performance overlay only while its check box is selected
+    scene.addPostLayoutPulseListener(hud::endPulse);
+    checkHud.selectedProperty().addListener((observable, wasSelected, selected) -> {
+      overlay.setVisible(selected);
+      if (selected) {
+        hud.start();
+      } else {
+        hud.stop();
+      }
+    });
     primaryStage.setScene(scene);
     primaryStage.show();
   }
@@ -241,6 +390,8 @@ public class FractalDrawer extends Application {
         
         // Add correct input fields
         hboxBottom.getChildren().addAll(fieldIterations, fieldNumSides, fieldLength, fieldNumLevels, fieldRotation, buttonDrawSnow);
+        currentType = FractalSpec.Type.SNOWFLAKE;
+        clearPreview();
         
         hboxBottom.setSpacing(20);
         
@@ -261,6 +412,8 @@ public class FractalDrawer extends Application {
         
         // Add correct input fields
         hboxBottom.getChildren().addAll(fieldFirstX, fieldFirstY, fieldSecondX, fieldSecondY, fieldThirdX, fieldThirdY, fieldNumLevels, fieldRotation, buttonDrawTri);
+        currentType = FractalSpec.Type.TRIANGLE;
+        clearPreview();
         
         hboxBottom.setSpacing(20); 
       }
@@ -275,189 +428,33 @@ public class FractalDrawer extends Application {
         
         // Add correct input fields
         hboxBottom.getChildren().addAll(fieldHeight, fieldWidth, fieldNumLevels, fieldRotation, buttonDrawRect);
+        currentType = FractalSpec.Type.RECTANGLE;
+        clearPreview();
         
         hboxBottom.setSpacing(20);
       }
       
       // Handles the drawing of a Snowflake Fractal
       else if (b == buttonDrawSnow) {
-        // Reset the transformation and translate the canvas center
-        graph.setTransform(1, 0, 0, 1, 0, 0);
-        graph.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
-        
-        // Parse user input for fractal parameters
-        int numSides = Integer.parseInt(fieldNumSides.getText());
-        double length = Double.parseDouble(fieldLength.getText());
-        int numLevels = Integer.parseInt(fieldNumLevels.getText());
-        double rotation = Double.parseDouble(fieldRotation.getText());
-        
-        int iterations = Integer.parseInt(fieldIterations.getText());
-        
-        // Variable to hold the base shape
-        Polygon baseShape;
-        
-        // Check if the shape is an equilateral triangle (3 sides)
-        if (numSides == 3) {
-          // Create an equilateral triangle as the base shape
-          baseShape = new EquilateralTriangle(new Point(0,0), length);
-          SnowflakeFractal<EquilateralTriangle> fractal = new SnowflakeFractal<EquilateralTriangle>((EquilateralTriangle) baseShape, numLevels);
-          
-          // Apply rotation and set drawing properties
-          fractal.rotate(rotation);
-          graph.setStroke(colorPicker.getValue());
-          graph.setLineWidth(slider.getValue());
-          
-          // Draw the fractal by iterating through its lines
-          for (Line line : fractal.getLines()) {
-            graph.strokeLine(
-                             (int) (line.getFirstPoint().getX()), 
-                             -1 * (int) (line.getFirstPoint().getY()), 
-                             (int) (line.getSecondPoint().getX()), 
-                             -1 * (int) (line.getSecondPoint().getY())
-                            );
-          }
-        }
-        
-        // Check if the shape is a square (4 sides)
-        else if (numSides == 4) {
-          baseShape = new Square(new Point(0,0), length);
-          SnowflakeFractal<Square> fractal = new SnowflakeFractal<Square>((Square) baseShape, numLevels);
-          
-          // Apply rotation and set drawing properties
-          fractal.rotate(rotation);
-          graph.setStroke(colorPicker.getValue());
-          graph.setLineWidth(slider.getValue());
-          
-          // Draw the fractal by iterating through its lines
-          for (Line line : fractal.getLines()) {
-            graph.strokeLine(
-                             (int) (line.getFirstPoint().getX()), 
-                             -1 * (int) (line.getFirstPoint().getY()), 
-                             (int) (line.getSecondPoint().getX()), 
-                             -1 * (int) (line.getSecondPoint().getY())
-                            );
-          }
-        }
-        
-        // Handle polygons if its a NGon (more than 4 sides)
-        else {
-          // Create a generic NGon as the base shape
-          baseShape = new NGon(new Point(0,0), length);
-          ((NGon) baseShape).setNumSides(numSides);
-          SnowflakeFractal<NGon> fractal = new SnowflakeFractal<NGon>((NGon)baseShape, numLevels);
-          
-          // Apply rotation and set drawing properties
-          fractal.rotate(rotation);
-          graph.setStroke(colorPicker.getValue());
-          graph.setLineWidth(slider.getValue());
-          
-          // Draw the fractal by iterating through its lines
-          for (Line line : fractal.getLines()) {
-            graph.strokeLine(
-                             (int) (line.getFirstPoint().getX()), 
-                             -1 * (int) (line.getFirstPoint().getY()), 
-                             (int) (line.getSecondPoint().getX()), 
-                             -1 * (int) (line.getSecondPoint().getY())
-                            );
-          }
-        }
+        drawFromFields(FractalSpec.Type.SNOWFLAKE);
       }
       
       // Handles the drawing of a Triangle Fractal
       else if (b == buttonDrawTri) {
-        // Reset the transformation and translate the canvas center
-        graph.setTransform(1, 0, 0, 1, 0, 0);
-        graph.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
-        
-        // Parse user input for triangle coordinates and fractal parameters
-        double firstX = Double.parseDouble(fieldFirstX.getText());
-        double firstY = Double.parseDouble(fieldFirstY.getText());
-        double secondX = Double.parseDouble(fieldSecondX.getText());
-        double secondY = Double.parseDouble(fieldSecondY.getText());
-        double thirdX = Double.parseDouble(fieldThirdX.getText());
-        double thirdY = Double.parseDouble(fieldThirdY.getText());
-        int numLevels = Integer.parseInt(fieldNumLevels.getText());
-        double rotation = Double.parseDouble(fieldRotation.getText());
-        
-        // Create a triangle as the base shape
-        Polygon baseShape;
-        baseShape = new Triangle(new Point(firstX,firstY), new Point(secondX,secondY), new Point(thirdX,thirdY));
-        TriangleFractal<Triangle> fractal = new TriangleFractal<Triangle>((Triangle) baseShape, numLevels);
-        
-        // Apply rotation and set drawing properties
-        fractal.rotate(rotation);
-        graph.setStroke(colorPicker.getValue());
-        graph.setLineWidth(slider.getValue());
-        
-        // Draw the fractal by iterating through its lines
-        for (Line line : fractal.getLines()) {
-          graph.strokeLine(
-                           (int) (line.getFirstPoint().getX()), 
-                           -1 * (int) (line.getFirstPoint().getY()), 
-                           (int) (line.getSecondPoint().getX()), 
-                           -1 * (int) (line.getSecondPoint().getY())
-                          );
-        }
+        drawFromFields(FractalSpec.Type.TRIANGLE);
       }
       
       // Handles the drawing of a Rectangle Fractal
       else if (b == buttonDrawRect) {
-        // Reset the transformation and translate the canvas center
-        graph.setTransform(1, 0, 0, 1, 0, 0);
-        graph.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
-        
-        // Parse user input for rectangle dimensions and fractal parameters
-        double width = Double.parseDouble(fieldWidth.getText());
-        double height = Double.parseDouble(fieldHeight.getText());
-        int numLevels = Integer.parseInt(fieldNumLevels.getText());
-        double rotation = Double.parseDouble(fieldRotation.getText());
-        
-        // Check if the rectangle is a square or not
-        if (width != height) {
-          Rectangle rec = new Rectangle(new Point(0,0), width, height);
-          RectangleFractal<Rectangle> recFrac = new RectangleFractal<Rectangle>(rec, numLevels);
-          
-          // Apply rotation and set drawing properties
-          recFrac.rotate(rotation);
-          graph.setStroke(colorPicker.getValue());
-          graph.setLineWidth(slider.getValue());
-          
-          // Draw the fractal by iterating through its lines
-          for (Line line : recFrac.getLines()) {
-            graph.strokeLine(
-                             (int) (line.getFirstPoint().getX()), 
-                             -1 * (int) (line.getFirstPoint().getY()), 
-                             (int) (line.getSecondPoint().getX()), 
-                             -1 * (int) (line.getSecondPoint().getY())
-                            );
-          }
-        }
-        
-        // Handle square case
-        else {
-          // Create a square as the base shape
-          Square square = new Square(new Point(0,0), width);
-          RectangleFractal<Square> squareFrac = new RectangleFractal<Square>(square, numLevels);
-          
-          // Apply rotation and set drawing properties
-          squareFrac.rotate(rotation);
-          graph.setStroke(colorPicker.getValue());
-          graph.setLineWidth(slider.getValue());
-          
-          // Draw the fractal by iterating through its lines
-          for (Line line : squareFrac.getLines()) {
-            graph.strokeLine(
-                             (int) (line.getFirstPoint().getX()), 
-                             -1 * (int) (line.getFirstPoint().getY()), 
-                             (int) (line.getSecondPoint().getX()), 
-                             -1 * (int) (line.getSecondPoint().getY())
-                            );
-          }
-        }
+        drawFromFields(FractalSpec.Type.RECTANGLE);
       }
       
       // Handle Erase button click
       else if (b == buttonErase) {
+        stopAnimation();
+        cancelProgressive();
+        clearPreview();
+        drawnFractals.clear();
         graph.setTransform(1, 0, 0, 1, 0, 0);
         graph.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
       }
@@ -465,4 +462,692 @@ public class FractalDrawer extends Application {
     
   }
   
+  /**
+   * Reads the fields of a fractal type and draws the fractal they describe. Invalid
+   * fields are reported below the fields instead of being drawn.
+   * 
+   * @param type The type of fractal to draw.
+   */
+  private void drawFromFields(FractalSpec.Type type) {
+    FractalSpec spec;
+    try {
+      spec = FractalSpec.parse(readFields(type));
+    } catch (IllegalArgumentException e) {
+      labelStatus.setText(e.getMessage());
+      return;
+    }
+    clearPreview();
+    stopAnimation();
+    if (checkAnimate.isSelected()) {
+      drawAnimated(spec.createFractal(), spec.rotation());
+      return;
+    }
+    
+    // Every type may be filled in raster mode
+    drawRasterizable(spec.createFractal(), spec.rotation());
+  }
+  
+  /**
+   * Collects the text of the fields of a fractal type under the names FractalSpec.parse reads.
+   * An empty rotation field is left out so it defaults to no rotation.
+   * 
+   * @param type The type of fractal.
+   * @return The field texts by parameter name.
+   */
+  private Map<String, String> readFields(FractalSpec.Type type) {
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("type", type.name());
+    params.put("levels", fieldNumLevels.getText());
+    if (!fieldRotation.getText().isBlank()) {
+      params.put("rotation", fieldRotation.getText());
+    }
+    if (type == FractalSpec.Type.SNOWFLAKE) {
+      params.put("sides", fieldNumSides.getText());
+      params.put("length", fieldLength.getText());
+    } else if (type == FractalSpec.Type.TRIANGLE) {
+      params.put("x1", fieldFirstX.getText());
+      params.put("y1", fieldFirstY.getText());
+      params.put("x2", fieldSecondX.getText());
+      params.put("y2", fieldSecondY.getText());
+      params.put("x3", fieldThirdX.getText());
+      params.put("y3", fieldThirdY.getText());
+    } else {
+      params.put("width", fieldWidth.getText());
+      params.put("height", fieldHeight.getText());
+    }
+    return params;
+  }
+  
+  /**
+   * Restarts the wait before a live preview, if live preview is on.
+   */
+  private void schedulePreview() {
+    if (checkLive.isSelected() && currentType != null) {
+      previewDelay.playFromStart();
+    }
+  }
+  
+  /**
+   * Submits the current fields for a live preview. Parsing, validation and generation
+   * happen off the application thread; a newer submission supersedes this one.
+   */
+  private void submitPreview() {
+    if (!checkLive.isSelected() || currentType == null) {
+      return;
+    }
+    previewPipeline.submit(readFields(currentType), 
+                           segments -> {
+                             labelStatus.setText("");
+                             previewSegments = segments;
+                             repaint();
+                           },
+                           message -> labelStatus.setText(message));
+  }
+  
+  /**
+   * Abandons any live preview and removes it from the canvas.
+   */
+  private void clearPreview() {
+    previewDelay.stop();
+    previewPipeline.cancel();
+    labelStatus.setText("");
+    if (previewSegments != null) {
+      previewSegments = null;
+      repaint();
+    }
+  }
+  
+  /**
+   * Generates the lines of a fractal once, keeps them for later restyling, and
+   * draws them with the current color and stroke width.
+   * 
+   * @param fractal The fractal to draw.
+   * @param rotation The rotation to apply to the fractal before drawing.
+   */
+  private void drawFractal(Fractal<?> fractal, double rotation) {
+    if (checkProgressive.isSelected()) {
+      drawProgressively(fractal, rotation);
+      return;
+    }
+    
+    if (!COLOR_SOLID.equals(choiceColoring.getValue())) {
+      drawColored(fractal, rotation, COLOR_DEPTH.equals(choiceColoring.getValue()) ? SegmentBuckets.Key.DEPTH : SegmentBuckets.Key.SUBTREE);
+      return;
+    }
+    
+    long start = System.nanoTime();
+    fractal.rotate(rotation);
+    Viewport view = fitView(fractal);
+    long rotated = System.nanoTime();
+    GenerationBudget budget = createBudget();
+    GraphicsContext graph = canvas.getGraphicsContext2D();
+    resetTransform(graph);
+    
+    // Too large to keep but affordable to draw: keep the fractal instead of its segments and stream it to the canvas
+    if (fractal.estimateSegmentCount() <= budget.getMaxSegments() && fractal.estimateBytes() > budget.getMaxBytes()) {
+      DrawnFractal drawn = new DrawnFractal(fractal, view, false, colorPicker.getValue(), slider.getValue());
+      drawnFractals.add(drawn);
+      long[] streamed = new long[1];
+      if (!streamFractal(graph, drawn, budget, streamed)) {
+        labelStatus.setText("The fractal took too long to generate; try fewer levels");
+      }
+      
+      // Generating and stroking are interleaved, so the whole stream counts as generation
+      hud.recordDraw(streamed[0], System.nanoTime() - rotated, rotated - start, 0, 0);
+      return;
+    }
+    
+    // Retain the generated geometry, generated no deeper than the budget allows
+    Line[] lines = fractal.getLines(budget);
+    long generated = System.nanoTime();
+    SegmentBuffer segments = SegmentBuffer.of(lines);
+    if (checkFit.isSelected()) {
+      segments.transform(view.centerX(), view.centerY(), view.scale());
+    }
+    DrawnFractal drawn = new DrawnFractal(segments, colorPicker.getValue(), slider.getValue());
+    long packed = System.nanoTime();
+    drawnFractals.add(drawn);
+    strokeFractal(graph, drawn);
+    long rendered = System.nanoTime();
+    hud.recordDraw(drawn.segments.size(), generated - rotated, (rotated - start) + (packed - generated),
+                   rendered - packed, drawn.segments.estimateBytes());
+  }
+  
+  /**
+   * Draws a fractal in a gradient, with its segments grouped into one bucket per depth or
+   * subtree as they are generated. The fractal is retained so it can be restyled.
+   * 
+   * @param fractal The fractal to draw.
+   * @param rotation The rotation to apply before drawing, in radians.
+   * @param key Whether the gradient runs over the depths or the subtrees.
+   */
+  private void drawColored(Fractal<?> fractal, double rotation, SegmentBuckets.Key key) {
+    long start = System.nanoTime();
+    fractal.rotate(rotation);
+    Viewport view = fitView(fractal);
+    long rotated = System.nanoTime();
+    
+    // Every bucket is retained, so the byte limit caps the segment count as well
+    GenerationBudget limits = createBudget();
+    GenerationBudget budget = new GenerationBudget(Math.min(limits.getMaxSegments(), limits.getMaxBytes() / 32),
+                                                   limits.getMaxBytes(), GENERATION_TIME_LIMIT);
+    SegmentBuckets buckets = new SegmentBuckets(key);
+    double originX = view.centerX();
+    double originY = view.centerY();
+    double scale = view.scale();
+    if (!fractal.generateTagged((firstX, firstY, secondX, secondY, depth, subtree) ->
+           buckets.add((firstX - originX) * scale, (firstY - originY) * scale,
+                       (secondX - originX) * scale, (secondY - originY) * scale, depth, subtree), budget)) {
+      labelStatus.setText("The fractal took too long to generate; try fewer levels");
+      return;
+    }
+    long generated = System.nanoTime();
+    DrawnFractal drawn = new DrawnFractal(buckets, colorPicker.getValue(), slider.getValue());
+    drawnFractals.add(drawn);
+    GraphicsContext graph = canvas.getGraphicsContext2D();
+    resetTransform(graph);
+    strokeFractal(graph, drawn);
+    long rendered = System.nanoTime();
+    hud.recordDraw(buckets.size(), generated - rotated, rotated - start, rendered - generated, buckets.estimateBytes());
+  }
+  
+  /**
+   * Returns the mapping from a fractal's coordinates to the canvas. In fit mode the
+   * fractal's bounding box, computed without generating it, is centered and scaled to
+   * fill the canvas; otherwise the fractal is drawn at the typed scale around the origin.
+   * 
+   * @param fractal The fractal to draw, already rotated.
+   * @return The mapping to the canvas.
+   */
+  private Viewport fitView(Fractal<?> fractal) {
+    int width = (int) canvas.getWidth();
+    int height = (int) canvas.getHeight();
+    if (!checkFit.isSelected()) {
+      return new Viewport(width, height, 0, 0, 1);
+    }
+    return Viewport.fit(fractal.boundingBox(), width, height, FIT_MARGIN);
+  }
+  
+  /**
+   * Creates the budget a single Draw has to stay within. Retained geometry may use
+   * up to a quarter of the maximum heap.
+   * 
+   * @return A new budget whose deadline starts now.
+   */
+  private GenerationBudget createBudget() {
+    return new GenerationBudget(MAX_SEGMENTS, Runtime.getRuntime().maxMemory() / 4, GENERATION_TIME_LIMIT);
+  }
+  
+  /**
+   * Draws a fractal, either as outlines or, in raster mode, by filling its pixels: a
+   * snowflake solid inside its outline, a carpet's cells solid, and a triangle fractal
+   * as the density of its limit set.
+   * 
+   * @param fractal The fractal to draw.
+   * @param rotation The rotation to apply to the fractal before drawing.
+   */
+  private void drawRasterizable(Fractal<?> fractal, double rotation) {
+    if (!checkRaster.isSelected()) {
+      drawFractal(fractal, rotation);
+      return;
+    }
+    
+    // The fractal itself is retained and filled again on every repaint, at any depth
+    long start = System.nanoTime();
+    fractal.rotate(rotation);
+    DrawnFractal drawn = new DrawnFractal(fractal, fitView(fractal), true, colorPicker.getValue(), slider.getValue());
+    long rotated = System.nanoTime();
+    drawnFractals.add(drawn);
+    GraphicsContext graph = canvas.getGraphicsContext2D();
+    resetTransform(graph);
+    strokeFractal(graph, drawn);
+    long rendered = System.nanoTime();
+    hud.recordDraw(0, 0, rotated - start, rendered - rotated, 4L * (long) canvas.getWidth() * (long) canvas.getHeight());
+  }
+  
+  /**
+   * Draws a fractal coarse to fine over several frames, keeping the window responsive.
+   * A new progressive draw replaces one that is still in progress.
+   * 
+   * @param fractal The fractal to draw.
+   * @param rotation The rotation to apply to the fractal before drawing.
+   */
+  private void drawProgressively(Fractal<?> fractal, double rotation) {
+    cancelProgressive();
+    
+    Color color = colorPicker.getValue();
+    double lineWidth = slider.getValue();
+    GraphicsContext graph = canvas.getGraphicsContext2D();
+    
+    progressive = new ProgressiveRenderer(fractal, rotation, createBudget(), graph, color, lineWidth,
+                                          ProgressiveRenderer.DEFAULT_FRAME_BUDGET,
+                                          this::paintRetained,
+                                          segments -> {
+                                            drawnFractals.add(new DrawnFractal(segments, color, lineWidth));
+                                            if (!progressive.isComplete()) {
+                                              labelStatus.setText("The fractal took too long to generate; try fewer levels");
+                                            }
+                                            progressive = null;
+                                          });
+    progressive.start();
+  }
+  
+  /**
+   * Rasterizes a fractal once, as outlines or filled in raster mode, and spins and zooms the
+   * image every frame until the animation is stopped. The image is a square covering the
+   * canvas diagonal, so the canvas stays covered as it turns, at enough pixels that the
+   * largest zoom does not magnify it. Outlines are widened to the stroke width the slider
+   * gives at rest, and scale with the zoom. The animated fractal is not retained; stopping
+   * the animation brings back the retained fractals.
+   * 
+   * @param fractal The fractal to animate.
+   * @param rotation The rotation the animation starts at.
+   */
+  private void drawAnimated(Fractal<?> fractal, double rotation) {
+    cancelProgressive();
+    long start = System.nanoTime();
+    fractal.rotate(rotation);
+    Viewport fit = fitView(fractal);
+    double diagonal = Math.hypot(canvas.getWidth(), canvas.getHeight());
+    int side = Math.min(MAX_ANIMATION_IMAGE, (int) Math.ceil(FractalAnimator.MAX_ZOOM * diagonal));
+    double pixelsPerUnit = side / diagonal;
+    Viewport view = new Viewport(side, side, fit.centerX(), fit.centerY(), fit.scale() * pixelsPerUnit);
+    long rotated = System.nanoTime();
+    
+    int[] pixels = new int[side * side];
+    int argb = toArgb(colorPicker.getValue());
+    GenerationBudget budget = createBudget();
+    long segmentCount = 0;
+    boolean complete;
+    if (checkRaster.isSelected()) {
+      complete = planner.render(fractal, RenderRequest.raster(view, pixels, argb), budget,
+                                EnumSet.of(FractalEngine.Capability.FILLED));
+    } else {
+      SegmentBuffer segments = new SegmentBuffer();
+      complete = fractal.generate(segments, budget);
+      if (complete) {
+        TileRasterizer.rasterize(TileBinner.bin(segments, view, TileBinner.DEFAULT_TILE_SIZE), pixels, argb);
+        TileRasterizer.widen(pixels, side, side, (int) Math.round(slider.getValue() * pixelsPerUnit), argb);
+        segmentCount = segments.size();
+      }
+    }
+    if (!complete) {
+      labelStatus.setText("The fractal took too long to generate; try fewer levels");
+      return;
+    }
+    WritableImage image = new WritableImage(side, side);
+    image.getPixelWriter().setPixels(0, 0, side, side, PixelFormat.getIntArgbInstance(), pixels, 0, side);
+    long rendered = System.nanoTime();
+    hud.recordDraw(segmentCount, 0, rotated - start, rendered - rotated, 4L * side * side);
+    
+    animator = new FractalAnimator(image, pixelsPerUnit, canvas.getGraphicsContext2D(), hud::recordDroppedFrames);
+    animator.start();
+  }
+  
+  /**
+   * Stops the animation, if one is running, and repaints the retained fractals it covered.
+   */
+  private void stopAnimation() {
+    if (animator != null) {
+      animator.stop();
+      animator = null;
+      repaint();
+    }
+  }
+  
+  /**
+   * Abandons the progressive draw in progress, if there is one.
+   */
+  private void cancelProgressive() {
+    if (progressive != null) {
+      progressive.cancel();
+      progressive = null;
+    }
+  }
+  
+  /**
+   * Applies the current color and stroke width to the most recently drawn fractal
+   * and repaints the canvas from the retained geometry, without regenerating anything.
+   */
+  private void restyleLastFractal() {
+    if (drawnFractals.isEmpty()) {
+      if (previewSegments != null) {
+        repaint();
+      }
+      return;
+    }
+    DrawnFractal last = drawnFractals.get(drawnFractals.size() - 1);
+    last.color = colorPicker.getValue();
+    last.lineWidth = slider.getValue();
+    repaint();
+  }
+  
+  /**
+   * Repaints the canvas from the retained geometry. A progressive draw in progress
+   * starts its current level again since the repaint cleared it.
+   */
+  private void repaint() {
+    paintRetained();
+    if (progressive != null) {
+      progressive.restartLevel();
+    }
+  }
+  
+  /**
+   * Clears the canvas and strokes every retained fractal again, in the order they were drawn,
+   * followed by the live preview if there is one.
+   */
+  private void paintRetained() {
+    GraphicsContext graph = canvas.getGraphicsContext2D();
+    graph.setTransform(1, 0, 0, 1, 0, 0);
+    graph.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    resetTransform(graph);
+    for (DrawnFractal drawn : drawnFractals) {
+      strokeFractal(graph, drawn);
+    }
+    
+    // The live preview is drawn last, in the current style
+    if (previewSegments != null) {
+      graph.setStroke(colorPicker.getValue());
+      graph.setLineWidth(slider.getValue());
+      pixelFilter.clear();
+      strokeSegments(graph, pixelFilter, previewSegments, 0, previewSegments.size());
+    }
+  }
+  
+  /**
+   * Resets the transformation and translates the origin to the canvas center.
+   * 
+   * @param graph The graphics context of the canvas.
+   */
+  private void resetTransform(GraphicsContext graph) {
+    graph.setTransform(1, 0, 0, 1, 0, 0);
+    graph.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
+  }
+  
+  /**
+   * Strokes the retained segments of a fractal with its own color and stroke width.
+   * 
+   * @param graph The graphics context of the canvas.
+   * @param drawn The retained fractal to stroke.
+   */
+  private void strokeFractal(GraphicsContext graph, DrawnFractal drawn) {
+    if (drawn.raster != null) {
+      fillRaster(graph, drawn);
+      return;
+    }
+    if (drawn.buckets != null) {
+      strokeBuckets(graph, drawn);
+      return;
+    }
+    if (drawn.streamed != null) {
+      streamFractal(graph, drawn, createBudget(), new long[1]);
+      return;
+    }
+    
+    graph.setStroke(drawn.color);
+    graph.setLineWidth(drawn.lineWidth);
+    pixelFilter.clear();
+    
+    // Large fractals that spill off the canvas only stroke the segments crossing it
+    if (drawn.segments.size() >= CULLING_THRESHOLD) {
+      if (drawn.index == null) {
+        drawn.index = new SegmentIndex(drawn.segments);
+      }
+      double halfWidth = canvas.getWidth() / 2 + drawn.lineWidth + 1;
+      double halfHeight = canvas.getHeight() / 2 + drawn.lineWidth + 1;
+      if (!drawn.index.isWithin(-halfWidth, -halfHeight, halfWidth, halfHeight)) {
+        SegmentBuffer segments = drawn.segments;
+        drawn.index.query(-halfWidth, -halfHeight, halfWidth, halfHeight, i -> 
+          strokeSegment(graph, pixelFilter, segments.getFirstX(i), segments.getFirstY(i), segments.getSecondX(i), segments.getSecondY(i)));
+        return;
+      }
+    }
+    strokeSegments(graph, pixelFilter, drawn.segments, 0, drawn.segments.size());
+  }
+  
+  /**
+   * Generates a retained fractal again and strokes each segment as it is generated,
+   * without keeping any of them.
+   * 
+   * @param graph The graphics context of the canvas, translated to its center.
+   * @param drawn The retained fractal and its style.
+   * @param budget The limits the generation has to stay within.
+   * @param streamed Receives the number of segments stroked in its first element.
+   * @return True if every segment was stroked, false if the deadline passed first.
+   */
+  private boolean streamFractal(GraphicsContext graph, DrawnFractal drawn, GenerationBudget budget, long[] streamed) {
+    graph.setStroke(drawn.color);
+    graph.setLineWidth(drawn.lineWidth);
+    double originX = drawn.view.centerX();
+    double originY = drawn.view.centerY();
+    double scale = drawn.view.scale();
+    pixelFilter.clear();
+    return drawn.streamed.generate((firstX, firstY, secondX, secondY) -> {
+      strokeSegment(graph, pixelFilter, (firstX - originX) * scale, (firstY - originY) * scale,
+                    (secondX - originX) * scale, (secondY - originY) * scale);
+      streamed[0]++;
+    }, budget);
+  }
+  
+  /**
+   * Strokes a fractal drawn in a gradient. Each bucket is stroked in its own color as a
+   * few long paths instead of one call per segment, so the stroke color is set once per
+   * bucket and a gradient costs about as much as a single color.
+   * 
+   * @param graph The graphics context to draw on.
+   * @param drawn The fractal and its style.
+   */
+  private void strokeBuckets(GraphicsContext graph, DrawnFractal drawn) {
+    graph.setLineWidth(drawn.lineWidth);
+    int bucketCount = drawn.buckets.getBucketCount();
+    for (int bucket = 0; bucket < bucketCount; bucket++) {
+      SegmentBuffer segments = drawn.buckets.getBucket(bucket);
+      if (segments == null) {
+        continue;
+      }
+      graph.setStroke(gradientColor(drawn.color, bucket, bucketCount));
+      
+      // Each bucket has its own color, so a pixel segment seen in an earlier bucket is stroked again
+      pixelFilter.clear();
+      for (int from = 0; from < segments.size(); from += PATH_BATCH) {
+        int to = Math.min(from + PATH_BATCH, segments.size());
+        graph.beginPath();
+        for (int i = from; i < to; i++) {
+          // Rounded the same way as strokeSegment, so a gradient covers the same pixels as a single color
+          int firstX = (int) (segments.getFirstX(i));
+          int firstY = (int) (segments.getFirstY(i));
+          int secondX = (int) (segments.getSecondX(i));
+          int secondY = (int) (segments.getSecondY(i));
+          if (pixelFilter.accept(firstX, firstY, secondX, secondY)) {
+            graph.moveTo(firstX, -1 * firstY);
+            graph.lineTo(secondX, -1 * secondY);
+          }
+        }
+        graph.stroke();
+      }
+    }
+  }
+  
+  /**
+   * Returns the color of one bucket of a gradient. The gradient starts at the hue of the
+   * base color and turns through most of the color wheel, kept saturated and bright enough
+   * that a black or gray base color still gives distinct colors.
+   * 
+   * @param base The color the gradient starts from.
+   * @param bucket The bucket to color.
+   * @param bucketCount The number of buckets in the gradient.
+   * @return The bucket's color.
+   */
+  static Color gradientColor(Color base, int bucket, int bucketCount) {
+    double position = bucketCount > 1 ? (double) bucket / (bucketCount - 1) : 0;
+    return Color.hsb(base.getHue() + 300 * position, Math.max(base.getSaturation(), 0.8),
+                     Math.max(base.getBrightness(), 0.8), base.getOpacity());
+  }
+  
+  /**
+   * Fills the pixels of a retained raster fractal with its color. The image is rasterized
+   * again only when the color has changed since the last fill.
+   * 
+   * @param graph The graphics context of the canvas.
+   * @param drawn The retained raster fractal to fill.
+   */
+  private void fillRaster(GraphicsContext graph, DrawnFractal drawn) {
+    int width = (int) canvas.getWidth();
+    int height = (int) canvas.getHeight();
+    if (drawn.image == null || !drawn.color.equals(drawn.imageColor)) {
+      int[] pixels = new int[width * height];
+      RenderRequest request = RenderRequest.raster(drawn.view, pixels, toArgb(drawn.color));
+      planner.render(drawn.raster, request, createBudget(), EnumSet.of(FractalEngine.Capability.FILLED));
+      drawn.image = new WritableImage(width, height);
+      drawn.image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+      drawn.imageColor = drawn.color;
+    }
+    graph.save();
+    graph.setTransform(1, 0, 0, 1, 0, 0);
+    graph.drawImage(drawn.image, 0, 0);
+    graph.restore();
+  }
+  
+  /**
+   * Converts a color to a packed ARGB integer.
+   * 
+   * @param color The color to convert.
+   * @return The color as ARGB, 8 bits per channel.
+   */
+  static int toArgb(Color color) {
+    return ((int) Math.round(color.getOpacity() * 255) << 24)
+      | ((int) Math.round(color.getRed() * 255) << 16)
+      | ((int) Math.round(color.getGreen() * 255) << 8)
+      | (int) Math.round(color.getBlue() * 255);
+  }
+  
+  /**
+   * Strokes a range of segments with the current stroke settings of the graphics context.
+   * Coordinates are truncated to whole units and the y axis is flipped so that y points up.
+   * 
+   * @param graph The graphics context of the canvas.
+   * @param filter Skips segments that would stroke no new pixels.
+   * @param segments The segments to stroke.
+   * @param from The index of the first segment to stroke.
+   * @param to The index after the last segment to stroke.
+   */
+  static void strokeSegments(GraphicsContext graph, PixelSegmentFilter filter, SegmentBuffer segments, int from, int to) {
+    for (int i = from; i < to; i++) {
+      strokeSegment(graph, filter, segments.getFirstX(i), segments.getFirstY(i), segments.getSecondX(i), segments.getSecondY(i));
+    }
+  }
+  
+  /**
+   * Strokes one segment, truncating its coordinates to whole units and flipping the y axis.
+   * Nothing is stroked if the truncated segment has zero length or has already been stroked
+   * since the filter was last cleared, so the number of draw calls is bounded by the number
+   * of distinct pixel segments rather than the number of generated segments.
+   * 
+   * @param graph The graphics context of the canvas.
+   * @param filter Skips segments that would stroke no new pixels.
+   * @param firstX The x-coordinate of the first endpoint.
+   * @param firstY The y-coordinate of the first endpoint.
+   * @param secondX The x-coordinate of the second endpoint.
+   * @param secondY The y-coordinate of the second endpoint.
+   */
+  static void strokeSegment(GraphicsContext graph, PixelSegmentFilter filter,
+                            double firstX, double firstY, double secondX, double secondY) {
+    int x1 = (int) (firstX);
+    int y1 = (int) (firstY);
+    int x2 = (int) (secondX);
+    int y2 = (int) (secondY);
+    if (!filter.accept(x1, y1, x2, y2)) {
+      return;
+    }
+    graph.strokeLine(
+                     x1, 
+                     -1 * y1, 
+                     x2, 
+                     -1 * y2
+                    );
+  }
+  
+  /**
+   * Holds the generated geometry of one drawn fractal together with the style it is drawn in.
+   */
+  private static class DrawnFractal {
+    
+    // The generated segments, kept so restyling does not regenerate the fractal
+    private final SegmentBuffer segments;
+    
+    // The generated segments of a fractal drawn in a gradient, bucketed by depth or subtree
+    private final SegmentBuckets buckets;
+    
+    // Spatial index over the segments, built the first time a large fractal is stroked
+    private SegmentIndex index;
+    
+    // A fractal filled pixel by pixel instead of stroked, its mapping to the canvas, and its last rasterized image and that image's color
+    private final Fractal<?> raster;
+    private final Viewport view;
+    
+    // A fractal too large to keep the segments of, generated again and streamed to the canvas on every repaint
+    private final Fractal<?> streamed;
+    private WritableImage image;
+    private Color imageColor;
+    
+    // The color and stroke width the fractal is drawn with
+    private Color color;
+    private double lineWidth;
+    
+    /**
+     * Constructs a retained fractal with its segments and style.
+     * 
+     * @param segments The generated segments of the fractal.
+     * @param color The stroke color.
+     * @param lineWidth The stroke width.
+     */
+    private DrawnFractal(SegmentBuffer segments, Color color, double lineWidth) {
+      this.segments = segments;
+      this.buckets = null;
+      this.raster = null;
+      this.view = null;
+      this.streamed = null;
+      this.color = color;
+      this.lineWidth = lineWidth;
+    }
+    
+    /**
+     * Constructs a retained fractal drawn in a gradient.
+     * 
+     * @param buckets The generated segments, bucketed by depth or subtree.
+     * @param color The color the gradient starts from.
+     * @param lineWidth The stroke width.
+     */
+    private DrawnFractal(SegmentBuckets buckets, Color color, double lineWidth) {
+      this.segments = null;
+      this.buckets = buckets;
+      this.raster = null;
+      this.view = null;
+      this.streamed = null;
+      this.color = color;
+      this.lineWidth = lineWidth;
+    }
+    
+    /**
+     * Constructs a retained fractal that is kept as the fractal itself and drawn again on
+     * every repaint, either filled pixel by pixel or streamed segment by segment.
+     * 
+     * @param fractal The fractal to draw.
+     * @param view The mapping from the fractal's coordinates to the canvas.
+     * @param filled True to fill the fractal, false to stream its outline.
+     * @param color The fill or stroke color.
+     * @param lineWidth The stroke width.
+     */
+    private DrawnFractal(Fractal<?> fractal, Viewport view, boolean filled, Color color, double lineWidth) {
+      this.segments = null;
+      this.buckets = null;
+      this.raster = filled ? fractal : null;
+      this.streamed = filled ? null : fractal;
+      this.view = view;
+      this.color = color;
+      this.lineWidth = lineWidth;
+    }
+  }
+  
 }
@@ -0,0 +1,90 @@
+import java.util.Set;
+
+/**
+ * A backend that renders fractals, discovered at run time with ServiceLoader from
+ * META-INF/services/FractalEngine. Each engine advertises what it can do and estimates
+ * what a render would cost, so EnginePlanner can choose the fastest engine for a fractal,
+ * a target and a budget. New backends are added by implementing this interface and
+ * listing the class in the services file; callers choose through the planner and never
+ * name an engine.
+ *
+ * Implementations need a public no-argument constructor and must be safe to use from
+ * several threads at once.
+ *
+ * @author Ethan Hunt
+ */
+public interface FractalEngine {
+
+  /**
+   * What an engine can do beyond rendering.
+   */
+  enum Capability {
+    /** Memory use does not grow with the number of segments */
+    STREAMING,
+    /** The work is spread over several threads */
+    PARALLEL,
+    /** The rendered segments can be read back by index */
+    RANDOM_ACCESS,
+    /** Pixels are computed straight from the fractal without generating its segments */
+    RASTER_DIRECT,
+    /** The inside of the fractal is filled in a raster render, not only its outline */
+    FILLED
+  }
+
+  /**
+   * Where a render goes.
+   */
+  enum Target {
+    /** Segments streamed to a sink, such as one stroking them onto a canvas */
+    CANVAS,
+    /** Segments written to a file */
+    FILE,
+    /** Pixels written into a framebuffer */
+    RASTER
+  }
+
+  /**
+   * Returns a short name for the engine, for logs and the performance overlay.
+   *
+   * @return The name
+   */
+  String getName();
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return The capabilities
+   */
+  Set<Capability> getCapabilities();
+
+  /**
+   * Returns whether the engine can render a fractal to a kind of target.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  boolean supports(Fractal<?> fractal, Target target);
+
+  /**
+   * Estimates how long a render would take, without rendering anything. Estimates only
+   * have to be comparable between engines, not exact.
+   *
+   * @param fractal The fractal, which the engine supports
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds, or Long.MAX_VALUE if the render would not fit the budget
+   */
+  long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget);
+
+  /**
+   * Renders a fractal to a target.
+   *
+   * @param fractal The fractal, which the engine supports
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if the render completed, false if the deadline passed first
+   * @throws java.io.UncheckedIOException If the target is a file that cannot be written
+   */
+  boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget);
+}
@@ -0,0 +1,613 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Serves fractal images over HTTP without a window. The server listens on the loopback
+ * address only and handles every request on its own virtual thread.
+ *
+ * The query parameters mirror the FractalDrawer inputs:
+ * <ul>
+ *   <li>type, levels and rotation for every fractal</li>
+ *   <li>sides and length for a snowflake</li>
+ *   <li>x1, y1, x2, y2, x3 and y3 for a triangle</li>
+ *   <li>width and height for a rectangle</li>
+ *   <li>color (hex RRGGBB or AARRGGBB) and stroke for the style</li>
+ *   <li>mode=tiled to draw one pixel wide lines with the binned, tile-parallel rasterizer
+ *       instead of anti-aliased strokes; the stroke is ignored</li>
+ * </ul>
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>/render returns a PNG laid out like the FractalDrawer canvas, origin at the
+ *       center and one unit per pixel. It takes imageWidth and imageHeight, 1500 by 500 by default.</li>
+ *   <li>/tile/{z}/{x}/{y}.png returns a 256 pixel tile. Zoom level z splits the square
+ *       around the fractal into 2^z by 2^z tiles, with x to the right and y downwards.</li>
+ *   <li>/metrics returns request counts and latencies per endpoint as plain text.</li>
+ * </ul>
+ *
+ * Rendered images are kept in a shared cache. Identical requests that arrive while an
+ * image is rendering wait for that render instead of starting their own.
+ *
+ * @author Ethan Hunt
+ */
+public class FractalServer {
+
+  /** The port used when none is given */
+  public static final int DEFAULT_PORT = 8080;
+
+  /** The width and height of a tile in pixels */
+  public static final int TILE_SIZE = 256;
+
+  /** The deepest zoom level a tile may be requested at */
+  private static final int MAX_ZOOM = 30;
+
+  /** The size of a full render when none is given, the size of the FractalDrawer canvas */
+  private static final int DEFAULT_IMAGE_WIDTH = 1500;
+  private static final int DEFAULT_IMAGE_HEIGHT = 500;
+
+  /** The largest full render, in pixels */
+  private static final long MAX_IMAGE_PIXELS = 16_000_000L;
+
+  /** The most segments and the longest time a single render may use, in milliseconds */
+  private static final long MAX_SEGMENTS = 20_000_000L;
+  private static final long RENDER_TIME_LIMIT = 10_000L;
+
+  /** The most segments a tiled render may keep in memory for binning */
+  private static final long MAX_TILED_SEGMENTS = 4_000_000L;
+
+  /** The most rendered images kept in the cache */
+  private static final int MAX_CACHE_ENTRIES = 512;
+
+  /**
+   * Identifies one rendered image. Full renders have a zoom level of -1.
+   *
+   * @param spec The fractal
+   * @param argb The stroke color as ARGB
+   * @param stroke The stroke width in pixels
+   * @param imageWidth The width of the image in pixels
+   * @param imageHeight The height of the image in pixels
+   * @param zoom The zoom level of a tile, or -1 for a full render
+   * @param tileX The column of a tile
+   * @param tileY The row of a tile
+   * @param tiled True to draw with the binned, tile-parallel rasterizer
+   */
+  private record RenderKey(FractalSpec spec, int argb, double stroke, int imageWidth, int imageHeight,
+                           int zoom, int tileX, int tileY, boolean tiled) {
+  }
+
+  // The HTTP server and the executor running its handlers
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  // Rendered PNGs, and renders in progress, by what they show
+  private final ConcurrentHashMap<RenderKey, CompletableFuture<byte[]>> cache = new ConcurrentHashMap<RenderKey, CompletableFuture<byte[]>>();
+
+  // Cache statistics
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
+
+  // Latency metrics per endpoint, in the order the endpoints are listed
+  private final Map<String, EndpointMetrics> metrics = new LinkedHashMap<String, EndpointMetrics>();
+
+  /**
+   * Constructs a server on the loopback address. Nothing is served until start() is called.
+   *
+   * @param port The port to listen on, or 0 for any free port.
+   * @throws IOException If the port cannot be bound.
+   */
+  public FractalServer(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(executor);
+    addEndpoint("/render", this::handleRender);
+    addEndpoint("/tile/", this::handleTile);
+    addEndpoint("/metrics", this::handleMetrics);
+  }
+
+  /**
+   * Starts a server and serves until the process is stopped.
+   *
+   * @param args An optional port number.
+   * @throws IOException If the port cannot be bound.
+   */
+  public static void main(String[] args) throws IOException {
+    System.setProperty("java.awt.headless", "true");
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    FractalServer server = new FractalServer(port);
+    server.start();
+    System.out.println("Serving fractals on http://localhost:" + server.getPort() + "/");
+  }
+
+  /**
+   * Starts serving requests.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops serving requests, waiting up to a second for requests in progress.
+   */
+  public void stop() {
+    server.stop(1);
+    executor.shutdown();
+  }
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Handles a full render request.
+   *
+   * @param exchange The request and its response.
+   * @param params The query parameters.
+   * @return The PNG image.
+   */
+  private byte[] handleRender(HttpExchange exchange, Map<String, String> params) {
+    int imageWidth = params.containsKey("imageWidth") ? parsePositive(params, "imageWidth") : DEFAULT_IMAGE_WIDTH;
+    int imageHeight = params.containsKey("imageHeight") ? parsePositive(params, "imageHeight") : DEFAULT_IMAGE_HEIGHT;
+    if ((long) imageWidth * imageHeight > MAX_IMAGE_PIXELS) {
+      throw new IllegalArgumentException("Images are limited to " + MAX_IMAGE_PIXELS + " pixels");
+    }
+    return renderCached(new RenderKey(FractalSpec.parse(params), parseColor(params), parseStroke(params),
+                                      imageWidth, imageHeight, -1, 0, 0, parseTiled(params)));
+  }
+
+  /**
+   * Handles a tile request. The path has the form /tile/{z}/{x}/{y}.png.
+   *
+   * @param exchange The request and its response.
+   * @param params The query parameters.
+   * @return The PNG image.
+   */
+  private byte[] handleTile(HttpExchange exchange, Map<String, String> params) {
+    String[] parts = exchange.getRequestURI().getPath().substring("/tile/".length()).replace(".png", "").split("/");
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("Tiles are requested as /tile/{z}/{x}/{y}.png");
+    }
+    int zoom;
+    int tileX;
+    int tileY;
+    try {
+      zoom = Integer.parseInt(parts[0]);
+      tileX = Integer.parseInt(parts[1]);
+      tileY = Integer.parseInt(parts[2]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Tile coordinates must be integers");
+    }
+    long tiles = 1L << Math.max(0, Math.min(zoom, MAX_ZOOM));
+    if (zoom < 0 || zoom > MAX_ZOOM || tileX < 0 || tileX >= tiles || tileY < 0 || tileY >= tiles) {
+      throw new IllegalArgumentException("No tile " + zoom + "/" + tileX + "/" + tileY);
+    }
+    return renderCached(new RenderKey(FractalSpec.parse(params), parseColor(params), parseStroke(params),
+                                      TILE_SIZE, TILE_SIZE, zoom, tileX, tileY, parseTiled(params)));
+  }
+
+  /**
+   * Handles a metrics request.
+   *
+   * @param exchange The request and its response.
+   * @param params The query parameters, unused.
+   * @return The metrics as plain text.
+   */
+  private byte[] handleMetrics(HttpExchange exchange, Map<String, String> params) {
+    StringBuilder text = new StringBuilder();
+    for (Map.Entry<String, EndpointMetrics> entry : metrics.entrySet()) {
+      EndpointMetrics endpoint = entry.getValue();
+      long requests = endpoint.requests.sum();
+      text.append(String.format("%s requests=%d errors=%d meanMillis=%.3f maxMillis=%.3f%n", entry.getKey(),
+                                requests, endpoint.errors.sum(),
+                                requests == 0 ? 0 : endpoint.totalNanos.sum() / 1e6 / requests,
+                                endpoint.maxNanos.get() / 1e6));
+    }
+    text.append(String.format("cache entries=%d hits=%d misses=%d%n", cache.size(), cacheHits.sum(), cacheMisses.sum()));
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns a rendered image from the cache, rendering it if nobody has yet. A request
+   * for an image that is rendering waits for that render. Failed renders, including ones
+   * that fail with an Error such as OutOfMemoryError, are not cached, and the requests
+   * waiting for them fail the same way.
+   *
+   * @param key The image to return.
+   * @return The PNG image.
+   */
+  private byte[] renderCached(RenderKey key) {
+    CompletableFuture<byte[]> render = new CompletableFuture<byte[]>();
+    CompletableFuture<byte[]> existing = cache.putIfAbsent(key, render);
+    if (existing != null) {
+      cacheHits.increment();
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw e;
+      }
+    }
+
+    cacheMisses.increment();
+    try {
+      render.complete(renderPng(key));
+    } catch (Throwable e) {
+      // Whatever went wrong, the waiting requests are released and the next one renders again
+      cache.remove(key, render);
+      render.completeExceptionally(e);
+      throw e;
+    }
+    trimCache();
+    return render.join();
+  }
+
+  /**
+   * Removes finished renders until the cache is back within its size. The map does not
+   * track use, so the entries removed are simply the first ones found.
+   */
+  private void trimCache() {
+    Iterator<Map.Entry<RenderKey, CompletableFuture<byte[]>>> entries = cache.entrySet().iterator();
+    while (cache.size() > MAX_CACHE_ENTRIES && entries.hasNext()) {
+      if (entries.next().getValue().isDone()) {
+        entries.remove();
+      }
+    }
+  }
+
+  /**
+   * Renders an image and encodes it as PNG.
+   *
+   * @param key The image to render.
+   * @return The PNG image.
+   * @throws GenerationBudget.ExceededException If the render takes longer than the time limit.
+   */
+  private static byte[] renderPng(RenderKey key) {
+    FractalSpec spec = key.spec();
+    Fractal<?> fractal = spec.createFractal();
+    fractal.rotate(spec.rotation());
+
+    Viewport view;
+    if (key.zoom() < 0) {
+      view = new Viewport(key.imageWidth(), key.imageHeight(), 0, 0, 1);
+    } else {
+      view = tileViewport(fractal, key.zoom(), key.tileX(), key.tileY());
+    }
+
+    BufferedImage image;
+    if (key.tiled()) {
+      image = renderTiledImage(fractal, view, key.argb(), new GenerationBudget(MAX_TILED_SEGMENTS, Long.MAX_VALUE, RENDER_TIME_LIMIT));
+    } else {
+      image = renderImage(fractal, view, new Color(key.argb(), true), (float) key.stroke(),
+                          new GenerationBudget(MAX_SEGMENTS, Long.MAX_VALUE, RENDER_TIME_LIMIT));
+    }
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", png);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return png.toByteArray();
+  }
+
+  /**
+   * Returns the viewport of a tile. Zoom level 0 is one tile covering the square around
+   * the fractal's bounding box, with a small margin, so no tile is spent on empty space.
+   *
+   * @param fractal The fractal the tiles cover.
+   * @param zoom The zoom level.
+   * @param tileX The column of the tile.
+   * @param tileY The row of the tile.
+   * @return The viewport of the tile.
+   */
+  static Viewport tileViewport(Fractal<?> fractal, int zoom, int tileX, int tileY) {
+    Bounds bounds = fractal.boundingBox();
+    double extent = 1.05 * Math.max(bounds.width(), bounds.height());
+    if (!(extent > 0)) {
+      extent = 1;
+    }
+    double tileSide = extent / (1L << zoom);
+    double tileCenterX = bounds.centerX() - extent / 2 + (tileX + 0.5) * tileSide;
+    double tileCenterY = bounds.centerY() + extent / 2 - (tileY + 0.5) * tileSide;
+    return new Viewport(TILE_SIZE, TILE_SIZE, tileCenterX, tileCenterY, TILE_SIZE / tileSide);
+  }
+
+  /**
+   * Strokes a fractal into a new transparent image. Segments are streamed from the
+   * generator, and segments that cannot touch the image are skipped.
+   *
+   * @param fractal The fractal to render.
+   * @param view The mapping from world coordinates to pixels.
+   * @param color The stroke color.
+   * @param stroke The stroke width in pixels.
+   * @param budget The limits the generation has to stay within.
+   * @return The image.
+   * @throws GenerationBudget.ExceededException If the deadline passes before every segment is drawn.
+   */
+  static BufferedImage renderImage(Fractal<?> fractal, Viewport view, Color color, float stroke, GenerationBudget budget) {
+    BufferedImage image = new BufferedImage(view.width(), view.height(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    graphics.setColor(color);
+    graphics.setStroke(new BasicStroke(stroke));
+
+    double margin = stroke + 1;
+    Line2D.Double line = new Line2D.Double();
+    boolean complete = fractal.generate((firstX, firstY, secondX, secondY) -> {
+      double x1 = view.toPixelX(firstX);
+      double y1 = view.toPixelY(firstY);
+      double x2 = view.toPixelX(secondX);
+      double y2 = view.toPixelY(secondY);
+      if (Math.max(x1, x2) < -margin || Math.min(x1, x2) > view.width() + margin
+          || Math.max(y1, y2) < -margin || Math.min(y1, y2) > view.height() + margin) {
+        return;
+      }
+      line.setLine(x1, y1, x2, y2);
+      graphics.draw(line);
+    }, budget);
+    graphics.dispose();
+
+    if (!complete) {
+      throw new GenerationBudget.ExceededException();
+    }
+    return image;
+  }
+
+  /**
+   * Draws a fractal into a new transparent image with one pixel wide lines. The segments
+   * are binned into screen tiles in Morton order, and the tiles are drawn in parallel.
+   *
+   * @param fractal The fractal to render.
+   * @param view The mapping from world coordinates to pixels.
+   * @param argb The line color as ARGB.
+   * @param budget The limits the generation has to stay within.
+   * @return The image.
+   * @throws GenerationBudget.ExceededException If the deadline passes before every segment is generated.
+   */
+  static BufferedImage renderTiledImage(Fractal<?> fractal, Viewport view, int argb, GenerationBudget budget) {
+    SegmentBuffer segments = new SegmentBuffer();
+    if (!fractal.generate(segments, budget)) {
+      throw new GenerationBudget.ExceededException();
+    }
+    int[] pixels = new int[view.width() * view.height()];
+    TileRasterizer.rasterize(TileBinner.bin(segments, view, TileBinner.DEFAULT_TILE_SIZE), pixels, argb);
+
+    BufferedImage image = new BufferedImage(view.width(), view.height(), BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, view.width(), view.height(), pixels, 0, view.width());
+    return image;
+  }
+
+  /**
+   * Registers an endpoint whose latency and errors are recorded.
+   *
+   * @param path The path prefix of the endpoint.
+   * @param endpoint Produces the response body.
+   */
+  private void addEndpoint(String path, Endpoint endpoint) {
+    EndpointMetrics endpointMetrics = new EndpointMetrics();
+    metrics.put(path, endpointMetrics);
+    server.createContext(path, new MeasuredHandler(endpoint, endpointMetrics, path.equals("/metrics") ? "text/plain; charset=utf-8" : "image/png"));
+  }
+
+  /**
+   * Parses the stroke color, black if none is given.
+   *
+   * @param params The query parameters.
+   * @return The color as ARGB.
+   */
+  private static int parseColor(Map<String, String> params) {
+    String color = params.getOrDefault("color", "000000").replace("#", "");
+    try {
+      if (color.length() == 6) {
+        return 0xFF000000 | Integer.parseInt(color, 16);
+      } else if (color.length() == 8) {
+        return Integer.parseUnsignedInt(color, 16);
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Colors are given as RRGGBB or AARRGGBB: " + color);
+  }
+
+  /**
+   * Parses the stroke width, 2 (the FractalDrawer default) if none is given.
+   *
+   * @param params The query parameters.
+   * @return The stroke width in pixels.
+   */
+  private static double parseStroke(Map<String, String> params) {
+    try {
+      double stroke = Double.parseDouble(params.getOrDefault("stroke", "2"));
+      if (stroke >= 0 && stroke <= 100) {
+        return stroke;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("The stroke must be a number from 0 to 100");
+  }
+
+  /**
+   * Parses the drawing mode: anti-aliased strokes by default, or tiled.
+   *
+   * @param params The query parameters.
+   * @return True for the tiled rasterizer.
+   */
+  private static boolean parseTiled(Map<String, String> params) {
+    String mode = params.getOrDefault("mode", "stroke");
+    if (mode.equals("tiled")) {
+      return true;
+    } else if (mode.equals("stroke")) {
+      return false;
+    }
+    throw new IllegalArgumentException("The mode must be stroke or tiled");
+  }
+
+  /**
+   * Parses a positive integer parameter.
+   *
+   * @param params The query parameters.
+   * @param name The name of the parameter.
+   * @return The value.
+   */
+  private static int parsePositive(Map<String, String> params, String name) {
+    try {
+      int value = Integer.parseInt(params.get(name));
+      if (value > 0) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException(name + " must be a positive integer");
+  }
+
+  /**
+   * Splits a query string into decoded parameters. A repeated parameter keeps its last value.
+   *
+   * @param query The raw query string, or null.
+   * @return The parameters by name.
+   */
+  static Map<String, String> parseQuery(String query) {
+    Map<String, String> params = new HashMap<String, String>();
+    if (query == null || query.isEmpty()) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      String name = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return params;
+  }
+
+  /**
+   * Produces the body of a response.
+   */
+  @FunctionalInterface
+  private interface Endpoint {
+    byte[] respond(HttpExchange exchange, Map<String, String> params);
+  }
+
+  /**
+   * The request count, error count and latencies of one endpoint.
+   */
+  private static class EndpointMetrics {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+  }
+
+  /**
+   * Runs an endpoint, turns its failures into error responses, and records its latency.
+   * Invalid parameters answer 400 and renders that run out of time answer 503.
+   */
+  private static class MeasuredHandler implements HttpHandler {
+
+    // The endpoint, its metrics and the content type of its successful responses
+    private final Endpoint endpoint;
+    private final EndpointMetrics metrics;
+    private final String contentType;
+
+    /**
+     * Constructs a MeasuredHandler.
+     *
+     * @param endpoint Produces the response body.
+     * @param metrics Receives the latency of every request.
+     * @param contentType The content type of successful responses.
+     */
+    private MeasuredHandler(Endpoint endpoint, EndpointMetrics metrics, String contentType) {
+      this.endpoint = endpoint;
+      this.metrics = metrics;
+      this.contentType = contentType;
+    }
+
+    /**
+     * Handles one request.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be written.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      long start = System.nanoTime();
+      int status = 200;
+      String type = contentType;
+      byte[] body;
+      try {
+        if (!exchange.getRequestMethod().equals("GET")) {
+          status = 405;
+          body = "Only GET is supported\n".getBytes(StandardCharsets.UTF_8);
+        } else {
+          body = endpoint.respond(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+        }
+      } catch (IllegalArgumentException e) {
+        status = 400;
+        body = (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8);
+      } catch (GenerationBudget.ExceededException e) {
+        status = 503;
+        body = "The render took too long; try fewer levels\n".getBytes(StandardCharsets.UTF_8);
+      } catch (RuntimeException e) {
+        status = 500;
+        body = (e + "\n").getBytes(StandardCharsets.UTF_8);
+      } catch (OutOfMemoryError e) {
+        // The render's memory is unreachable again once it has failed, so the server carries on
+        status = 503;
+        body = "The render needs more memory than the server has; try a smaller fractal\n".getBytes(StandardCharsets.UTF_8);
+      }
+      if (status != 200) {
+        type = "text/plain; charset=utf-8";
+        metrics.errors.increment();
+      }
+
+      try (OutputStream out = exchange.getResponseBody()) {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        out.write(body);
+      } finally {
+        long nanos = System.nanoTime() - start;
+        metrics.requests.increment();
+        metrics.totalNanos.add(nanos);
+        metrics.maxNanos.accumulate(nanos);
+      }
+    }
+  }
+}
@@ -0,0 +1,241 @@
+import java.util.Map;
+
+/**
+ * Describes a fractal with the same inputs as the FractalDrawer fields: its type, the
+ * number of sides and side length of a snowflake's base polygon, the vertices of a
+ * triangle fractal, the width and height of a rectangle fractal, the number of levels
+ * and the rotation. Inputs that do not apply to the type are zero, so two specs of the
+ * same fractal are equal and can be used as cache keys.
+ *
+ * @param type The kind of fractal
+ * @param numSides The number of sides of a snowflake's base polygon
+ * @param length The side length of a snowflake's base polygon
+ * @param width The width of a rectangle fractal's base rectangle
+ * @param height The height of a rectangle fractal's base rectangle
+ * @param firstX The x-coordinate of a triangle fractal's first vertex
+ * @param firstY The y-coordinate of a triangle fractal's first vertex
+ * @param secondX The x-coordinate of a triangle fractal's second vertex
+ * @param secondY The y-coordinate of a triangle fractal's second vertex
+ * @param thirdX The x-coordinate of a triangle fractal's third vertex
+ * @param thirdY The y-coordinate of a triangle fractal's third vertex
+ * @param numLevels The number of recursive levels
+ * @param rotation The rotation applied to the base shape, in radians
+ * @author Ethan Hunt
+ */
+public record FractalSpec(Type type, int numSides, double length, double width, double height,
+                          double firstX, double firstY, double secondX, double secondY,
+                          double thirdX, double thirdY, int numLevels, double rotation) {
+
+  /** The deepest level a spec may ask for; deeper levels are clamped by the generation budget anyway */
+  public static final int MAX_LEVELS = 30;
+
+  /** The most sides a snowflake's base polygon may have; the polygon is built before any budget applies */
+  public static final int MAX_SIDES = 10_000;
+
+  /**
+   * The kinds of fractal FractalDrawer can draw.
+   */
+  public enum Type {
+    SNOWFLAKE, TRIANGLE, RECTANGLE
+  }
+
+  /**
+   * Checks the inputs as the spec is constructed.
+   *
+   * @throws IllegalArgumentException If an input is out of range for the type
+   */
+  public FractalSpec {
+    if (type == null) {
+      throw new IllegalArgumentException("The fractal type is missing");
+    }
+    if (numLevels < 0 || numLevels > MAX_LEVELS) {
+      throw new IllegalArgumentException("The number of levels must be from 0 to " + MAX_LEVELS);
+    }
+    if (!Double.isFinite(rotation)) {
+      throw new IllegalArgumentException("The rotation must be a finite number");
+    }
+    if (type == Type.SNOWFLAKE) {
+      if (numSides < 3 || numSides > MAX_SIDES) {
+        throw new IllegalArgumentException("A snowflake needs from 3 to " + MAX_SIDES + " sides");
+      }
+      checkPositive("side length", length);
+    } else if (type == Type.RECTANGLE) {
+      checkPositive("width", width);
+      checkPositive("height", height);
+    } else if (!Double.isFinite(firstX + firstY + secondX + secondY + thirdX + thirdY)) {
+      throw new IllegalArgumentException("The triangle's coordinates must be finite numbers");
+    }
+  }
+
+  /**
+   * Creates the spec of a snowflake fractal.
+   *
+   * @param numSides The number of sides of the base polygon
+   * @param length The side length of the base polygon
+   * @param numLevels The number of recursive levels
+   * @param rotation The rotation in radians
+   * @return The spec
+   */
+  public static FractalSpec snowflake(int numSides, double length, int numLevels, double rotation) {
+    return new FractalSpec(Type.SNOWFLAKE, numSides, length, 0, 0, 0, 0, 0, 0, 0, 0, numLevels, rotation);
+  }
+
+  /**
+   * Creates the spec of a triangle fractal.
+   *
+   * @param firstX The x-coordinate of the first vertex
+   * @param firstY The y-coordinate of the first vertex
+   * @param secondX The x-coordinate of the second vertex
+   * @param secondY The y-coordinate of the second vertex
+   * @param thirdX The x-coordinate of the third vertex
+   * @param thirdY The y-coordinate of the third vertex
+   * @param numLevels The number of recursive levels
+   * @param rotation The rotation in radians
+   * @return The spec
+   */
+  public static FractalSpec triangle(double firstX, double firstY, double secondX, double secondY,
+                                     double thirdX, double thirdY, int numLevels, double rotation) {
+    return new FractalSpec(Type.TRIANGLE, 0, 0, 0, 0, firstX, firstY, secondX, secondY, thirdX, thirdY, numLevels, rotation);
+  }
+
+  /**
+   * Creates the spec of a rectangle fractal.
+   *
+   * @param width The width of the base rectangle
+   * @param height The height of the base rectangle
+   * @param numLevels The number of recursive levels
+   * @param rotation The rotation in radians
+   * @return The spec
+   */
+  public static FractalSpec rectangle(double width, double height, int numLevels, double rotation) {
+    return new FractalSpec(Type.RECTANGLE, 0, 0, width, height, 0, 0, 0, 0, 0, 0, numLevels, rotation);
+  }
+
+  /**
+   * Returns the same fractal with a different number of levels.
+   *
+   * @param levels The number of recursive levels
+   * @return The spec
+   */
+  public FractalSpec withNumLevels(int levels) {
+    return new FractalSpec(type, numSides, length, width, height, firstX, firstY, secondX, secondY,
+                           thirdX, thirdY, levels, rotation);
+  }
+
+  /**
+   * Parses a spec from named parameters: type (snowflake, triangle or rectangle), levels
+   * and rotation, plus sides and length for a snowflake, x1, y1, x2, y2, x3 and y3 for a
+   * triangle, or width and height for a rectangle. The rotation defaults to 0.
+   *
+   * @param params The parameters by name
+   * @return The spec
+   * @throws IllegalArgumentException If a parameter is missing, not a number, or out of range
+   */
+  public static FractalSpec parse(Map<String, String> params) {
+    String type = required(params, "type");
+    int numLevels = parseInt(params, "levels");
+    double rotation = params.containsKey("rotation") ? parseDouble(params, "rotation") : 0;
+    switch (type.toLowerCase()) {
+      case "snowflake":
+        return snowflake(parseInt(params, "sides"), parseDouble(params, "length"), numLevels, rotation);
+      case "triangle":
+        return triangle(parseDouble(params, "x1"), parseDouble(params, "y1"), parseDouble(params, "x2"),
+                        parseDouble(params, "y2"), parseDouble(params, "x3"), parseDouble(params, "y3"),
+                        numLevels, rotation);
+      case "rectangle":
+        return rectangle(parseDouble(params, "width"), parseDouble(params, "height"), numLevels, rotation);
+      default:
+        throw new IllegalArgumentException("Unknown fractal type: " + type);
+    }
+  }
+
+  /**
+   * Creates the fractal the spec describes, choosing the base shape as FractalDrawer does.
+   * The rotation is not applied; the caller rotates the fractal before generating it.
+   *
+   * @return A new fractal with its own base shape
+   */
+  public Fractal<?> createFractal() {
+    switch (type) {
+      case SNOWFLAKE:
+        if (numSides == 3) {
+          return new SnowflakeFractal<EquilateralTriangle>(new EquilateralTriangle(new Point(0, 0), length), numLevels);
+        } else if (numSides == 4) {
+          return new SnowflakeFractal<Square>(new Square(new Point(0, 0), length), numLevels);
+        } else {
+          NGon baseShape = new NGon(new Point(0, 0), length);
+          baseShape.setNumSides(numSides);
+          return new SnowflakeFractal<NGon>(baseShape, numLevels);
+        }
+      case TRIANGLE:
+        Triangle baseShape = new Triangle(new Point(firstX, firstY), new Point(secondX, secondY), new Point(thirdX, thirdY));
+        return new TriangleFractal<Triangle>(baseShape, numLevels);
+      default:
+        if (width != height) {
+          return new RectangleFractal<Rectangle>(new Rectangle(new Point(0, 0), width, height), numLevels);
+        }
+        return new RectangleFractal<Square>(new Square(new Point(0, 0), width), numLevels);
+    }
+  }
+
+  /**
+   * Checks that a size is a positive finite number.
+   *
+   * @param name The name of the size, for the error message
+   * @param value The size
+   * @throws IllegalArgumentException If the size is not positive and finite
+   */
+  private static void checkPositive(String name, double value) {
+    if (!(value > 0) || !Double.isFinite(value)) {
+      throw new IllegalArgumentException("The " + name + " must be a positive number");
+    }
+  }
+
+  /**
+   * Returns a parameter that has to be present.
+   *
+   * @param params The parameters by name
+   * @param name The name of the parameter
+   * @return The value of the parameter
+   * @throws IllegalArgumentException If the parameter is missing or empty
+   */
+  private static String required(Map<String, String> params, String name) {
+    String value = params.get(name);
+    if (value == null || value.isBlank()) {
+      throw new IllegalArgumentException("Missing parameter: " + name);
+    }
+    return value.trim();
+  }
+
+  /**
+   * Parses an integer parameter.
+   *
+   * @param params The parameters by name
+   * @param name The name of the parameter
+   * @return The value of the parameter
+   * @throws IllegalArgumentException If the parameter is missing or not an integer
+   */
+  private static int parseInt(Map<String, String> params, String name) {
+    try {
+      return Integer.parseInt(required(params, name));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not an integer: " + name + "=" + params.get(name));
+    }
+  }
+
+  /**
+   * Parses a number parameter.
+   *
+   * @param params The parameters by name
+   * @param name The name of the parameter
+   * @return The value of the parameter
+   * @throws IllegalArgumentException If the parameter is missing or not a number
+   */
+  private static double parseDouble(Map<String, String> params, String name) {
+    try {
+      return Double.parseDouble(required(params, name));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: " + name + "=" + params.get(name));
+    }
+  }
+}
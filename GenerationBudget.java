@@ -0,0 +1,184 @@
+/**
+ * Represents the limits a fractal generation has to stay within: a maximum number
+ * of segments, a maximum number of bytes of retained geometry, and a deadline.
+ * Segment and byte limits are checked against a fractal's closed-form estimates before
+ * any work is done, and the deadline is checked by the generators as they run.
+ * A budget with a deadline can also be cancelled from another thread, which makes
+ * it expire at the generator's next check of the clock.
+ * 
+ * @author Ethan Hunt
+ */
+public final class GenerationBudget {
+
+    /** The deadline value meaning the generation may take as long as it needs */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** How many deadline checks are skipped between reads of the clock */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** A budget without any limits */
+    private static final GenerationBudget UNLIMITED = new GenerationBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /** The maximum number of segments that may be generated */
+    private final long maxSegments;
+
+    /** The maximum number of bytes of geometry that may be retained */
+    private final long maxBytes;
+
+    /** The System.nanoTime() value after which generation must stop */
+    private final long deadline;
+
+    /** Counts deadline checks so the clock is only read every CHECK_INTERVAL checks */
+    private int checks = 0;
+
+    /** Set when the generation is no longer wanted, possibly by another thread */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs a budget without a deadline.
+     * 
+     * @param maxSegments The maximum number of segments that may be generated.
+     * @param maxBytes The maximum number of bytes of geometry that may be retained.
+     */
+    public GenerationBudget(long maxSegments, long maxBytes) {
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
+        this.deadline = NO_DEADLINE;
+    }
+
+    /**
+     * Constructs a budget whose deadline is the given number of milliseconds from now.
+     * 
+     * @param maxSegments The maximum number of segments that may be generated.
+     * @param maxBytes The maximum number of bytes of geometry that may be retained.
+     * @param timeLimitMillis The time allowed for generation, in milliseconds.
+     */
+    public GenerationBudget(long maxSegments, long maxBytes, long timeLimitMillis) {
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
+        this.deadline = System.nanoTime() + timeLimitMillis * 1_000_000L;
+    }
+
+    /**
+     * Returns a budget without any limits.
+     * 
+     * @return The unlimited budget.
+     */
+    public static GenerationBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Returns the maximum number of segments that may be generated.
+     * 
+     * @return The segment limit.
+     */
+    public long getMaxSegments() {
+        return this.maxSegments;
+    }
+
+    /**
+     * Returns the maximum number of bytes of geometry that may be retained.
+     * 
+     * @return The byte limit.
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Returns whether generating the given number of segments, retaining the given
+     * number of bytes, stays within this budget.
+     * 
+     * @param segments The number of segments to generate.
+     * @param bytes The number of bytes that will be retained.
+     * @return True if both numbers are within the limits.
+     */
+    public boolean allows(long segments, long bytes) {
+        return segments <= maxSegments && bytes <= maxBytes;
+    }
+
+    /**
+     * Returns whether this budget has a deadline.
+     * 
+     * @return True if generation is limited in time.
+     */
+    public boolean hasDeadline() {
+        return deadline != NO_DEADLINE;
+    }
+
+    /**
+     * Returns the time left before the deadline, for work that takes a time limit instead
+     * of checking the budget as it runs.
+     * 
+     * @return The milliseconds left, at least 1, or Long.MAX_VALUE if there is no deadline.
+     */
+    public long getRemainingMillis() {
+        if (deadline == NO_DEADLINE) {
+            return Long.MAX_VALUE;
+        }
+        return cancelled ? 1 : Math.max(1, (deadline - System.nanoTime()) / 1_000_000L);
+    }
+
+    /**
+     * Returns whether the deadline has passed.
+     * 
+     * @return True if generation should stop.
+     */
+    public boolean isExpired() {
+        return deadline != NO_DEADLINE && (cancelled || System.nanoTime() - deadline > 0);
+    }
+
+    /**
+     * Makes the budget expire now, so a generation running against it stops at its next
+     * check. May be called from any thread.
+     * 
+     * @throws IllegalStateException If the budget has no deadline, since generators do not check those.
+     */
+    public void cancel() {
+        if (!hasDeadline()) {
+            throw new IllegalStateException("Only a budget with a deadline can be cancelled");
+        }
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the budget has been cancelled.
+     * 
+     * @return True if cancel() has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called by the generators as they run. Reads the clock every CHECK_INTERVAL calls
+     * and throws once the deadline has passed or the budget has been cancelled.
+     * 
+     * @throws ExceededException If the deadline has passed or the budget has been cancelled.
+     */
+    public void checkDeadline() {
+        if (deadline == NO_DEADLINE || (++checks % CHECK_INTERVAL) != 0) {
+            return;
+        }
+        if (isExpired()) {
+            throw new ExceededException();
+        }
+    }
+
+    /**
+     * Thrown by a generator when its budget runs out part way through a level.
+     */
+    public static class ExceededException extends RuntimeException {
+
+        /** The version of the serialized form */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs the exception.
+         */
+        public ExceededException() {
+            super("Generation budget exceeded");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.util.Arrays;
+
+/**
+ * Represents generated geometry as an indexed mesh: a packed buffer of unique vertices
+ * and a buffer of edges that refer to vertices by index. Segments that share an endpoint
+ * share one vertex, so each coordinate is stored once. Transforms such as translate and
+ * rotate only touch the unique vertices.
+ *
+ * @author Ethan Hunt
+ */
+public class IndexedMesh {
+
+  /** The packed vertex coordinates, two doubles (x, y) per vertex */
+  private final double[] vertices;
+
+  /** The number of vertices */
+  private final int vertexCount;
+
+  /** The edge indices, two ints (first vertex, second vertex) per edge */
+  private final int[] edges;
+
+  /** The number of edges */
+  private final int edgeCount;
+
+  /**
+   * Constructs an IndexedMesh from packed buffers. The buffers are used directly, not copied.
+   *
+   * @param vertices The packed vertex coordinates, x then y for each vertex
+   * @param vertexCount The number of vertices in the buffer
+   * @param edges The packed edge indices, first then second vertex for each edge
+   * @param edgeCount The number of edges in the buffer
+   */
+  public IndexedMesh(double[] vertices, int vertexCount, int[] edges, int edgeCount) {
+    this.vertices = vertices;
+    this.vertexCount = vertexCount;
+    this.edges = edges;
+    this.edgeCount = edgeCount;
+  }
+
+  /**
+   * Returns the number of unique vertices.
+   *
+   * @return The number of vertices
+   */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * Returns the number of edges.
+   *
+   * @return The number of edges
+   */
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * Returns the x-coordinate of a vertex.
+   *
+   * @param vertex The index of the vertex
+   * @return The x-coordinate of the vertex
+   */
+  public double getX(int vertex) {
+    return vertices[2 * vertex];
+  }
+
+  /**
+   * Returns the y-coordinate of a vertex.
+   *
+   * @param vertex The index of the vertex
+   * @return The y-coordinate of the vertex
+   */
+  public double getY(int vertex) {
+    return vertices[2 * vertex + 1];
+  }
+
+  /**
+   * Returns the index of the first vertex of an edge.
+   *
+   * @param edge The index of the edge
+   * @return The index of the edge's first vertex
+   */
+  public int getFirstVertex(int edge) {
+    return edges[2 * edge];
+  }
+
+  /**
+   * Returns the index of the second vertex of an edge.
+   *
+   * @param edge The index of the edge
+   * @return The index of the edge's second vertex
+   */
+  public int getSecondVertex(int edge) {
+    return edges[2 * edge + 1];
+  }
+
+  /**
+   * Returns the packed vertex buffer, x then y for each vertex. Only the first
+   * 2 * getVertexCount() entries are used. The array is not copied.
+   *
+   * @return The vertex buffer
+   */
+  public double[] getVertexBuffer() {
+    return vertices;
+  }
+
+  /**
+   * Returns the packed edge index buffer, first then second vertex for each edge. Only
+   * the first 2 * getEdgeCount() entries are used. The array is not copied.
+   *
+   * @return The edge index buffer
+   */
+  public int[] getEdgeBuffer() {
+    return edges;
+  }
+
+  /**
+   * Moves every vertex by an offset.
+   *
+   * @param xDiff The offset along the x axis
+   * @param yDiff The offset along the y axis
+   */
+  public void translate(double xDiff, double yDiff) {
+    for (int i = 0; i < vertexCount; i++) {
+      vertices[2 * i] += xDiff;
+      vertices[2 * i + 1] += yDiff;
+    }
+  }
+
+  /**
+   * Rotates every vertex about a center point by an angle in radians.
+   *
+   * @param centerX The x-coordinate of the center of rotation
+   * @param centerY The y-coordinate of the center of rotation
+   * @param angle The angle in radians to rotate by
+   */
+  public void rotate(double centerX, double centerY, double angle) {
+    double cos = Math.cos(angle);
+    double sin = Math.sin(angle);
+    for (int i = 0; i < vertexCount; i++) {
+      double subX = vertices[2 * i] - centerX;
+      double subY = vertices[2 * i + 1] - centerY;
+      vertices[2 * i] = (subX * cos) - (subY * sin) + centerX;
+      vertices[2 * i + 1] = (subX * sin) + (subY * cos) + centerY;
+    }
+  }
+
+  /**
+   * Sends every edge to a sink as a segment, in edge order.
+   *
+   * @param sink The sink receiving the segments
+   */
+  public void forEachSegment(SegmentSink sink) {
+    for (int e = 0; e < edgeCount; e++) {
+      int first = edges[2 * e];
+      int second = edges[2 * e + 1];
+      sink.add(vertices[2 * first], vertices[2 * first + 1], vertices[2 * second], vertices[2 * second + 1]);
+    }
+  }
+
+  /**
+   * Collects streamed segments into an IndexedMesh, merging endpoints with exactly equal
+   * coordinates into one vertex. Vertices are looked up in an open-addressing hash table
+   * of vertex indices, so no objects are created per vertex.
+   */
+  public static class Builder implements SegmentSink {
+
+    /** Marks an empty slot in the hash table */
+    private static final int EMPTY = -1;
+
+    // The packed vertex coordinates collected so far
+    private double[] vertices = new double[64];
+    private int vertexCount = 0;
+
+    // The packed edge indices collected so far
+    private int[] edges = new int[64];
+    private int edgeCount = 0;
+
+    // Hash table of vertex indices, sized to a power of two
+    private int[] slots = newSlots(64);
+
+    /**
+     * Adds a segment, reusing the vertices of earlier segments where the endpoints match exactly.
+     *
+     * @param firstX The x-coordinate of the first endpoint
+     * @param firstY The y-coordinate of the first endpoint
+     * @param secondX The x-coordinate of the second endpoint
+     * @param secondY The y-coordinate of the second endpoint
+     */
+    @Override
+    public void add(double firstX, double firstY, double secondX, double secondY) {
+      int first = vertexIndex(firstX, firstY);
+      int second = vertexIndex(secondX, secondY);
+      if (2 * edgeCount + 2 > edges.length) {
+        edges = Arrays.copyOf(edges, edges.length * 2);
+      }
+      edges[2 * edgeCount] = first;
+      edges[2 * edgeCount + 1] = second;
+      edgeCount++;
+    }
+
+    /**
+     * Returns the mesh of every segment added so far.
+     *
+     * @return The indexed mesh
+     */
+    public IndexedMesh build() {
+      return new IndexedMesh(Arrays.copyOf(vertices, 2 * vertexCount), vertexCount,
+                             Arrays.copyOf(edges, 2 * edgeCount), edgeCount);
+    }
+
+    /**
+     * Returns the index of the vertex at the given coordinates, adding it if it is new.
+     *
+     * @param x The x-coordinate
+     * @param y The y-coordinate
+     * @return The index of the vertex
+     */
+    private int vertexIndex(double x, double y) {
+      // Adding 0.0 turns -0.0 into 0.0 so both hash and compare as the same vertex
+      x += 0.0;
+      y += 0.0;
+      int mask = slots.length - 1;
+      int slot = hash(x, y) & mask;
+      while (slots[slot] != EMPTY) {
+        int vertex = slots[slot];
+        if (vertices[2 * vertex] == x && vertices[2 * vertex + 1] == y) {
+          return vertex;
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      if (2 * vertexCount + 2 > vertices.length) {
+        vertices = Arrays.copyOf(vertices, vertices.length * 2);
+      }
+      vertices[2 * vertexCount] = x;
+      vertices[2 * vertexCount + 1] = y;
+      slots[slot] = vertexCount;
+      vertexCount++;
+
+      // Keep the table at most half full
+      if (2 * vertexCount > slots.length) {
+        rehash();
+      }
+      return vertexCount - 1;
+    }
+
+    /**
+     * Doubles the hash table and reinserts every vertex.
+     */
+    private void rehash() {
+      slots = newSlots(slots.length * 2);
+      int mask = slots.length - 1;
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        int slot = hash(vertices[2 * vertex], vertices[2 * vertex + 1]) & mask;
+        while (slots[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = vertex;
+      }
+    }
+
+    /**
+     * Creates an empty hash table.
+     *
+     * @param size The number of slots, a power of two
+     * @return The table with every slot empty
+     */
+    private static int[] newSlots(int size) {
+      int[] slots = new int[size];
+      Arrays.fill(slots, EMPTY);
+      return slots;
+    }
+
+    /**
+     * Mixes the bits of both coordinates into a well-spread hash.
+     *
+     * @param x The x-coordinate
+     * @param y The y-coordinate
+     * @return The hash
+     */
+    private static int hash(double x, double y) {
+      long h = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+      h ^= (h >>> 32);
+      h *= 0xC2B2AE3D27D4EB4FL;
+      return (int) (h ^ (h >>> 29));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * A set of long values with open addressing and linear probing, storing the values in
+ * a primitive array so adding one never boxes or allocates. Each slot also holds the
+ * epoch it was filled in, and only slots of the current epoch count as full, so clearing
+ * the set is a counter increment instead of a pass over the table. The table doubles when
+ * half full, up to a maximum capacity; once that is reached the set stops remembering new
+ * values.
+ *
+ * @author Ethan Hunt
+ */
+public class LongHashSet {
+
+  /** The capacity of a new set */
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  /** The default largest capacity, 4M slots or 48 MB */
+  public static final int DEFAULT_MAX_CAPACITY = 1 << 22;
+
+  // The largest capacity the table may grow to, a power of two
+  private final int maxCapacity;
+
+  // The values, and the epoch each slot was filled in
+  private long[] values;
+  private int[] epochs;
+
+  // The epoch of the slots that are currently full; slots of other epochs are empty
+  private int epoch = 1;
+
+  // The number of values added since the last clear
+  private int size = 0;
+
+  /**
+   * Constructs an empty set with the default maximum capacity.
+   */
+  public LongHashSet() {
+    this(DEFAULT_MAX_CAPACITY);
+  }
+
+  /**
+   * Constructs an empty set.
+   *
+   * @param maxCapacity The largest number of slots, rounded up to a power of two
+   */
+  public LongHashSet(int maxCapacity) {
+    this.maxCapacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, maxCapacity - 1)) << 1;
+    this.values = new long[INITIAL_CAPACITY];
+    this.epochs = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Adds a value to the set.
+   *
+   * @param value The value to add
+   * @return False if the value was already in the set, true if it was added or the set is full
+   */
+  public boolean add(long value) {
+    if (size >= values.length / 2 && values.length < maxCapacity) {
+      resize(values.length * 2);
+    }
+    int mask = values.length - 1;
+    for (int slot = slotOf(value, mask); ; slot = (slot + 1) & mask) {
+      if (epochs[slot] != epoch) {
+        // Keep a quarter of the slots empty so probes stay short and always end
+        if (size >= values.length - values.length / 4) {
+          return true;
+        }
+        values[slot] = value;
+        epochs[slot] = epoch;
+        size++;
+        return true;
+      }
+      if (values[slot] == value) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns whether a value is in the set.
+   *
+   * @param value The value to look for
+   * @return True if the value was added since the last clear
+   */
+  public boolean contains(long value) {
+    int mask = values.length - 1;
+    for (int slot = slotOf(value, mask); epochs[slot] == epoch; slot = (slot + 1) & mask) {
+      if (values[slot] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of values in the set.
+   *
+   * @return The number of values added since the last clear
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes every value, keeping the table for reuse.
+   */
+  public void clear() {
+    size = 0;
+    epoch++;
+    if (epoch == Integer.MAX_VALUE) {
+      // The epochs would wrap around into ones still in the table, so empty it for real
+      Arrays.fill(epochs, 0);
+      epoch = 1;
+    }
+  }
+
+  /**
+   * Moves the values of the current epoch into a table of a new capacity.
+   *
+   * @param capacity The new number of slots, a power of two
+   */
+  private void resize(int capacity) {
+    long[] oldValues = values;
+    int[] oldEpochs = epochs;
+    values = new long[capacity];
+    epochs = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldEpochs[i] == epoch) {
+        int slot = slotOf(oldValues[i], mask);
+        while (epochs[slot] == epoch) {
+          slot = (slot + 1) & mask;
+        }
+        values[slot] = oldValues[i];
+        epochs[slot] = epoch;
+      }
+    }
+  }
+
+  /**
+   * Returns the first slot to probe for a value, mixing its bits so nearby values spread out.
+   *
+   * @param value The value
+   * @param mask The number of slots minus one
+   * @return The slot
+   */
+  private static int slotOf(long value, int mask) {
+    long hash = value * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+}
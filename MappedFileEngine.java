@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Writes the segments of any fractal to a memory-mapped file through OffHeapSegmentStore,
+ * so the file can hold more segments than fit on the heap and be read back by index.
+ *
+ * @author Ethan Hunt
+ */
+public class MappedFileEngine implements FractalEngine {
+
+  /** The approximate time to generate and store one segment, in nanoseconds */
+  private static final long NANOS_PER_SEGMENT = 40;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "mapped-file"
+   */
+  @Override
+  public String getName() {
+    return "mapped-file";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Streaming and random access
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.STREAMING, Capability.RANDOM_ACCESS);
+  }
+
+  /**
+   * Supports every fractal written to a file.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.FILE;
+  }
+
+  /**
+   * Estimates the cost from the number of segments the budget lets the fractal generate.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    return Fractal.saturatedMultiply(Math.min(fractal.estimateSegmentCount(), budget.getMaxSegments()), NANOS_PER_SEGMENT);
+  }
+
+  /**
+   * Writes the segments to the request's file, replacing its contents.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if every segment was written, false if the deadline passed first
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    try (OffHeapSegmentStore store = OffHeapSegmentStore.mapped(request.file())) {
+      return fractal.generate(store, budget);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -3,11 +3,21 @@
  * and a side length. Provides methods to set and retrieve the center, side length,
  * and number of sides, as well as to calculate the polygon's vertices.
  * Extends the Polygon class to inherit functionality for point and line management.
+ * The vertices are computed from a table of unit-circle directions, shared by all NGons
+ * with the same small number of sides, and computed again whenever the NGon changes.
  * 
  * @author Ethan Hunt
  */
+import java.util.concurrent.ConcurrentHashMap;
+
 public class NGon extends Polygon  implements Snowflakeable{
   
+  /** The most sides for which the unit-circle table is cached; larger NGons compute their own */
+  private static final int MAX_CACHED_SIDES = 64;
+  
+  /** Cosines and sines of the vertex angles, interleaved, keyed by the number of sides */
+  private static final ConcurrentHashMap<Integer, double[]> UNIT_CIRCLES = new ConcurrentHashMap<Integer, double[]>();
+  
   /** The center point of the NGon */
   private Point center;
   
@@ -25,7 +35,7 @@ public class NGon extends Polygon  implements Snowflakeable{
    * @param sideLength The length of each side of the NGon
    */
   public NGon(Point center, double sideLength) {
-    super(new Point[0]);  // Initialize an empty array for points; to be calculated later
+    super(new Point[0]);  // Initialize an empty array for points; to be calculated once the sides are set
     this.center = center;
     this.sideLength = sideLength;
   }
@@ -48,12 +58,7 @@ public class NGon extends Polygon  implements Snowflakeable{
   @Override
   public void setCenter(Point center) {
     this.center = center;
-    
-    Point[] points = new Point[this.getNumSides()];
-    for (int i = 0; i < this.getNumSides(); i++) {
-        points[i] = new Point(center.getX() + getSideLength() * Math.cos(i * 2 * Math.PI / this.getNumSides()), center.getY() + getSideLength() * Math.sin(i * 2 * Math.PI / this.getNumSides()));
-    }
-    setPoints(points); 
+    updatePoints();
   }
   
   /**
@@ -72,12 +77,7 @@ public class NGon extends Polygon  implements Snowflakeable{
    */
   public void setSideLength(double sideLength) {
     this.sideLength = sideLength;
-    
-    Point[] points = new Point[this.getNumSides()];
-    for (int i = 0; i < this.getNumSides(); i++) {
-        points[i] = new Point(center.getX() + getSideLength() * Math.cos(i * 2 * Math.PI / this.getNumSides()), center.getY() + getSideLength() * Math.sin(i * 2 * Math.PI / this.getNumSides()));
-    }
-    setPoints(points); 
+    updatePoints();
   }
   
   /**
@@ -96,11 +96,52 @@ public class NGon extends Polygon  implements Snowflakeable{
    */
   public void setNumSides(int numSides) {
     this.numSides = numSides;
-    
+    updatePoints();
+  }
+  
+  /**
+   * Computes new vertices around the center from the shared unit-circle table.
+   *
+   * @return The vertex points
+   */
+  @Override
+  protected Point[] computePoints() {
     Point[] points = new Point[this.getNumSides()];
+    double[] unitCircle = unitCircle(this.getNumSides());
     for (int i = 0; i < this.getNumSides(); i++) {
-        points[i] = new Point(center.getX() + getSideLength() * Math.cos(i * 2 * Math.PI / this.getNumSides()), center.getY() + getSideLength() * Math.sin(i * 2 * Math.PI / this.getNumSides()));
+      points[i] = new Point(center.getX() + getSideLength() * unitCircle[2 * i],
+                            center.getY() + getSideLength() * unitCircle[2 * i + 1]);
+    }
+    return points;
+  }
+  
+  /**
+   * Returns the cosines and sines of the vertex angles of an NGon with the given number of sides,
+   * interleaved as cos, sin pairs. The table is computed once and shared for up to
+   * MAX_CACHED_SIDES sides, so the cache stays small whatever side counts are drawn.
+   *
+   * @param numSides The number of sides
+   * @return The interleaved unit-circle coordinates of the vertices
+   */
+  private static double[] unitCircle(int numSides) {
+    if (numSides > MAX_CACHED_SIDES) {
+      return computeUnitCircle(numSides);
+    }
+    return UNIT_CIRCLES.computeIfAbsent(numSides, NGon::computeUnitCircle);
+  }
+  
+  /**
+   * Computes the cosines and sines of the vertex angles of an NGon, interleaved as cos, sin pairs.
+   *
+   * @param numSides The number of sides
+   * @return The interleaved unit-circle coordinates of the vertices
+   */
+  private static double[] computeUnitCircle(int numSides) {
+    double[] table = new double[2 * numSides];
+    for (int i = 0; i < numSides; i++) {
+      table[2 * i] = Math.cos(i * 2 * Math.PI / numSides);
+      table[2 * i + 1] = Math.sin(i * 2 * Math.PI / numSides);
     }
-    setPoints(points); 
+    return table;
   }
 }
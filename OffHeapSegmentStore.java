@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Stores line segments outside the Java heap, indexed by long, for fractals too large for
+ * a SegmentBuffer. Segments are packed four doubles each (first x, first y, second x,
+ * second y) into fixed-size chunks, so the number of segments is not limited by array
+ * indexing and the garbage collector only sees one small buffer object per chunk.
+ * The chunks are either direct memory or regions of a memory-mapped file; with a file
+ * the store is limited by disk space rather than by RAM.
+ *
+ * Generators append through the SegmentSink interface, and readers either use the
+ * indexed getters or stream the segments to another sink.
+ *
+ * @author Ethan Hunt
+ */
+public class OffHeapSegmentStore implements SegmentSink, AutoCloseable {
+
+  /** The number of doubles used to store one segment */
+  private static final int STRIDE = 4;
+
+  /** The number of bytes used to store one segment */
+  public static final long BYTES_PER_SEGMENT = STRIDE * Double.BYTES;
+
+  /** The number of segments in one chunk, a power of two (128 MB per chunk) */
+  private static final int CHUNK_SEGMENTS = 1 << 22;
+
+  // Chunk index and offset within a chunk of a segment index
+  private static final int CHUNK_SHIFT = 22;
+  private static final long CHUNK_MASK = CHUNK_SEGMENTS - 1;
+
+  // The chunks allocated so far, each holding CHUNK_SEGMENTS segments
+  private final ArrayList<DoubleBuffer> chunks = new ArrayList<DoubleBuffer>();
+
+  // The file the chunks are mapped from, or null for direct memory
+  private final FileChannel channel;
+
+  // Whether segments may be added
+  private final boolean writable;
+
+  // The number of segments stored
+  private long size = 0;
+
+  /**
+   * Constructs a store over a channel, or over direct memory when the channel is null.
+   *
+   * @param channel The file to map chunks from, or null
+   * @param writable Whether segments may be added
+   */
+  private OffHeapSegmentStore(FileChannel channel, boolean writable) {
+    this.channel = channel;
+    this.writable = writable;
+  }
+
+  /**
+   * Creates an empty store in direct memory. Direct memory is limited by
+   * -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+   *
+   * @return A new empty store
+   */
+  public static OffHeapSegmentStore inMemory() {
+    return new OffHeapSegmentStore(null, true);
+  }
+
+  /**
+   * Creates an empty store backed by a memory-mapped file, replacing the file if it exists.
+   * The operating system pages the file in and out, so the store can grow beyond RAM.
+   * When the store is closed, the file is trimmed to the segments stored and can be opened again.
+   *
+   * @param file The file to store the segments in
+   * @return A new empty store
+   * @throws IOException If the file cannot be created
+   */
+  public static OffHeapSegmentStore mapped(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    return new OffHeapSegmentStore(channel, true);
+  }
+
+  /**
+   * Opens a file written by a mapped store for reading.
+   *
+   * @param file The file holding the segments
+   * @return A read-only store over the segments in the file
+   * @throws IOException If the file cannot be read
+   */
+  public static OffHeapSegmentStore open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    OffHeapSegmentStore store = new OffHeapSegmentStore(channel, false);
+    store.size = channel.size() / BYTES_PER_SEGMENT;
+    long chunkBytes = CHUNK_SEGMENTS * BYTES_PER_SEGMENT;
+    for (long offset = 0; offset < store.size * BYTES_PER_SEGMENT; offset += chunkBytes) {
+      long length = Math.min(chunkBytes, store.size * BYTES_PER_SEGMENT - offset);
+      MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      store.chunks.add(bytes.order(ByteOrder.nativeOrder()).asDoubleBuffer());
+    }
+    return store;
+  }
+
+  /**
+   * Appends a segment to the end of the store, allocating a new chunk when the last one is full.
+   *
+   * @param firstX The x-coordinate of the first endpoint
+   * @param firstY The y-coordinate of the first endpoint
+   * @param secondX The x-coordinate of the second endpoint
+   * @param secondY The y-coordinate of the second endpoint
+   */
+  @Override
+  public void add(double firstX, double firstY, double secondX, double secondY) {
+    if (!writable) {
+      throw new IllegalStateException("The store was opened for reading");
+    }
+    int chunk = (int) (size >>> CHUNK_SHIFT);
+    if (chunk == chunks.size()) {
+      chunks.add(allocateChunk(chunk));
+    }
+    DoubleBuffer buffer = chunks.get(chunk);
+    int offset = (int) (size & CHUNK_MASK) * STRIDE;
+    buffer.put(offset, firstX);
+    buffer.put(offset + 1, firstY);
+    buffer.put(offset + 2, secondX);
+    buffer.put(offset + 3, secondY);
+    size++;
+  }
+
+  /**
+   * Returns the number of segments in the store.
+   *
+   * @return The number of segments stored
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Returns the x-coordinate of the first endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The x-coordinate of the segment's first endpoint
+   */
+  public double getFirstX(long index) {
+    return coordinate(index, 0);
+  }
+
+  /**
+   * Returns the y-coordinate of the first endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The y-coordinate of the segment's first endpoint
+   */
+  public double getFirstY(long index) {
+    return coordinate(index, 1);
+  }
+
+  /**
+   * Returns the x-coordinate of the second endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The x-coordinate of the segment's second endpoint
+   */
+  public double getSecondX(long index) {
+    return coordinate(index, 2);
+  }
+
+  /**
+   * Returns the y-coordinate of the second endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The y-coordinate of the segment's second endpoint
+   */
+  public double getSecondY(long index) {
+    return coordinate(index, 3);
+  }
+
+  /**
+   * Sends every segment to a sink, in order.
+   *
+   * @param sink The sink receiving the segments
+   */
+  public void forEachSegment(SegmentSink sink) {
+    forEachSegment(0, size, sink);
+  }
+
+  /**
+   * Sends a range of segments to a sink, in order.
+   *
+   * @param from The index of the first segment to send
+   * @param to The index after the last segment to send
+   * @param sink The sink receiving the segments
+   */
+  public void forEachSegment(long from, long to, SegmentSink sink) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of " + size + " segments");
+    }
+    long index = from;
+    while (index < to) {
+      DoubleBuffer buffer = chunks.get((int) (index >>> CHUNK_SHIFT));
+      int offset = (int) (index & CHUNK_MASK) * STRIDE;
+      long chunkEnd = Math.min(to, ((index >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+      for (; index < chunkEnd; index++, offset += STRIDE) {
+        sink.add(buffer.get(offset), buffer.get(offset + 1), buffer.get(offset + 2), buffer.get(offset + 3));
+      }
+    }
+  }
+
+  /**
+   * Releases the chunks. A mapped file is trimmed to the segments stored and closed.
+   * Direct memory is returned once the garbage collector frees the chunk buffers.
+   */
+  @Override
+  public void close() {
+    chunks.clear();
+    if (channel != null) {
+      try {
+        if (writable) {
+          channel.truncate(size * BYTES_PER_SEGMENT);
+        }
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Reads one coordinate of a segment.
+   *
+   * @param index The index of the segment
+   * @param coordinate The coordinate within the segment, 0 to 3
+   * @return The coordinate
+   */
+  private double coordinate(long index, int coordinate) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Segment " + index + " of " + size);
+    }
+    return chunks.get((int) (index >>> CHUNK_SHIFT)).get((int) (index & CHUNK_MASK) * STRIDE + coordinate);
+  }
+
+  /**
+   * Allocates a chunk, either in direct memory or as the next region of the file.
+   *
+   * @param chunk The index of the chunk
+   * @return The chunk as a buffer of doubles
+   */
+  private DoubleBuffer allocateChunk(int chunk) {
+    long chunkBytes = CHUNK_SEGMENTS * BYTES_PER_SEGMENT;
+    ByteBuffer bytes;
+    if (channel == null) {
+      bytes = ByteBuffer.allocateDirect((int) chunkBytes);
+    } else {
+      try {
+        bytes = channel.map(FileChannel.MapMode.READ_WRITE, chunk * chunkBytes, chunkBytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return bytes.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+  }
+}
@@ -0,0 +1,311 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a fractal on several PartitionWorker processes and merges their segments in
+ * a deterministic order. The fractal is split into its partitions, the independent
+ * subtrees a few levels down its recursion, so there are many more partitions than
+ * workers. Each worker connection takes the next partition that has not been generated,
+ * so faster workers take more of them, and a partition whose worker fails is retried on
+ * the workers still connected. A connection with nothing left to take stays open until
+ * every partition is done, in case another worker fails and its partition comes back.
+ *
+ * Partitions arrive in any order and are spooled to temporary memory-mapped files, then
+ * streamed to the sink in partition order, as soon as every earlier partition is done.
+ * The sink receives the same segments, in the same order, as Fractal.generate would give
+ * it, whatever the number of workers and whichever worker generated each partition.
+ *
+ * @author Ethan Hunt
+ */
+public class PartitionCoordinator {
+
+  /** The depth the fractal is split at when none is given */
+  public static final int DEFAULT_SPLIT_DEPTH = 2;
+
+  /** The longest time to wait for a connection to a worker, in milliseconds */
+  private static final int CONNECT_TIMEOUT = 5_000;
+
+  /** How often an idle connection checks whether every partition is done, in milliseconds */
+  private static final long IDLE_POLL = 50;
+
+  // The workers to spread the partitions over
+  private final List<InetSocketAddress> workers;
+
+  /**
+   * Constructs a coordinator over a set of workers.
+   *
+   * @param workers The addresses of the workers
+   * @throws IllegalArgumentException If there are no workers
+   */
+  public PartitionCoordinator(List<InetSocketAddress> workers) {
+    if (workers.isEmpty()) {
+      throw new IllegalArgumentException("At least one worker is needed");
+    }
+    this.workers = List.copyOf(workers);
+  }
+
+  /**
+   * Generates a fractal on the workers and writes its segments to a file readable with
+   * OffHeapSegmentStore.open, from the command line.
+   *
+   * @param args The file to write, the workers as host:port separated by commas, and the
+   *             fractal as name=value parameters read by FractalSpec.parse, with an
+   *             optional split=depth to split the fractal at
+   * @throws IOException If the file cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("Usage: PartitionCoordinator <file> <host:port>[,<host:port>...] type=... levels=... "
+                         + "[split=depth] [name=value...]");
+      System.exit(2);
+    }
+    List<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+    for (String worker : args[1].split(",")) {
+      int colon = worker.lastIndexOf(':');
+      workers.add(new InetSocketAddress(worker.substring(0, colon), Integer.parseInt(worker.substring(colon + 1))));
+    }
+    Map<String, String> params = new HashMap<String, String>();
+    for (int i = 2; i < args.length; i++) {
+      int equals = args[i].indexOf('=');
+      params.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+    }
+    String split = params.remove("split");
+    int splitDepth = split == null ? DEFAULT_SPLIT_DEPTH : Integer.parseInt(split);
+
+    long start = System.nanoTime();
+    PartitionCoordinator coordinator = new PartitionCoordinator(workers);
+    try (OffHeapSegmentStore store = OffHeapSegmentStore.mapped(Paths.get(args[0]))) {
+      coordinator.generate(FractalSpec.parse(params), splitDepth, store, GenerationBudget.unlimited());
+      System.out.println("Wrote " + store.size() + " segments to " + args[0] + " in "
+                         + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+  }
+
+  /**
+   * Generates a fractal on the workers, split at the default depth, streaming its segments
+   * to a sink in generation order.
+   *
+   * @param spec The fractal to generate
+   * @param sink The sink receiving each segment, always on the calling thread
+   * @param budget The limits the generation has to stay within
+   * @return True if every segment was streamed, false if the deadline passed first
+   * @throws UncheckedIOException If a worker reports an error or no worker can be reached
+   */
+  public boolean generate(FractalSpec spec, SegmentSink sink, GenerationBudget budget) {
+    return generate(spec, DEFAULT_SPLIT_DEPTH, sink, budget);
+  }
+
+  /**
+   * Generates a fractal on the workers, streaming its segments to a sink in generation order.
+   * The number of levels is lowered, as for Fractal.generate, until the segments fit the
+   * budget's segment limit; they are spooled to disk, so the byte limit does not apply.
+   *
+   * @param spec The fractal to generate
+   * @param splitDepth The depth to split the fractal at, as for Fractal.getPartitionCount
+   * @param sink The sink receiving each segment, always on the calling thread
+   * @param budget The limits the generation has to stay within
+   * @return True if every segment was streamed, false if the deadline passed first
+   * @throws UncheckedIOException If a worker reports an error or no worker can be reached
+   */
+  public boolean generate(FractalSpec spec, int splitDepth, SegmentSink sink, GenerationBudget budget) {
+    Fractal<?> fractal = spec.createFractal();
+    int levels = spec.numLevels();
+    while (levels > 0 && !budget.allows(fractal.estimateSegmentCount(levels), 0)) {
+      levels--;
+    }
+    fractal.setNumLevels(levels);
+    FractalSpec job = spec.withNumLevels(levels);
+    int partitions = fractal.getPartitionCount(splitDepth);
+
+    // The spooled segments of each partition, or null if its deadline passed
+    List<CompletableFuture<Path>> results = new ArrayList<CompletableFuture<Path>>();
+    LinkedBlockingQueue<Integer> pending = new LinkedBlockingQueue<Integer>();
+    AtomicInteger unfinished = new AtomicInteger(partitions);
+    for (int partition = 0; partition < partitions; partition++) {
+      CompletableFuture<Path> result = new CompletableFuture<Path>();
+      result.whenComplete((spool, failure) -> unfinished.decrementAndGet());
+      results.add(result);
+      pending.add(partition);
+    }
+    ConcurrentLinkedQueue<Path> spools = new ConcurrentLinkedQueue<Path>();
+    AtomicInteger connected = new AtomicInteger(workers.size());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (InetSocketAddress worker : workers) {
+      threads.add(Thread.ofVirtual().name("partition-" + worker).start(() ->
+        runWorker(worker, job, splitDepth, pending, unfinished, results, spools, connected, budget)));
+    }
+
+    // Merge in partition order, each partition as soon as it and every earlier one are done
+    try {
+      for (int partition = 0; partition < partitions; partition++) {
+        Path spool = results.get(partition).join();
+        if (spool == null) {
+          return false;
+        }
+        try (OffHeapSegmentStore store = OffHeapSegmentStore.open(spool)) {
+          store.forEachSegment(sink);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        deleteSpool(spool);
+      }
+      return true;
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw (UncheckedIOException) e.getCause();
+      }
+      throw e;
+    } finally {
+      // Abandon the partitions not yet generated; interrupting a thread closes its socket
+      pending.clear();
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+      for (Thread thread : threads) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      for (Path spool : spools) {
+        deleteSpool(spool);
+      }
+    }
+  }
+
+  /**
+   * Runs partitions on one worker until every partition is done, the worker fails, or the
+   * merge is over and the thread is interrupted. While nothing is pending the connection
+   * waits, since a partition another worker fails to deliver goes back to the pending ones.
+   * The last connection to end fails every partition still pending.
+   *
+   * @param worker The address of the worker
+   * @param job The fractal, with the number of levels to generate
+   * @param splitDepth The depth the fractal is split at
+   * @param pending The partitions not yet taken by a worker
+   * @param unfinished The number of partitions whose result is not complete
+   * @param results The spooled segments of every partition
+   * @param spools Every spool file created, to delete once the merge is over
+   * @param connected The number of worker connections still running
+   * @param budget The limits the generation has to stay within
+   */
+  private static void runWorker(InetSocketAddress worker, FractalSpec job, int splitDepth,
+                                LinkedBlockingQueue<Integer> pending, AtomicInteger unfinished,
+                                List<CompletableFuture<Path>> results, ConcurrentLinkedQueue<Path> spools,
+                                AtomicInteger connected, GenerationBudget budget) {
+    try (Socket socket = new Socket()) {
+      socket.connect(worker, CONNECT_TIMEOUT);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+      ByteBuffer block = ByteBuffer.allocate(PartitionProtocol.BLOCK_SEGMENTS * PartitionProtocol.BYTES_PER_SEGMENT);
+      while (unfinished.get() > 0) {
+        Integer partition = pending.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+        if (partition == null) {
+          continue;
+        }
+        try {
+          results.get(partition).complete(receivePartition(job, splitDepth, partition, in, out, block, spools, budget));
+        } catch (IOException e) {
+          pending.add(partition);
+          throw e;
+        } catch (UncheckedIOException e) {
+          results.get(partition).completeExceptionally(e);
+        }
+      }
+    } catch (IOException e) {
+      // The worker cannot be reached or went away; the other workers take its partitions
+    } catch (InterruptedException e) {
+      // The merge is over
+    } finally {
+      if (connected.decrementAndGet() == 0) {
+        Integer partition;
+        while ((partition = pending.poll()) != null) {
+          results.get(partition).completeExceptionally(new UncheckedIOException(
+            new IOException("No worker left to generate partition " + partition)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends one partition to a worker and spools the segments it sends back.
+   *
+   * @param job The fractal, with the number of levels to generate
+   * @param splitDepth The depth the fractal is split at
+   * @param partition The partition to generate
+   * @param in The stream from the worker
+   * @param out The stream to the worker
+   * @param block A buffer for one block of segments
+   * @param spools Every spool file created, to delete once the merge is over
+   * @param budget The limits the generation has to stay within
+   * @return The spool file, or null if the deadline passed first
+   * @throws IOException If the connection to the worker fails
+   * @throws UncheckedIOException If the worker cannot generate the partition or the spool cannot be written
+   */
+  private static Path receivePartition(FractalSpec job, int splitDepth, int partition, DataInputStream in,
+                                       DataOutputStream out, ByteBuffer block, ConcurrentLinkedQueue<Path> spools,
+                                       GenerationBudget budget) throws IOException {
+    if (budget.isExpired() || budget.isCancelled()) {
+      return null;
+    }
+    PartitionProtocol.writeJob(out, job, splitDepth, partition, budget.hasDeadline() ? budget.getRemainingMillis() : 0);
+
+    Path spool;
+    OffHeapSegmentStore store;
+    try {
+      spool = Files.createTempFile("partition-" + partition + "-", ".seg");
+      spools.add(spool);
+      store = OffHeapSegmentStore.mapped(spool);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try (store) {
+      int count;
+      while ((count = in.readInt()) > 0) {
+        PartitionProtocol.readBlock(in, count, block, store);
+      }
+      if (count == PartitionProtocol.TIMED_OUT) {
+        return null;
+      }
+      if (count == PartitionProtocol.FAILED) {
+        throw new UncheckedIOException(new IOException("Partition " + partition + " failed: " + in.readUTF()));
+      }
+      return spool;
+    }
+  }
+
+  /**
+   * Deletes a spool file, leaving it in the temporary directory if it cannot be deleted.
+   *
+   * @param spool The file
+   */
+  private static void deleteSpool(Path spool) {
+    try {
+      Files.deleteIfExists(spool);
+    } catch (IOException e) {
+      // Left for the operating system to clear with the rest of the temporary directory
+    }
+  }
+}
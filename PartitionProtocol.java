@@ -0,0 +1,130 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary messages between a PartitionCoordinator and its PartitionWorkers. A
+ * connection carries any number of jobs, one at a time. The coordinator sends a job: the
+ * depth the fractal is split at, the partition, the time limit in milliseconds (0 for
+ * none) and the fractal's spec. The
+ * worker answers with blocks of segments, each an int count followed by that many
+ * segments of four doubles, and ends the partition with an int that is not positive:
+ * COMPLETE, TIMED_OUT, or FAILED followed by a message. All numbers are big-endian.
+ *
+ * @author Ethan Hunt
+ */
+public final class PartitionProtocol {
+
+  /** The most segments in one block */
+  public static final int BLOCK_SEGMENTS = 4096;
+
+  /** The number of bytes of one segment in a block */
+  public static final int BYTES_PER_SEGMENT = 4 * Double.BYTES;
+
+  /** Ends a partition whose segments were all sent */
+  public static final int COMPLETE = 0;
+
+  /** Ends a partition whose time limit passed before all its segments were sent */
+  public static final int TIMED_OUT = -1;
+
+  /** Ends a partition the worker could not generate; a message follows */
+  public static final int FAILED = -2;
+
+  /**
+   * Prevents instantiation; the protocol is a set of static methods.
+   */
+  private PartitionProtocol() {
+  }
+
+  /**
+   * Sends a job.
+   *
+   * @param out The stream to the worker
+   * @param spec The fractal, with the number of levels to generate
+   * @param depth The depth the fractal is split at, as for Fractal.generatePartition
+   * @param partition The partition to generate
+   * @param timeLimitMillis The time the worker may take, or 0 for no limit
+   * @throws IOException If the job cannot be sent
+   */
+  public static void writeJob(DataOutputStream out, FractalSpec spec, int depth, int partition,
+                              long timeLimitMillis) throws IOException {
+    out.writeInt(depth);
+    out.writeInt(partition);
+    out.writeLong(timeLimitMillis);
+    out.writeUTF(spec.type().name());
+    out.writeInt(spec.numSides());
+    out.writeDouble(spec.length());
+    out.writeDouble(spec.width());
+    out.writeDouble(spec.height());
+    out.writeDouble(spec.firstX());
+    out.writeDouble(spec.firstY());
+    out.writeDouble(spec.secondX());
+    out.writeDouble(spec.secondY());
+    out.writeDouble(spec.thirdX());
+    out.writeDouble(spec.thirdY());
+    out.writeInt(spec.numLevels());
+    out.writeDouble(spec.rotation());
+    out.flush();
+  }
+
+  /**
+   * Reads the spec of a job, after its depth, partition and time limit have been read.
+   *
+   * @param in The stream from the coordinator
+   * @return The spec
+   * @throws IOException If the spec cannot be read
+   * @throws IllegalArgumentException If the spec is not valid
+   */
+  public static FractalSpec readSpec(DataInputStream in) throws IOException {
+    String type = in.readUTF();
+    int numSides = in.readInt();
+    double length = in.readDouble();
+    double width = in.readDouble();
+    double height = in.readDouble();
+    double firstX = in.readDouble();
+    double firstY = in.readDouble();
+    double secondX = in.readDouble();
+    double secondY = in.readDouble();
+    double thirdX = in.readDouble();
+    double thirdY = in.readDouble();
+    int numLevels = in.readInt();
+    double rotation = in.readDouble();
+
+    // Every field is read before checking any, so a rejected spec leaves the stream at the next job
+    return new FractalSpec(FractalSpec.Type.valueOf(type), numSides, length, width, height,
+                           firstX, firstY, secondX, secondY, thirdX, thirdY, numLevels, rotation);
+  }
+
+  /**
+   * Sends a block of segments.
+   *
+   * @param out The stream to the coordinator
+   * @param block The segments, BYTES_PER_SEGMENT bytes each, from the start of the buffer to its position
+   * @throws IOException If the block cannot be sent
+   */
+  public static void writeBlock(DataOutputStream out, ByteBuffer block) throws IOException {
+    out.writeInt(block.position() / BYTES_PER_SEGMENT);
+    out.write(block.array(), 0, block.position());
+  }
+
+  /**
+   * Reads the segments of a block into a sink.
+   *
+   * @param in The stream from the worker
+   * @param count The number of segments in the block, already read
+   * @param block A buffer of at least BLOCK_SEGMENTS segments to read into
+   * @param sink The sink receiving the segments
+   * @throws IOException If the block cannot be read
+   */
+  public static void readBlock(DataInputStream in, int count, ByteBuffer block, SegmentSink sink) throws IOException {
+    if (count > BLOCK_SEGMENTS) {
+      throw new IOException("Block of " + count + " segments is larger than " + BLOCK_SEGMENTS);
+    }
+    in.readFully(block.array(), 0, count * BYTES_PER_SEGMENT);
+    block.clear();
+    for (int i = 0; i < count; i++) {
+      sink.add(block.getDouble(), block.getDouble(), block.getDouble(), block.getDouble());
+    }
+  }
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates partitions of fractals for a PartitionCoordinator in another process, possibly
+ * on another host. The worker listens on a TCP port and serves every connection on its own
+ * virtual thread; each connection sends jobs one at a time, as described in
+ * PartitionProtocol, and receives the segments of each partition in blocks as they are
+ * generated, so the worker never holds more than one block.
+ *
+ * Run several workers on one machine by giving each its own port. A worker listens on the
+ * loopback address unless another address is given, which is needed to serve other hosts.
+ *
+ * @author Ethan Hunt
+ */
+public class PartitionWorker {
+
+  /** The port used when none is given */
+  public static final int DEFAULT_PORT = 9090;
+
+  // The socket accepting connections from coordinators
+  private final ServerSocket server;
+
+  // Accepts connections; not a daemon, so the process keeps running
+  private final Thread acceptor = new Thread(this::acceptConnections, "partition-worker");
+
+  // Runs every connection
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  /**
+   * Constructs a worker listening on a port. Nothing is accepted until start() is called.
+   *
+   * @param port The port to listen on, or 0 for any free port
+   * @param address The address to listen on
+   * @throws IOException If the port cannot be opened
+   */
+  public PartitionWorker(int port, InetAddress address) throws IOException {
+    this.server = new ServerSocket(port, 50, address);
+  }
+
+  /**
+   * Starts a worker from the command line.
+   *
+   * @param args The port, DEFAULT_PORT if absent, and the address to listen on, the loopback address if absent
+   * @throws IOException If the port cannot be opened
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    InetAddress address = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+    PartitionWorker worker = new PartitionWorker(port, address);
+    worker.start();
+    System.out.println("Generating partitions on " + address.getHostAddress() + ":" + worker.getPort());
+  }
+
+  /**
+   * Starts accepting connections.
+   */
+  public void start() {
+    acceptor.start();
+  }
+
+  /**
+   * Stops accepting connections and abandons the jobs in progress.
+   */
+  public void stop() {
+    try {
+      server.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the port the worker listens on.
+   *
+   * @return The port.
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Accepts connections until the server socket is closed, serving each on its own thread.
+   */
+  private void acceptConnections() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        executor.execute(() -> serve(socket));
+      } catch (IOException e) {
+        // The socket was closed by stop()
+      }
+    }
+  }
+
+  /**
+   * Runs the jobs of one connection until the coordinator closes it.
+   *
+   * @param socket The connection.
+   */
+  private void serve(Socket socket) {
+    try (socket;
+         DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+      ByteBuffer block = ByteBuffer.allocate(PartitionProtocol.BLOCK_SEGMENTS * PartitionProtocol.BYTES_PER_SEGMENT);
+      while (true) {
+        int depth;
+        try {
+          depth = in.readInt();
+        } catch (EOFException e) {
+          return;
+        }
+        int partition = in.readInt();
+        long timeLimitMillis = in.readLong();
+        FractalSpec spec;
+        try {
+          spec = PartitionProtocol.readSpec(in);
+        } catch (IllegalArgumentException e) {
+          fail(out, e.getMessage());
+          continue;
+        }
+        runJob(spec, depth, partition, timeLimitMillis, block, out);
+      }
+    } catch (IOException | UncheckedIOException e) {
+      // The coordinator went away; it retries the partition on another worker
+    }
+  }
+
+  /**
+   * Generates one partition and sends its segments.
+   *
+   * @param spec The fractal, with the number of levels to generate.
+   * @param depth The depth the fractal is split at.
+   * @param partition The partition to generate.
+   * @param timeLimitMillis The time the partition may take, or 0 for no limit.
+   * @param block The buffer segments are collected in before they are sent.
+   * @param out The stream to the coordinator.
+   * @throws IOException If the segments cannot be sent.
+   */
+  private void runJob(FractalSpec spec, int depth, int partition, long timeLimitMillis, ByteBuffer block,
+                      DataOutputStream out) throws IOException {
+    Fractal<?> fractal = spec.createFractal();
+    fractal.rotate(spec.rotation());
+    if (partition < 0 || partition >= fractal.getPartitionCount(depth)) {
+      fail(out, "No partition " + partition + " of " + fractal.getPartitionCount(depth));
+      return;
+    }
+
+    // Segments are only streamed, never retained, so only the time limit applies
+    GenerationBudget budget = timeLimitMillis > 0
+      ? new GenerationBudget(Long.MAX_VALUE, Long.MAX_VALUE, timeLimitMillis)
+      : new GenerationBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+    block.clear();
+    boolean complete = fractal.generatePartition(depth, partition, (firstX, firstY, secondX, secondY) -> {
+      block.putDouble(firstX).putDouble(firstY).putDouble(secondX).putDouble(secondY);
+      if (!block.hasRemaining()) {
+        try {
+          PartitionProtocol.writeBlock(out, block);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        block.clear();
+      }
+    }, budget);
+    if (block.position() > 0) {
+      PartitionProtocol.writeBlock(out, block);
+    }
+    out.writeInt(complete ? PartitionProtocol.COMPLETE : PartitionProtocol.TIMED_OUT);
+    out.flush();
+  }
+
+  /**
+   * Ends a job the worker cannot run.
+   *
+   * @param out The stream to the coordinator.
+   * @param message Why the job cannot run.
+   * @throws IOException If the message cannot be sent.
+   */
+  private static void fail(DataOutputStream out, String message) throws IOException {
+    out.writeInt(PartitionProtocol.FAILED);
+    out.writeUTF(String.valueOf(message));
+    out.flush();
+  }
+}
@@ -0,0 +1,290 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Runs the fractal hot paths at fixed levels and fails when one of them allocates more
+ * memory or takes longer than its checked-in budget, or when its output is no longer
+ * exactly the same. Each scenario builds a fresh fractal, then measures the bytes
+ * allocated by the current thread and the wall time of its workload. Scenarios are run
+ * until the JIT stops compiling new code for them, and the heap is collected before each
+ * measured run, so the times do not include compilation or collection pauses. The segment
+ * count and a checksum of every coordinate are compared against golden values.
+ *
+ * Budgets and golden values are read from performance-budgets.properties, or from the
+ * file given as the first argument. With --print, the measured values are printed in the
+ * same format instead of being checked, for updating the file after an intended change.
+ * The exit status is 1 if any scenario fails.
+ *
+ * @author Ethan Hunt
+ */
+public class PerformanceGate {
+
+  /** The default file holding the budgets and golden values */
+  private static final String DEFAULT_BUDGETS = "performance-budgets.properties";
+
+  /** The fewest and the most times each scenario runs before it is measured, so it is compiled */
+  private static final int MIN_WARMUP_RUNS = 100;
+  private static final int MAX_WARMUP_RUNS = 500;
+
+  /** How many warmup runs in a row must compile nothing new before the JIT counts as settled */
+  private static final int SETTLED_RUNS = 20;
+
+  /** How many measured runs each scenario gets; the fastest and least allocating run counts */
+  private static final int MEASURED_RUNS = 5;
+
+  /**
+   * The work measured by a scenario. It sends every segment it produces to the checksum.
+   */
+  @FunctionalInterface
+  private interface Workload {
+    void run(Fractal<?> fractal, Checksum checksum);
+  }
+
+  /**
+   * A named fractal at a fixed level together with the work measured on it.
+   *
+   * @param name The name used as the key prefix in the budgets file
+   * @param factory Builds a fresh fractal for every run, outside the measurement
+   * @param workload The work measured on the fractal
+   */
+  private record Scenario(String name, Supplier<Fractal<?>> factory, Workload workload) {
+  }
+
+  /**
+   * The measurements of a scenario.
+   *
+   * @param segments The number of segments produced
+   * @param checksum The checksum of every coordinate produced, in order
+   * @param allocatedBytes The fewest bytes allocated in one run
+   * @param millis The shortest wall time of one run, in milliseconds
+   */
+  private record Result(long segments, long checksum, long allocatedBytes, double millis) {
+  }
+
+  /**
+   * Runs every scenario and checks it against the budgets file, or prints its measurements.
+   *
+   * @param args An optional path to the budgets file, and --print to print instead of check.
+   * @throws IOException If the budgets file cannot be read.
+   */
+  public static void main(String[] args) throws IOException {
+    boolean print = false;
+    String path = DEFAULT_BUDGETS;
+    for (String arg : args) {
+      if (arg.equals("--print")) {
+        print = true;
+      } else {
+        path = arg;
+      }
+    }
+
+    Properties budgets = new Properties();
+    if (!print) {
+      try (InputStream in = new FileInputStream(path)) {
+        budgets.load(in);
+      }
+    }
+
+    int failures = 0;
+    for (Scenario scenario : scenarios()) {
+      Result result = measure(scenario);
+      if (print) {
+        System.out.println(scenario.name() + ".segments=" + result.segments());
+        System.out.println(scenario.name() + ".checksum=" + result.checksum());
+        System.out.println(scenario.name() + ".maxAllocatedBytes=" + result.allocatedBytes());
+        System.out.println(scenario.name() + ".maxMillis=" + Math.ceil(result.millis()));
+        continue;
+      }
+      List<String> problems = check(scenario.name(), result, budgets);
+      System.out.printf("%-32s %s  %,d segments  %,d bytes  %.2f ms%n", scenario.name(),
+                        problems.isEmpty() ? "ok  " : "FAIL", result.segments(), result.allocatedBytes(), result.millis());
+      for (String problem : problems) {
+        System.out.println("    " + problem);
+      }
+      if (!problems.isEmpty()) {
+        failures++;
+      }
+    }
+
+    if (failures > 0) {
+      System.out.println(failures + " scenario(s) failed");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Returns every scenario of the gate. The levels are fixed; changing one requires new golden values.
+   *
+   * @return The scenarios in the order they run
+   */
+  private static List<Scenario> scenarios() {
+    Workload lines = (fractal, checksum) -> {
+      for (Line line : fractal.getLines()) {
+        checksum.add(line.getFirstPoint().getX(), line.getFirstPoint().getY(),
+                     line.getSecondPoint().getX(), line.getSecondPoint().getY());
+      }
+    };
+    Workload stream = (fractal, checksum) -> fractal.generate(checksum, GenerationBudget.unlimited());
+    Workload rotated = (fractal, checksum) -> {
+      fractal.rotate(0.5);
+      lines.run(fractal, checksum);
+    };
+
+    Supplier<Fractal<?>> snowflake = () -> new SnowflakeFractal<EquilateralTriangle>(new EquilateralTriangle(new Point(0, 0), 300), 6);
+    Supplier<Fractal<?>> snowflakeSquare = () -> new SnowflakeFractal<Square>(new Square(new Point(0, 0), 200), 5);
+    Supplier<Fractal<?>> snowflakeNGon = () -> {
+      NGon ngon = new NGon(new Point(0, 0), 100);
+      ngon.setNumSides(7);
+      return new SnowflakeFractal<NGon>(ngon, 5);
+    };
+    Supplier<Fractal<?>> triangle = () -> new TriangleFractal<Triangle>(
+      new Triangle(new Point(-200, -150), new Point(200, -150), new Point(0, 200)), 8);
+    Supplier<Fractal<?>> rectangle = () -> new RectangleFractal<Rectangle>(new Rectangle(new Point(0, 0), 300, 200), 4);
+    Supplier<Fractal<?>> square = () -> new RectangleFractal<Square>(new Square(new Point(0, 0), 243), 4);
+
+    List<Scenario> scenarios = new ArrayList<Scenario>();
+    scenarios.add(new Scenario("snowflake.triangle.lines", snowflake, lines));
+    scenarios.add(new Scenario("snowflake.triangle.stream", snowflake, stream));
+    scenarios.add(new Scenario("snowflake.triangle.rotated", snowflake, rotated));
+    scenarios.add(new Scenario("snowflake.square.lines", snowflakeSquare, lines));
+    scenarios.add(new Scenario("snowflake.ngon.lines", snowflakeNGon, lines));
+    scenarios.add(new Scenario("snowflake.ngon.stream", snowflakeNGon, stream));
+    scenarios.add(new Scenario("triangle.lines", triangle, lines));
+    scenarios.add(new Scenario("triangle.stream", triangle, stream));
+    scenarios.add(new Scenario("triangle.rotated", triangle, rotated));
+    scenarios.add(new Scenario("rectangle.lines", rectangle, lines));
+    scenarios.add(new Scenario("rectangle.stream", rectangle, stream));
+    scenarios.add(new Scenario("square.lines", square, lines));
+    scenarios.add(new Scenario("square.rotated", square, rotated));
+    return scenarios;
+  }
+
+  /**
+   * Runs a scenario until the JIT has settled, then several more times, and keeps its
+   * cheapest measured run. The heap is collected before each measured run, so a young
+   * collection left over from earlier runs does not land inside the measurement.
+   *
+   * @param scenario The scenario to measure
+   * @return The output and cost of the scenario
+   */
+  private static Result measure(Scenario scenario) {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().threadId();
+
+    // Warm up until several runs in a row compile nothing new
+    CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+    boolean timed = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+    long compileTime = timed ? compiler.getTotalCompilationTime() : 0;
+    int quietRuns = 0;
+    for (int i = 0; i < MAX_WARMUP_RUNS && (i < MIN_WARMUP_RUNS || quietRuns < SETTLED_RUNS); i++) {
+      scenario.workload().run(scenario.factory().get(), new Checksum());
+      long compiled = timed ? compiler.getTotalCompilationTime() : compileTime;
+      quietRuns = compiled == compileTime ? quietRuns + 1 : 0;
+      compileTime = compiled;
+    }
+
+    long fewestBytes = Long.MAX_VALUE;
+    long fastestNanos = Long.MAX_VALUE;
+    Checksum checksum = null;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      Fractal<?> fractal = scenario.factory().get();
+      checksum = new Checksum();
+      System.gc();
+      long bytesBefore = threads.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      scenario.workload().run(fractal, checksum);
+      long nanos = System.nanoTime() - start;
+      long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+      fewestBytes = Math.min(fewestBytes, bytes);
+      fastestNanos = Math.min(fastestNanos, nanos);
+    }
+    return new Result(checksum.getCount(), checksum.getHash(), fewestBytes, fastestNanos / 1e6);
+  }
+
+  /**
+   * Compares the measurements of a scenario against its budgets and golden values.
+   *
+   * @param name The name of the scenario
+   * @param result The measurements of the scenario
+   * @param budgets The budgets and golden values of every scenario
+   * @return A description of every check that failed, empty if the scenario passed
+   */
+  private static List<String> check(String name, Result result, Properties budgets) {
+    List<String> problems = new ArrayList<String>();
+    String segments = budgets.getProperty(name + ".segments");
+    String checksum = budgets.getProperty(name + ".checksum");
+    String maxBytes = budgets.getProperty(name + ".maxAllocatedBytes");
+    String maxMillis = budgets.getProperty(name + ".maxMillis");
+    if (segments == null || checksum == null || maxBytes == null || maxMillis == null) {
+      problems.add("no budget or golden value in the budgets file");
+      return problems;
+    }
+
+    if (result.segments() != Long.parseLong(segments)) {
+      problems.add("segment count " + result.segments() + ", expected " + segments);
+    }
+    if (result.checksum() != Long.parseLong(checksum)) {
+      problems.add("checksum " + result.checksum() + ", expected " + checksum);
+    }
+    if (result.allocatedBytes() > Long.parseLong(maxBytes)) {
+      problems.add("allocated " + result.allocatedBytes() + " bytes, budget " + maxBytes);
+    }
+    if (result.millis() > Double.parseDouble(maxMillis)) {
+      problems.add(String.format("took %.2f ms, budget %s ms", result.millis(), maxMillis));
+    }
+    return problems;
+  }
+
+  /**
+   * Counts segments and folds the exact bits of every coordinate into a hash, in order.
+   * Adding a segment allocates nothing, so the checksum does not count against a budget.
+   */
+  private static class Checksum implements SegmentSink {
+
+    // The number of segments added and the running hash
+    private long count = 0;
+    private long hash = 17;
+
+    /**
+     * Adds a segment to the checksum.
+     *
+     * @param firstX The x-coordinate of the first endpoint
+     * @param firstY The y-coordinate of the first endpoint
+     * @param secondX The x-coordinate of the second endpoint
+     * @param secondY The y-coordinate of the second endpoint
+     */
+    @Override
+    public void add(double firstX, double firstY, double secondX, double secondY) {
+      count++;
+      hash = hash * 31 + Double.doubleToLongBits(firstX);
+      hash = hash * 31 + Double.doubleToLongBits(firstY);
+      hash = hash * 31 + Double.doubleToLongBits(secondX);
+      hash = hash * 31 + Double.doubleToLongBits(secondY);
+    }
+
+    /**
+     * Returns the number of segments added.
+     *
+     * @return The segment count
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Returns the hash of every coordinate added.
+     *
+     * @return The checksum
+     */
+    public long getHash() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a performance overlay on a transparent canvas laid over the drawing canvas.
+ * The overlay shows the phase timings of the last draw, the approximate memory its
+ * geometry retains, the duration of the last JavaFX pulse, and a rolling graph of
+ * recent frame times. Frame times are measured between pulses from an AnimationTimer,
+ * which runs at the start of every pulse.
+ *
+ * @author Ethan Hunt
+ */
+public class PerformanceHud extends AnimationTimer {
+
+  /** The number of frames shown in the frame-time graph */
+  private static final int FRAME_HISTORY = 120;
+
+  /** The frame time drawn at the top of the graph, in milliseconds */
+  private static final double GRAPH_MAX_MILLIS = 50;
+
+  /** The frame time of a 60 Hz display, marked on the graph, in milliseconds */
+  private static final double TARGET_FRAME_MILLIS = 1000.0 / 60;
+
+  // Size and position of the overlay panel in pixels
+  private static final double PANEL_X = 10;
+  private static final double PANEL_Y = 10;
+  private static final double PANEL_WIDTH = 260;
+  private static final double PANEL_HEIGHT = 185;
+  private static final double GRAPH_HEIGHT = 50;
+
+  // The transparent canvas the overlay is drawn on
+  private final Canvas overlay;
+
+  // The last draw: segment count, phase times in nanoseconds, and approximate bytes retained
+  private long segmentCount;
+  private long generateNanos;
+  private long rotateNanos;
+  private long renderNanos;
+  private long retainedBytes;
+
+  // The frames an animation has dropped since it started
+  private long droppedFrames;
+
+  // The start of the current pulse and the duration of the last complete one, in nanoseconds
+  private long pulseStart;
+  private long pulseNanos;
+
+  // Recent frame times in nanoseconds, as a ring buffer
+  private final long[] frameNanos = new long[FRAME_HISTORY];
+  private int nextFrame = 0;
+  private long lastFrame = 0;
+
+  /**
+   * Constructs a PerformanceHud drawing on the given overlay canvas. Nothing is measured
+   * or drawn until start() is called.
+   *
+   * @param overlay The transparent canvas laid over the drawing canvas.
+   */
+  public PerformanceHud(Canvas overlay) {
+    this.overlay = overlay;
+  }
+
+  /**
+   * Records the measurements of a finished draw.
+   *
+   * @param segmentCount The number of segments drawn.
+   * @param generateNanos The time spent generating the geometry, in nanoseconds.
+   * @param rotateNanos The time spent rotating the base shape and packing the segments, in nanoseconds.
+   * @param renderNanos The time spent stroking or filling on the canvas, in nanoseconds.
+   * @param retainedBytes The approximate memory retained for redrawing, in bytes.
+   */
+  public void recordDraw(long segmentCount, long generateNanos, long rotateNanos, long renderNanos, long retainedBytes) {
+    this.segmentCount = segmentCount;
+    this.generateNanos = generateNanos;
+    this.rotateNanos = rotateNanos;
+    this.renderNanos = renderNanos;
+    this.retainedBytes = retainedBytes;
+  }
+
+  /**
+   * Records the number of frames the running animation has dropped.
+   *
+   * @param droppedFrames The number of dropped frames since the animation started.
+   */
+  public void recordDroppedFrames(long droppedFrames) {
+    this.droppedFrames = droppedFrames;
+  }
+
+  /**
+   * Marks the end of the work of the current pulse. Called from a post-layout pulse
+   * listener of the scene, so the pulse duration covers animation, CSS and layout.
+   */
+  public void endPulse() {
+    if (pulseStart != 0) {
+      pulseNanos = System.nanoTime() - pulseStart;
+    }
+  }
+
+  /**
+   * Records the time since the previous frame and redraws the overlay.
+   *
+   * @param now The timestamp of the current frame in nanoseconds.
+   */
+  @Override
+  public void handle(long now) {
+    pulseStart = System.nanoTime();
+    if (lastFrame != 0) {
+      frameNanos[nextFrame] = now - lastFrame;
+      nextFrame = (nextFrame + 1) % FRAME_HISTORY;
+    }
+    lastFrame = now;
+    paint();
+  }
+
+  /**
+   * Stops measuring and clears the overlay.
+   */
+  @Override
+  public void stop() {
+    super.stop();
+    lastFrame = 0;
+    pulseStart = 0;
+    overlay.getGraphicsContext2D().clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+  }
+
+  /**
+   * Draws the panel with the last draw's measurements and the frame-time graph.
+   */
+  private void paint() {
+    GraphicsContext graph = overlay.getGraphicsContext2D();
+    graph.clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+
+    graph.setFill(Color.rgb(0, 0, 0, 0.6));
+    graph.fillRect(PANEL_X, PANEL_Y, PANEL_WIDTH, PANEL_HEIGHT);
+
+    graph.setFill(Color.WHITE);
+    double textX = PANEL_X + 8;
+    double textY = PANEL_Y + 16;
+    graph.fillText(String.format("segments      %,d", segmentCount), textX, textY);
+    graph.fillText(String.format("generate      %.1f ms", generateNanos / 1e6), textX, textY + 15);
+    graph.fillText(String.format("rotate/pack   %.1f ms", rotateNanos / 1e6), textX, textY + 30);
+    graph.fillText(String.format("render        %.1f ms", renderNanos / 1e6), textX, textY + 45);
+    graph.fillText(String.format("retained      %,d KB", retainedBytes / 1024), textX, textY + 60);
+    graph.fillText(String.format("pulse         %.2f ms", pulseNanos / 1e6), textX, textY + 75);
+    graph.fillText(String.format("dropped       %,d frames", droppedFrames), textX, textY + 90);
+
+    // Frame-time graph, oldest frame on the left, with a line at the 60 Hz frame time
+    double graphBottom = PANEL_Y + PANEL_HEIGHT - 8;
+    double barWidth = (PANEL_WIDTH - 16) / FRAME_HISTORY;
+    graph.setFill(Color.LIMEGREEN);
+    for (int i = 0; i < FRAME_HISTORY; i++) {
+      long nanos = frameNanos[(nextFrame + i) % FRAME_HISTORY];
+      double barHeight = Math.min(nanos / 1e6, GRAPH_MAX_MILLIS) / GRAPH_MAX_MILLIS * GRAPH_HEIGHT;
+      graph.fillRect(textX + i * barWidth, graphBottom - barHeight, barWidth, barHeight);
+    }
+    double targetY = graphBottom - TARGET_FRAME_MILLIS / GRAPH_MAX_MILLIS * GRAPH_HEIGHT;
+    graph.setStroke(Color.ORANGE);
+    graph.setLineWidth(1);
+    graph.strokeLine(textX, targetY, textX + PANEL_WIDTH - 16, targetY);
+  }
+}
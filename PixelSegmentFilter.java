@@ -0,0 +1,74 @@
+/**
+ * Drops segments that would draw nothing new once their endpoints are rounded to whole
+ * pixels: segments whose endpoints round to the same pixel, and segments whose pair of
+ * pixels has already been drawn, in either direction. At deep levels most generated
+ * segments collapse this way, so filtering bounds the number of draw calls by the number
+ * of distinct pixel segments instead of the number of generated segments.
+ *
+ * The pair of pixels is packed into one long key, 16 bits per coordinate, and remembered
+ * in a LongHashSet. Segments with a coordinate outside the 16-bit range are always drawn.
+ * Clearing between frames or fractals costs a counter increment.
+ *
+ * @author Ethan Hunt
+ */
+public class PixelSegmentFilter {
+
+  // The pixel segments accepted since the last clear
+  private final LongHashSet seen = new LongHashSet();
+
+  // The number of segments dropped since the last clear
+  private long dropped = 0;
+
+  /**
+   * Decides whether a segment should be drawn, remembering it if so.
+   *
+   * @param firstX The x-coordinate of the first endpoint's pixel
+   * @param firstY The y-coordinate of the first endpoint's pixel
+   * @param secondX The x-coordinate of the second endpoint's pixel
+   * @param secondY The y-coordinate of the second endpoint's pixel
+   * @return True if the segment draws pixels no accepted segment has drawn
+   */
+  public boolean accept(int firstX, int firstY, int secondX, int secondY) {
+    if (firstX == secondX && firstY == secondY) {
+      dropped++;
+      return false;
+    }
+    if ((short) firstX != firstX || (short) firstY != firstY || (short) secondX != secondX || (short) secondY != secondY) {
+      return true;
+    }
+
+    // Order the endpoints so a segment and its reverse share a key
+    if (firstX > secondX || (firstX == secondX && firstY > secondY)) {
+      int swap = firstX;
+      firstX = secondX;
+      secondX = swap;
+      swap = firstY;
+      firstY = secondY;
+      secondY = swap;
+    }
+    long key = ((long) (firstX & 0xFFFF) << 48) | ((long) (firstY & 0xFFFF) << 32)
+      | ((long) (secondX & 0xFFFF) << 16) | (secondY & 0xFFFF);
+    if (!seen.add(key)) {
+      dropped++;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of segments dropped since the last clear.
+   *
+   * @return The number of dropped segments
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Forgets every segment, so the next frame or fractal starts afresh.
+   */
+  public void clear() {
+    seen.clear();
+    dropped = 0;
+  }
+}
@@ -4,12 +4,20 @@
  * including rotation around a center point and generating line segments between vertices.
  * Subclasses must implement methods for retrieving and setting the center point.
  * 
+ * Shapes defined by parameters, such as a center and a side length, compute new points and
+ * edges whenever a setter changes them, so points and lines handed out earlier never move.
+ * Reading the points or the edges never writes to the polygon, so several threads may read
+ * the same polygon at once as long as none of them changes it.
+ * 
  * @author Ethan Hunt
  */
 public abstract class Polygon {
 
   /** The array of points (vertices) that define the polygon */
-  private Point[] points;
+  private volatile Point[] points;
+  
+  /** The edges of the polygon, built from the current point array */
+  private volatile Line[] lines;
   
   /**
    * Constructs a Polygon with the specified points.
@@ -17,6 +25,7 @@ public abstract class Polygon {
    * @param points An array of points representing the vertices of the polygon
    */
   public Polygon(Point[] points) {
+    this.lines = createLines(points);
     this.points = points;
   }
   
@@ -43,33 +52,102 @@ public abstract class Polygon {
     return this.points;
   }
   
+  /**
+   * Returns an immutable snapshot of the vertices of the polygon. The snapshot does not
+   * change when the polygon is later moved or rotated, so it can be handed to other threads.
+   *
+   * @return An array of vertices at the current positions of the polygon's points
+   */
+  public Vertex[] getVertices() {
+    Point[] points = this.getPoints();
+    Vertex[] vertices = new Vertex[points.length];
+    for (int idx = 0; idx < points.length; idx++) {
+      vertices[idx] = Vertex.of(points[idx]);
+    }
+    return vertices;
+  }
+  
+  /**
+   * Computes new points for a polygon defined by parameters. Subclasses that call
+   * updatePoints() override this method.
+   *
+   * @return The up to date points, in a new array of new points
+   */
+  protected Point[] computePoints() {
+    return this.points;
+  }
+  
+  /**
+   * Replaces the points, and the edges between them, with new ones computed from the
+   * polygon's parameters through computePoints().
+   */
+  protected void updatePoints() {
+    this.setPoints(this.computePoints());
+  }
+  
+  /**
+   * Returns an array of new points, all at the origin, for computePoints() to place.
+   *
+   * @param count The number of points needed
+   * @return An array of count points
+   */
+  protected static Point[] newPoints(int count) {
+    Point[] points = new Point[count];
+    for (int idx = 0; idx < count; idx++) {
+      points[idx] = new Point(0, 0);
+    }
+    return points;
+  }
+  
   /**
    * Sets the points of the polygon to a new array of points.
    *
    * @param points The new array of points representing the vertices of the polygon
    */
   public void setPoints(Point[] points) {
+    this.lines = createLines(points);
     this.points = points;
   }
   
   /**
    * Returns an array of Line objects representing the edges of the polygon.
    * Each line connects a pair of consecutive points, with the last point connecting back to the first.
+   * The array is a copy that the caller may modify; the lines in it are shared.
    *
    * @return An array of lines representing the edges of the polygon
    */
   public Line[] getLines() {
-    int numberOfPoints = this.points.length;
+    return this.lines.clone();
+  }
+  
+  /**
+   * Returns the edges of the polygon without copying the array, for generators in this
+   * package that read the edges many times. The array must not be modified or handed out.
+   *
+   * @return The polygon's own array of edges
+   */
+  Line[] getSharedLines() {
+    return this.lines;
+  }
+  
+  /**
+   * Builds the edges between consecutive points, with the last point connecting back to the first.
+   *
+   * @param points The vertices of the polygon
+   * @return An array of lines representing the edges of the polygon
+   */
+  private static Line[] createLines(Point[] points) {
+    int numberOfPoints = points.length;
     Line[] lines = new Line[numberOfPoints];
     Point startOfLine;
     Point endOfLine;
     
     for (int idx = 0; idx < numberOfPoints; idx++) {
-      startOfLine = this.points[idx];
+      startOfLine = points[idx];
       if (idx < numberOfPoints - 1) {
-        endOfLine = this.points[idx + 1];
+        endOfLine = points[idx + 1];
       } else {
-        endOfLine = this.points[0];
+        endOfLine = points[0];
       }
       
       lines[idx] = new Line(startOfLine, endOfLine);
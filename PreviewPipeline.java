@@ -0,0 +1,128 @@
+import javafx.application.Platform;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Generates live previews of a fractal off the JavaFX application thread, keeping only
+ * the latest request. Each request is parsed and validated on a single background thread.
+ * Submitting a request cancels the generation in progress and makes every older request
+ * that has not started yet return immediately, so rapid edits never queue up renders.
+ * Results of superseded requests are dropped before they reach the application thread.
+ *
+ * @author Ethan Hunt
+ */
+public class PreviewPipeline {
+
+  /** The most segments a preview may generate; deeper levels are clamped to fit */
+  private static final long MAX_SEGMENTS = 1_000_000L;
+
+  /** The longest a preview may spend generating, in milliseconds */
+  private static final long TIME_LIMIT = 2_000L;
+
+  // The thread generating previews, one at a time
+  private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "fractal-preview");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // The number of the latest request; any other request is stale
+  private final AtomicLong latest = new AtomicLong();
+
+  // The budget of the generation in progress, cancelled when a newer request arrives
+  private final AtomicReference<GenerationBudget> running = new AtomicReference<GenerationBudget>();
+
+  /**
+   * Submits a preview request, superseding every earlier one. Exactly one of the callbacks
+   * is called on the JavaFX application thread, unless the request is superseded first.
+   *
+   * @param params The fractal parameters by name, as FractalSpec.parse reads them.
+   * @param onReady Receives the segments of the preview.
+   * @param onError Receives the reason the parameters are invalid or the preview failed.
+   */
+  public void submit(Map<String, String> params, Consumer<SegmentBuffer> onReady, Consumer<String> onError) {
+    long request = latest.incrementAndGet();
+    cancelRunning();
+    worker.execute(() -> render(request, params, onReady, onError));
+  }
+
+  /**
+   * Abandons every request, including the one generating.
+   */
+  public void cancel() {
+    latest.incrementAndGet();
+    cancelRunning();
+  }
+
+  /**
+   * Parses, validates and generates one request, unless a newer one has arrived.
+   * Runs on the background thread.
+   *
+   * @param request The number of the request.
+   * @param params The fractal parameters by name.
+   * @param onReady Receives the segments of the preview.
+   * @param onError Receives the reason the preview failed.
+   */
+  private void render(long request, Map<String, String> params, Consumer<SegmentBuffer> onReady, Consumer<String> onError) {
+    if (request != latest.get()) {
+      return;
+    }
+
+    FractalSpec spec;
+    try {
+      spec = FractalSpec.parse(params);
+    } catch (IllegalArgumentException e) {
+      deliver(request, () -> onError.accept(e.getMessage()));
+      return;
+    }
+
+    // Publish the budget before checking again, so a request arriving in between either
+    // sees it and cancels it or is seen here
+    GenerationBudget budget = new GenerationBudget(MAX_SEGMENTS, Long.MAX_VALUE, TIME_LIMIT);
+    running.set(budget);
+    if (request != latest.get()) {
+      running.compareAndSet(budget, null);
+      return;
+    }
+
+    Fractal<?> fractal = spec.createFractal();
+    fractal.rotate(spec.rotation());
+    SegmentBuffer segments = new SegmentBuffer();
+    boolean complete = fractal.generate(segments, budget);
+    running.compareAndSet(budget, null);
+
+    if (complete) {
+      deliver(request, () -> onReady.accept(segments));
+    } else if (!budget.isCancelled()) {
+      deliver(request, () -> onError.accept("The preview took too long; try fewer levels"));
+    }
+  }
+
+  /**
+   * Runs a callback on the JavaFX application thread if its request is still the latest by then.
+   *
+   * @param request The number of the request.
+   * @param callback The callback to run.
+   */
+  private void deliver(long request, Runnable callback) {
+    Platform.runLater(() -> {
+      if (request == latest.get()) {
+        callback.run();
+      }
+    });
+  }
+
+  /**
+   * Cancels the generation in progress, if there is one.
+   */
+  private void cancelRunning() {
+    GenerationBudget budget = running.get();
+    if (budget != null) {
+      budget.cancel();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Draws a fractal a little at a time from an AnimationTimer so that the JavaFX
+ * application thread never blocks on a large draw. The levels of the fractal are
+ * generated coarse to fine on a background thread. Each frame strokes as many
+ * segments of the finest level generated so far as fit in a fixed time budget,
+ * and a finer level replaces the coarser one as soon as it is ready.
+ *
+ * @author Ethan Hunt
+ */
+public class ProgressiveRenderer extends AnimationTimer {
+
+  /** The default time allowed for stroking segments in one frame, in nanoseconds (8 ms) */
+  public static final long DEFAULT_FRAME_BUDGET = 8_000_000L;
+
+  /** How many segments are stroked between checks of the clock */
+  private static final int CHECK_INTERVAL = 256;
+
+  // The graphics context to draw on, already translated to the canvas center
+  private final GraphicsContext graph;
+
+  // Repaints everything underneath the fractal before a finer level is drawn
+  private final Runnable background;
+
+  // Receives the segments of the final level once they are fully drawn
+  private final Consumer<SegmentBuffer> onComplete;
+
+  // The style the fractal is drawn with
+  private final Color color;
+  private final double lineWidth;
+
+  // The time allowed for stroking in one frame, in nanoseconds
+  private final long frameBudget;
+
+  // The number of levels of the finished fractal
+  private final int numLevels;
+
+  // Levels generated by the background thread, coarsest first
+  private final ConcurrentLinkedQueue<SegmentBuffer> generatedLevels = new ConcurrentLinkedQueue<SegmentBuffer>();
+
+  // The thread generating the levels
+  private final Thread generator;
+
+  // The budget the levels are generated within; cancel() cancels it when it has a deadline
+  private final GenerationBudget budget;
+
+  // How many levels the background thread queued, set once it has finished, or -1 while it runs
+  private volatile int levelsGenerated = -1;
+
+  // Set when the draw is abandoned, for example by the Erase button
+  private volatile boolean cancelled = false;
+
+  // The level currently being drawn, the next segment to stroke, and how many levels have been taken
+  private SegmentBuffer currentLevel;
+  private int nextSegment = 0;
+  private int levelsTaken = 0;
+
+  // The pixel segments of the current level already stroked on the canvas
+  private final PixelSegmentFilter filter = new PixelSegmentFilter();
+
+  /**
+   * Constructs a ProgressiveRenderer for a fractal. Nothing is generated or drawn until start() is called.
+   *
+   * @param fractal The fractal to draw; its number of levels is the finest level drawn.
+   * @param rotation The rotation to apply to the fractal.
+   * @param budget Limits the finest level to one whose estimated size fits; its deadline,
+   *               if it has one, stops generation, leaving the finest level finished by then.
+   * @param graph The graphics context to draw on, translated to the canvas center.
+   * @param color The stroke color.
+   * @param lineWidth The stroke width.
+   * @param frameBudget The time allowed for stroking in one frame, in nanoseconds.
+   * @param background Repaints the canvas underneath the fractal.
+   * @param onComplete Receives the segments of the finest level when they are fully drawn.
+   */
+  public ProgressiveRenderer(Fractal<?> fractal, double rotation, GenerationBudget budget,
+                             GraphicsContext graph, Color color, double lineWidth,
+                             long frameBudget, Runnable background, Consumer<SegmentBuffer> onComplete) {
+    this.graph = graph;
+    this.color = color;
+    this.lineWidth = lineWidth;
+    this.frameBudget = frameBudget;
+    this.background = background;
+    this.onComplete = onComplete;
+    this.budget = budget;
+
+    // Stop refining at the deepest level the budget can afford
+    int finestLevel = fractal.getNumLevels();
+    while (finestLevel > 0 && !budget.allows(fractal.estimateSegmentCount(finestLevel), fractal.estimateBytes(finestLevel))) {
+      finestLevel--;
+    }
+    this.numLevels = finestLevel;
+
+    this.generator = new Thread(() -> generateLevels(fractal, rotation), "fractal-progressive");
+    this.generator.setDaemon(true);
+  }
+
+  /**
+   * Starts generating the levels in the background and drawing them on every frame.
+   */
+  @Override
+  public void start() {
+    if (generator.getState() == Thread.State.NEW) {
+      generator.start();
+    }
+    super.start();
+  }
+
+  /**
+   * Abandons the draw. Levels still being generated are discarded and nothing more is drawn.
+   */
+  public void cancel() {
+    cancelled = true;
+    if (budget.hasDeadline()) {
+      budget.cancel();
+    }
+    stop();
+  }
+
+  /**
+   * Returns whether every level up to the finest was generated, rather than the deadline
+   * stopping generation at a coarser one.
+   *
+   * @return True once all levels have been generated.
+   */
+  public boolean isComplete() {
+    return levelsGenerated == numLevels + 1;
+  }
+
+  /**
+   * Starts stroking the current level again from its first segment.
+   * Used when the canvas underneath has been repainted.
+   */
+  public void restartLevel() {
+    nextSegment = 0;
+    filter.clear();
+  }
+
+  /**
+   * Strokes segments until the frame budget is used up, moving on to a finer level when one is ready.
+   *
+   * @param now The timestamp of the current frame in nanoseconds.
+   */
+  @Override
+  public void handle(long now) {
+    long deadline = System.nanoTime() + frameBudget;
+
+    // Replace the level being drawn with the finest one generated so far
+    SegmentBuffer finer = null;
+    while (!generatedLevels.isEmpty()) {
+      finer = generatedLevels.poll();
+      levelsTaken++;
+    }
+    if (finer != null) {
+      background.run();
+      currentLevel = finer;
+      nextSegment = 0;
+      filter.clear();
+    }
+    if (currentLevel == null) {
+      return;
+    }
+
+    graph.setStroke(color);
+    graph.setLineWidth(lineWidth);
+
+    // Stroke in chunks, checking the clock between chunks
+    while (nextSegment < currentLevel.size() && System.nanoTime() < deadline) {
+      int end = Math.min(nextSegment + CHECK_INTERVAL, currentLevel.size());
+      FractalDrawer.strokeSegments(graph, filter, currentLevel, nextSegment, end);
+      nextSegment = end;
+    }
+
+    // The finest level generated has been drawn completely
+    if (nextSegment == currentLevel.size() && levelsTaken == levelsGenerated) {
+      stop();
+      onComplete.accept(currentLevel);
+    }
+  }
+
+  /**
+   * Generates every level of the fractal from coarsest to finest and queues it for drawing.
+   * Each level is streamed straight into packed segments. A level the deadline cuts short
+   * is discarded and no finer level is generated. Runs on the background thread.
+   *
+   * @param fractal The fractal to generate.
+   * @param rotation The rotation to apply to the fractal.
+   */
+  private void generateLevels(Fractal<?> fractal, double rotation) {
+    fractal.rotate(rotation);
+
+    int level = 0;
+    for (; level <= numLevels && !cancelled; level++) {
+      fractal.setNumLevels(level);
+      SegmentBuffer segments = new SegmentBuffer((int) Math.min(Integer.MAX_VALUE / 4, fractal.estimateSegmentCount(level)));
+
+      // Level 0 is only the base shape, so it is always completed
+      if (!fractal.generate(segments, level == 0 ? GenerationBudget.unlimited() : budget)) {
+        break;
+      }
+      generatedLevels.add(segments);
+    }
+    levelsGenerated = level;
+  }
+}
@@ -2,6 +2,7 @@
  * Represents a rectangle as a subclass of Polygon, defined by a center point, width, and height.
  * The rectangle is oriented with its sides parallel to the x and y axes.
  * Provides methods to get and set the center, width, and height of the rectangle.
+ * New corner points are computed whenever the rectangle changes.
  * 
  * @author Ethan Hunt
  */
@@ -37,12 +38,7 @@ public class Rectangle extends Polygon implements RectangleShape{
    * @param height The height of the rectangle
    */
   public Rectangle(Point center, double width, double height) {
-    super(new Point[]{
-      new Point(center.getX() - width / 2, center.getY() + height / 2),
-      new Point(center.getX() + width / 2, center.getY() + height / 2),
-      new Point(center.getX() + width / 2, center.getY() - height / 2),
-      new Point(center.getX() - width / 2, center.getY() - height / 2)
-    });
+    super(placeCorners(newPoints(4), center, width, height));
     this.center = center;
     this.width = width;
     this.height = height;
@@ -83,13 +79,8 @@ public class Rectangle extends Polygon implements RectangleShape{
    */
   @Override
   public void setCenter(Point center) {
-    super.setPoints(new Point[]{
-      new Point(center.getX() - this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() - this.getHeight() / 2),
-      new Point(center.getX() - this.getWidth() / 2, center.getY() - this.getHeight() / 2)
-    });
     this.center = center;
+    updatePoints();
   }
   
   /**
@@ -99,12 +90,7 @@ public class Rectangle extends Polygon implements RectangleShape{
    */
   public void setWidth(double width) {
     this.width = width;
-    super.setPoints(new Point[]{
-      new Point(center.getX() - this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() - this.getHeight() / 2),
-      new Point(center.getX() - this.getWidth() / 2, center.getY() - this.getHeight() / 2)
-    });
+    updatePoints();
   }
   
   /**
@@ -114,11 +100,39 @@ public class Rectangle extends Polygon implements RectangleShape{
    */
   public void setHeight(double height) {
     this.height = height;
-    super.setPoints(new Point[]{
-      new Point(center.getX() - this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() + this.getHeight() / 2),
-      new Point(center.getX() + this.getWidth() / 2, center.getY() - this.getHeight() / 2),
-      new Point(center.getX() - this.getWidth() / 2, center.getY() - this.getHeight() / 2)
-    });
+    updatePoints();
+  }
+  
+  /**
+   * Computes new corners of the rectangle in the order top-left, top-right,
+   * bottom-right, bottom-left.
+   *
+   * @return The corner points
+   */
+  @Override
+  protected Point[] computePoints() {
+    return placeCorners(newPoints(4), center, this.getWidth(), this.getHeight());
+  }
+  
+  /**
+   * Moves four points to the corners of a rectangle, in the order top-left, top-right,
+   * bottom-right, bottom-left.
+   *
+   * @param points The four corner points to move
+   * @param center The center of the rectangle
+   * @param width The width of the rectangle
+   * @param height The height of the rectangle
+   * @return The given points
+   */
+  private static Point[] placeCorners(Point[] points, Point center, double width, double height) {
+    points[0].setX(center.getX() - width / 2);
+    points[0].setY(center.getY() + height / 2);
+    points[1].setX(center.getX() + width / 2);
+    points[1].setY(center.getY() + height / 2);
+    points[2].setX(center.getX() + width / 2);
+    points[2].setY(center.getY() - height / 2);
+    points[3].setX(center.getX() - width / 2);
+    points[3].setY(center.getY() - height / 2);
+    return points;
   }
 }
\ No newline at end of file
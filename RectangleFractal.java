@@ -1,15 +1,30 @@
 import java.util.ArrayList;
+import java.util.function.LongConsumer;
 
 /**
  * Represents a fractal structure based on a rectangle or square.
  * The fractal is recursively generated by subdividing the base shape
  * into a 3x3 grid and excluding the center piece at each level. 
  * 
+ * Besides the recursive generators, the fractal can be generated on an integer lattice:
+ * at level n every corner lies on a 3^n x 3^n grid over the base rectangle, so cells are
+ * produced as exact (i, j, size) integers packed into longs and only mapped to world
+ * coordinates when segments are emitted.
+ * 
  * @param <T> A type that extends Polygon and implements RectangleShape.
  * @author Ethan Hunt
  */
 public class RectangleFractal<T extends Polygon & RectangleShape> extends Fractal<T> {
 
+    /** The deepest level the lattice can represent, since 3^18 cell indices fit in 29 bits */
+    public static final int MAX_LATTICE_LEVELS = 18;
+
+    /** The number of bits used for each cell index in a packed cell */
+    private static final int INDEX_BITS = 29;
+
+    /** Mask selecting one cell index from a packed cell */
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
     /**
      * Constructs a RectangleFractal instance with a base shape and number of levels.
      * 
@@ -21,14 +36,430 @@ public class RectangleFractal<T extends Polygon & RectangleShape> extends Fracta
     }
 
     /**
-     * Returns the lines that form the fractal.
+     * Returns the number of segments at a given level: 8^n rectangles of 4 edges each.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of segments, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long estimateSegmentCount(int numLevels) {
+        return saturatedMultiply(4, saturatedPower(8, numLevels));
+    }
+
+    /**
+     * Returns the bounding box at a given level. From level 1 on it is the base rectangle
+     * without its rotation, as the cells are generated; at level 0 it is the base shape.
      * 
+     * @param numLevels The number of recursive levels.
+     * @return The bounding box.
+     */
+    @Override
+    public Bounds boundingBox(int numLevels) {
+        Rectangle rec = (Rectangle) this.getBaseShape();
+        if (numLevels == 0) {
+            return Bounds.of(rec.getPoints());
+        }
+        double centerX = rec.getCenter().getX();
+        double centerY = rec.getCenter().getY();
+        return new Bounds(centerX - rec.getWidth() / 2, centerY - rec.getHeight() / 2,
+                          centerX + rec.getWidth() / 2, centerY + rec.getHeight() / 2);
+    }
+
+    /**
+     * Returns the perimeter of the cells at a given level: the outside of the base
+     * rectangle plus the edges of every hole. Level k cuts 8^(k-1) holes, each 1/3^k the
+     * size of the base rectangle, and holes never touch each other or the outside.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The perimeter.
+     */
+    @Override
+    public double perimeter(int numLevels) {
+        Rectangle rec = (Rectangle) this.getBaseShape();
+        double outside = 2 * (rec.getWidth() + rec.getHeight());
+        double holes = 0;
+        double holeFactor = 1.0 / 3;
+        for (int level = 1; level <= numLevels; level++) {
+            holes += holeFactor;
+            holeFactor *= 8.0 / 3;
+        }
+        return outside * (1 + holes);
+    }
+
+    /**
+     * Returns the number of distinct cell corners at a given level. The corners lie on a
+     * lattice of (3^n + 1)^2 points, and a lattice point is a corner unless it lies strictly
+     * inside a hole; a hole of level k spans 3^(n-k) lattice steps and there are 8^(k-1)
+     * of them.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of vertices, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long vertexCount(int numLevels) {
+        try {
+            long side = Math.addExact(saturatedPower(3, numLevels), 1);
+            long vertices = Math.multiplyExact(side, side);
+            for (int level = 1; level <= numLevels; level++) {
+                long inside = saturatedPower(3, numLevels - level) - 1;
+                vertices -= Math.multiplyExact(saturatedPower(8, level - 1), Math.multiplyExact(inside, inside));
+            }
+            return vertices;
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Creates the lines that form the fractal.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal structure.
      */
     @Override
-    public Line[] getLines() {
+    protected Line[] createLines(int numLevels, GenerationBudget budget) {
         // Start the recursive process to generate the fractal lines
-        return createFractalLines((Rectangle) this.getBaseShape(), getNumLevels());
+        return createFractalLines((Rectangle) this.getBaseShape(), numLevels, budget);
+    }
+
+    /**
+     * Returns the number of partitions at the top of the recursion: each edge of the base
+     * rectangle is one at level 0, and each of the eight pieces of the first subdivision is
+     * one at deeper levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return 4 at level 0, otherwise 8.
+     */
+    @Override
+    protected int topPartitionCount(int numLevels) {
+        return numLevels == 0 ? 4 : 8;
+    }
+
+    /**
+     * Returns the number of pieces each rectangle is split into.
+     * 
+     * @return 8.
+     */
+    @Override
+    protected int partitionBranching() {
+        return 8;
+    }
+
+    /**
+     * Returns the deepest split depth: the first subdivision, then each level of pieces below it.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of levels, or 1 at level 0.
+     */
+    @Override
+    protected int maxPartitionDepth(int numLevels) {
+        return Math.max(1, numLevels);
+    }
+
+    /**
+     * Streams the tagged segments of one partition, one rectangle at a time. Each piece of
+     * the first subdivision is its own subtree.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param partition The edge of the base rectangle at level 0, or the piece of the first subdivision.
+     * @param route The piece to take at each level below the first subdivision.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    @Override
+    protected void emitPartition(int numLevels, int partition, int[] route, TaggedSegmentSink sink, GenerationBudget budget) {
+        Rectangle rec = (Rectangle) this.getBaseShape();
+        if (numLevels == 0) {
+            // The base shape itself is drawn, including any rotation applied to it
+            Line edge = rec.getLines()[partition];
+            sink.add(edge.getFirstPoint().getX(), edge.getFirstPoint().getY(),
+                     edge.getSecondPoint().getX(), edge.getSecondPoint().getY(), 0, partition);
+            return;
+        }
+        budget.checkDeadline();
+        emitPiece(rec.getCenter().getX(), rec.getCenter().getY(), rec.getWidth(), rec.getHeight(),
+                  rec instanceof Square, 0, 1, numLevels, partition, partition, route, sink, budget);
+    }
+
+    /**
+     * Recursively streams the edges of the sub-rectangles of one rectangle. Computes the same
+     * corners, with the same arithmetic, as createFractalLines without allocating any shapes.
+     * 
+     * @param centerX The x-coordinate of the rectangle's center.
+     * @param centerY The y-coordinate of the rectangle's center.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param square Whether the rectangle is a square.
+     * @param cornerDepths The levels at which the corners were created, 8 bits each, from the top-left
+     *                     corner in the lowest byte to the bottom-left corner in the highest.
+     * @param level The level of the corners this call creates.
+     * @param levelsLeft The number of recursive levels remaining.
+     * @param subtree The piece of the first subdivision the rectangle belongs to.
+     * @param route The piece to take at each level, starting with the pieces of level 2.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    private void emitFractalSegments(double centerX, double centerY, double width, double height, boolean square,
+                                     int cornerDepths, int level, int levelsLeft, int subtree, int[] route,
+                                     TaggedSegmentSink sink, GenerationBudget budget) {
+        if (levelsLeft == 0) {
+            // Same corner order as Rectangle: top-left, top-right, bottom-right, bottom-left
+            double left = centerX - width / 2;
+            double right = centerX + width / 2;
+            double top = centerY + height / 2;
+            double bottom = centerY - height / 2;
+            sink.add(left, top, right, top, cornerDepths & 0xFF, subtree);
+            sink.add(right, top, right, bottom, (cornerDepths >>> 8) & 0xFF, subtree);
+            sink.add(right, bottom, left, bottom, (cornerDepths >>> 16) & 0xFF, subtree);
+            sink.add(left, bottom, left, top, cornerDepths >>> 24, subtree);
+            return;
+        }
+        budget.checkDeadline();
+
+        for (int piece = 0; piece < 8; piece++) {
+            if (onRoute(route, level - 2, piece)) {
+                emitPiece(centerX, centerY, width, height, square, cornerDepths, level, levelsLeft, piece,
+                          level == 1 ? piece : subtree, route, sink, budget);
+            }
+        }
+    }
+
+    /**
+     * Streams the edges of one of the eight pieces of a rectangle's 3x3 grid and of its sub-rectangles.
+     * 
+     * @param centerX The x-coordinate of the rectangle's center.
+     * @param centerY The y-coordinate of the rectangle's center.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param square Whether the rectangle is a square.
+     * @param cornerDepths The levels at which the rectangle's corners were created, packed as for emitFractalSegments.
+     * @param level The level of the corners the piece creates.
+     * @param levelsLeft The number of recursive levels remaining for the rectangle.
+     * @param piece The piece, counting column by column from the bottom-left and skipping the center.
+     * @param subtree The piece of the first subdivision the piece belongs to.
+     * @param route The piece to take at each level, starting with the pieces of level 2.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    private void emitPiece(double centerX, double centerY, double width, double height, boolean square,
+                           int cornerDepths, int level, int levelsLeft, int piece, int subtree, int[] route,
+                           TaggedSegmentSink sink, GenerationBudget budget) {
+        // The position of the piece in the 3x3 grid, skipping the center cell
+        int cell = piece < 4 ? piece : piece + 1;
+        int horizRec = cell / 3 - 1;
+        int vertRec = cell % 3 - 1;
+
+        double smallerWidth = width / 3;
+        double smallerHeight = height / 3;
+        double newCenterX = centerX + (horizRec * smallerWidth);
+        double newCenterY = centerY + (vertRec * smallerHeight);
+
+        // A corner piece keeps the corner it shares with this rectangle; every other corner is new
+        int newCorners = level | (level << 8) | (level << 16) | (level << 24);
+        int shared = horizRec == -1 && vertRec == 1 ? 0
+            : horizRec == 1 && vertRec == 1 ? 8
+            : horizRec == 1 && vertRec == -1 ? 16
+            : horizRec == -1 && vertRec == -1 ? 24 : -1;
+        int newCornerDepths = shared < 0 ? newCorners
+            : (newCorners & ~(0xFF << shared)) | (cornerDepths & (0xFF << shared));
+
+        // A smaller square takes its height as its side length
+        emitFractalSegments(newCenterX, newCenterY, square ? smallerHeight : smallerWidth, smallerHeight,
+                            square, newCornerDepths, level + 1, levelsLeft - 1, subtree, route, sink, budget);
+    }
+
+    /**
+     * Returns every cell of the fractal on the integer lattice, in the same order as the
+     * rectangles of getLines(). Each cell is packed as by packCell().
+     * 
+     * @return The packed cells.
+     * @throws IllegalStateException If the fractal is deeper than MAX_LATTICE_LEVELS.
+     */
+    public long[] getLatticeCells() {
+        long count = saturatedPower(8, getNumLevels());
+        if (getNumLevels() > MAX_LATTICE_LEVELS || count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many lattice cells for an array: " + count);
+        }
+        long[] cells = new long[(int) count];
+        int[] next = {0};
+        generateLatticeCells(cell -> cells[next[0]++] = cell, GenerationBudget.unlimited());
+        return cells;
+    }
+
+    /**
+     * Streams every cell of the fractal on the integer lattice, in the same order as the
+     * rectangles of getLines(). Only integer arithmetic is used, so cells are exact at any level.
+     * 
+     * @param consumer Receives each packed cell.
+     * @param budget The budget whose deadline the generation has to respect.
+     * @throws IllegalStateException If the fractal is deeper than MAX_LATTICE_LEVELS.
+     */
+    public void generateLatticeCells(LongConsumer consumer, GenerationBudget budget) {
+        checkLatticeLevels();
+        emitLatticeCells(0, 0, getNumLevels(), consumer, budget);
+    }
+
+    /**
+     * Streams the edges of the fractal from the integer lattice, mapping lattice corners to
+     * world coordinates only as each edge is emitted. An edge shared by two neighboring cells
+     * is emitted once, and every corner maps to exactly the same coordinates in every cell
+     * that shares it. The base rectangle is used without any rotation, as in getLines()
+     * from level 1 on.
+     * 
+     * @param sink The sink receiving each edge.
+     * @param budget The budget whose deadline the generation has to respect.
+     * @throws IllegalStateException If the fractal is deeper than MAX_LATTICE_LEVELS.
+     */
+    public void generateLattice(SegmentSink sink, GenerationBudget budget) {
+        checkLatticeLevels();
+        Rectangle rec = (Rectangle) this.getBaseShape();
+        int numLevels = getNumLevels();
+        long cellsPerSide = saturatedPower(3, numLevels);
+        double left = rec.getCenter().getX() - rec.getWidth() / 2;
+        double bottom = rec.getCenter().getY() - rec.getHeight() / 2;
+        double cellWidth = rec.getWidth() / cellsPerSide;
+        double cellHeight = rec.getHeight() / cellsPerSide;
+
+        emitLatticeCells(0, 0, numLevels, cell -> {
+            long i = cellX(cell);
+            long j = cellY(cell);
+            double cellLeft = left + i * cellWidth;
+            double cellRight = left + (i + 1) * cellWidth;
+            double cellBottom = bottom + j * cellHeight;
+            double cellTop = bottom + (j + 1) * cellHeight;
+
+            // Top and right edges always belong to this cell; the bottom and left edges
+            // belong to the neighbor below or to the left when that neighbor is kept
+            sink.add(cellLeft, cellTop, cellRight, cellTop);
+            sink.add(cellRight, cellTop, cellRight, cellBottom);
+            if (j == 0 || !isLatticeCellKept(i, j - 1, numLevels)) {
+                sink.add(cellRight, cellBottom, cellLeft, cellBottom);
+            }
+            if (i == 0 || !isLatticeCellKept(i - 1, j, numLevels)) {
+                sink.add(cellLeft, cellBottom, cellLeft, cellTop);
+            }
+        }, budget);
+    }
+
+    /**
+     * Returns the fractal as an indexed mesh built from the integer lattice, so that
+     * shared corners and shared edges are merged exactly. Unlike getMesh(), an edge shared
+     * by two rectangles appears once and the edges are not in the order of getLines().
+     * At level 0 the base rectangle, with any rotation, is returned as by getMesh().
+     * 
+     * @return A mesh of the unique edges of the fractal.
+     * @throws IllegalStateException If the fractal is deeper than MAX_LATTICE_LEVELS.
+     */
+    public IndexedMesh getLatticeMesh() {
+        if (getNumLevels() == 0) {
+            return getMesh();
+        }
+        IndexedMesh.Builder builder = new IndexedMesh.Builder();
+        generateLattice(builder, GenerationBudget.unlimited());
+        return builder.build();
+    }
+
+    /**
+     * Returns whether a unit cell of the 3^n x 3^n lattice belongs to the fractal: it does
+     * unless, at some level, both of its base-3 digits are 1 (the removed center piece).
+     * 
+     * @param i The column of the cell, counted from the left.
+     * @param j The row of the cell, counted from the bottom.
+     * @param numLevels The number of levels n.
+     * @return True if the cell is part of the fractal.
+     */
+    public static boolean isLatticeCellKept(long i, long j, int numLevels) {
+        for (int level = 0; level < numLevels; level++) {
+            if (i % 3 == 1 && j % 3 == 1) {
+                return false;
+            }
+            i /= 3;
+            j /= 3;
+        }
+        return true;
+    }
+
+    /**
+     * Packs a lattice cell into a long: the column in the low 29 bits, the row in the next
+     * 29 bits, and the size exponent k (the cell is 3^k lattice units wide) above them.
+     * 
+     * @param i The column of the cell's bottom-left corner.
+     * @param j The row of the cell's bottom-left corner.
+     * @param sizeExponent The size exponent of the cell.
+     * @return The packed cell.
+     */
+    public static long packCell(long i, long j, int sizeExponent) {
+        return ((long) sizeExponent << (2 * INDEX_BITS)) | (j << INDEX_BITS) | i;
+    }
+
+    /**
+     * Returns the column of a packed cell's bottom-left corner.
+     * 
+     * @param cell The packed cell.
+     * @return The column.
+     */
+    public static long cellX(long cell) {
+        return cell & INDEX_MASK;
+    }
+
+    /**
+     * Returns the row of a packed cell's bottom-left corner.
+     * 
+     * @param cell The packed cell.
+     * @return The row.
+     */
+    public static long cellY(long cell) {
+        return (cell >>> INDEX_BITS) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the size exponent of a packed cell.
+     * 
+     * @param cell The packed cell.
+     * @return The size exponent k; the cell is 3^k lattice units wide.
+     */
+    public static int cellSizeExponent(long cell) {
+        return (int) (cell >>> (2 * INDEX_BITS));
+    }
+
+    /**
+     * Recursively streams the unit cells inside one lattice cell, in the same order as createFractalLines.
+     * 
+     * @param i The column of the cell's bottom-left corner.
+     * @param j The row of the cell's bottom-left corner.
+     * @param sizeExponent The size exponent of the cell, which is also the number of levels left.
+     * @param consumer Receives each packed unit cell.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    private void emitLatticeCells(long i, long j, int sizeExponent, LongConsumer consumer, GenerationBudget budget) {
+        if (sizeExponent == 0) {
+            consumer.accept(packCell(i, j, 0));
+            return;
+        }
+        budget.checkDeadline();
+
+        long third = saturatedPower(3, sizeExponent - 1);
+        for (int horizRec = 0; horizRec < 3; horizRec++) {
+            for (int vertRec = 0; vertRec < 3; vertRec++) {
+                // Skip the center piece of the 3x3 grid
+                if (horizRec == 1 && vertRec == 1) {
+                    continue;
+                }
+                emitLatticeCells(i + horizRec * third, j + vertRec * third, sizeExponent - 1, consumer, budget);
+            }
+        }
+    }
+
+    /**
+     * Checks that the fractal is shallow enough for the lattice.
+     * 
+     * @throws IllegalStateException If the fractal is deeper than MAX_LATTICE_LEVELS.
+     */
+    private void checkLatticeLevels() {
+        if (getNumLevels() > MAX_LATTICE_LEVELS) {
+            throw new IllegalStateException("Lattice generation supports at most " + MAX_LATTICE_LEVELS + " levels");
+        }
     }
 
     /**
@@ -36,13 +467,15 @@ public class RectangleFractal<T extends Polygon & RectangleShape> extends Fracta
      * 
      * @param rec The base rectangle to generate lines from.
      * @param levelsLeft The number of recursive levels remaining.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal at the current level.
      */
-    private Line[] createFractalLines(Rectangle rec, int levelsLeft) {
+    private Line[] createFractalLines(Rectangle rec, int levelsLeft, GenerationBudget budget) {
         if (levelsLeft == 0) {
             // Base case: return the lines of the rectangle at the current level
             return rec.getLines();
         }
+        budget.checkDeadline();
 
         // List to store all lines of the current fractal level
         ArrayList<Line> levelLines = new ArrayList<>();
@@ -74,7 +507,7 @@ public class RectangleFractal<T extends Polygon & RectangleShape> extends Fracta
                     }
 
                     // Recursively generate lines for the sub-rectangle
-                    Line[] shapeLines = createFractalLines(smallerRec, levelsLeft - 1);
+                    Line[] shapeLines = createFractalLines(smallerRec, levelsLeft - 1, budget);
 
                     // Add the lines of the sub-rectangle to the current level
                     for (Line line : shapeLines) {
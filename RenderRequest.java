@@ -0,0 +1,49 @@
+import java.nio.file.Path;
+
+/**
+ * Describes where a FractalEngine renders to: a segment sink, a file, or a framebuffer.
+ * Only the fields of the request's target are set; the others are null or zero.
+ *
+ * @param target The kind of target
+ * @param sink The sink receiving the segments of a canvas render
+ * @param file The file receiving the segments of a file render
+ * @param view The mapping from world coordinates to pixels of a raster render
+ * @param pixels The framebuffer of a raster render, view.width() * view.height() ARGB pixels in row order
+ * @param argb The color of a raster render as ARGB
+ * @author Ethan Hunt
+ */
+public record RenderRequest(FractalEngine.Target target, SegmentSink sink, Path file,
+                            Viewport view, int[] pixels, int argb) {
+
+  /**
+   * Creates a request streaming segments to a sink.
+   *
+   * @param sink The sink receiving each segment
+   * @return The request
+   */
+  public static RenderRequest canvas(SegmentSink sink) {
+    return new RenderRequest(FractalEngine.Target.CANVAS, sink, null, null, null, 0);
+  }
+
+  /**
+   * Creates a request writing segments to a file.
+   *
+   * @param file The file to write
+   * @return The request
+   */
+  public static RenderRequest file(Path file) {
+    return new RenderRequest(FractalEngine.Target.FILE, null, file, null, null, 0);
+  }
+
+  /**
+   * Creates a request drawing pixels into a framebuffer.
+   *
+   * @param view The mapping from world coordinates to pixels
+   * @param pixels The framebuffer, view.width() * view.height() ARGB pixels in row order
+   * @param argb The color to draw with as ARGB
+   * @return The request
+   */
+  public static RenderRequest raster(Viewport view, int[] pixels, int argb) {
+    return new RenderRequest(FractalEngine.Target.RASTER, null, null, view, pixels, argb);
+  }
+}
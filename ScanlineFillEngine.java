@@ -0,0 +1,92 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fills snowflake and rectangle fractals into a framebuffer with ScanlineFiller: a solid
+ * snowflake inside its outline, and solid cells for a rectangle fractal. The cost grows
+ * with the number of segments, plus the spans of every scanline.
+ *
+ * @author Ethan Hunt
+ */
+public class ScanlineFillEngine implements FractalEngine {
+
+  /** The approximate time to generate a segment and build its edge, in nanoseconds */
+  private static final long NANOS_PER_SEGMENT = 100;
+
+  /** The approximate time to fill one pixel on one thread, in nanoseconds */
+  private static final long NANOS_PER_PIXEL = 1;
+
+  /** The number of bytes SegmentBuffer and the edge table keep per segment */
+  private static final long BYTES_PER_SEGMENT = 32 + 48;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "scanline-fill"
+   */
+  @Override
+  public String getName() {
+    return "scanline-fill";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Parallel and filled
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.PARALLEL, Capability.FILLED);
+  }
+
+  /**
+   * Supports snowflake and rectangle fractals drawn into a framebuffer, whose segments
+   * form closed outlines.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.RASTER && (fractal instanceof SnowflakeFractal<?> || fractal instanceof RectangleFractal<?>);
+  }
+
+  /**
+   * Estimates the cost from the number of segments, which are all retained as edges, and pixels.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds, or Long.MAX_VALUE if the edges would not fit the byte limit
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    long segments = Math.min(fractal.estimateSegmentCount(), budget.getMaxSegments());
+    if (segments > Integer.MAX_VALUE / 4 || segments * BYTES_PER_SEGMENT > budget.getMaxBytes()) {
+      return Long.MAX_VALUE;
+    }
+    long pixels = (long) request.view().width() * request.view().height();
+    int threads = Runtime.getRuntime().availableProcessors();
+    return segments * NANOS_PER_SEGMENT + pixels * NANOS_PER_PIXEL / threads;
+  }
+
+  /**
+   * Fills the fractal into the request's framebuffer with the nonzero rule, so parts of
+   * an outline that overlap themselves are filled too.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if the fractal was filled, false if the deadline passed while generating
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    if (fractal instanceof SnowflakeFractal<?> snowflake) {
+      return ScanlineFiller.fillSnowflake(snowflake, request.view(), ScanlineFiller.FillRule.NON_ZERO,
+                                          request.pixels(), request.argb(), budget);
+    }
+    return ScanlineFiller.fillCarpet((RectangleFractal<?>) fractal, request.view(), ScanlineFiller.FillRule.NON_ZERO,
+                                     request.pixels(), request.argb(), budget);
+  }
+}
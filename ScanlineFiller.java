@@ -0,0 +1,290 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Fills the inside of closed outlines into a framebuffer, one scanline at a time, instead
+ * of filling every polygon of a fractal on its own. The outline's segments are turned into
+ * edges in pixel space, sorted by their first scanline and binned into horizontal bands.
+ * Each band keeps an active edge table: edges enter it at their first scanline and leave
+ * after their last, and the table stays sorted by the x-coordinate where its edges cross
+ * the current scanline, so the spans to fill can be read off in one pass. Bands do not
+ * share pixels, so they are filled in parallel.
+ *
+ * A pixel is filled when its center is inside the outline. Inside is decided either by
+ * the even-odd rule, where crossing any edge toggles inside and outside, or by the
+ * nonzero rule, where edges going down and up are counted against each other and any
+ * nonzero count is inside. The rules differ only where outlines overlap themselves.
+ *
+ * @author Ethan Hunt
+ */
+public class ScanlineFiller {
+
+  /** The number of scanlines in a band */
+  public static final int BAND_HEIGHT = 32;
+
+  /**
+   * How to decide which pixels are inside an outline.
+   */
+  public enum FillRule {
+    EVEN_ODD, NON_ZERO
+  }
+
+  // The edges of the outline in pixel space, each covering the scanlines from its first to its last row
+  private final int[] firstRows;
+  private final int[] lastRows;
+
+  // The x-coordinate where each edge crosses the center of its first row, and its change per row
+  private final double[] startXs;
+  private final double[] slopes;
+
+  // +1 for an edge going down the image, -1 for one going up
+  private final int[] directions;
+
+  // The edges overlapping each band, sorted by first row, and the start of each band's bin
+  private final int[] bandStarts;
+  private final int[] bandEdges;
+
+  // The size of the framebuffer
+  private final int width;
+  private final int height;
+
+  /**
+   * Builds the edge table of an outline.
+   *
+   * @param outline The segments of the outline, in world coordinates
+   * @param view The mapping from world coordinates to pixels
+   */
+  private ScanlineFiller(SegmentBuffer outline, Viewport view) {
+    this.width = view.width();
+    this.height = view.height();
+    int count = outline.size();
+    firstRows = new int[count];
+    lastRows = new int[count];
+    startXs = new double[count];
+    slopes = new double[count];
+    directions = new int[count];
+
+    // Turn the segments into edges, sorted by first row; horizontal edges never cross a row center
+    long[] keys = new long[count];
+    int edges = 0;
+    for (int i = 0; i < count; i++) {
+      double x1 = view.toPixelX(outline.getFirstX(i));
+      double y1 = view.toPixelY(outline.getFirstY(i));
+      double x2 = view.toPixelX(outline.getSecondX(i));
+      double y2 = view.toPixelY(outline.getSecondY(i));
+      int direction = y2 > y1 ? 1 : -1;
+      if (direction < 0) {
+        double swap = x1;
+        x1 = x2;
+        x2 = swap;
+        swap = y1;
+        y1 = y2;
+        y2 = swap;
+      }
+
+      // Rows whose centers lie in [y1, y2)
+      int firstRow = (int) Math.max(0, Math.ceil(y1 - 0.5));
+      int lastRow = (int) Math.min(height - 1, Math.ceil(y2 - 0.5) - 1);
+      if (!(y2 > y1) || firstRow > lastRow) {
+        continue;
+      }
+      double slope = (x2 - x1) / (y2 - y1);
+      firstRows[edges] = firstRow;
+      lastRows[edges] = lastRow;
+      startXs[edges] = x1 + (firstRow + 0.5 - y1) * slope;
+      slopes[edges] = slope;
+      directions[edges] = direction;
+      keys[edges] = ((long) firstRow << 32) | edges;
+      edges++;
+    }
+    Arrays.sort(keys, 0, edges);
+
+    // Bin the edges into the bands they overlap: count, prefix sum, then scatter in sorted order
+    int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+    bandStarts = new int[bands + 1];
+    for (int i = 0; i < edges; i++) {
+      for (int band = firstRows[i] / BAND_HEIGHT; band <= lastRows[i] / BAND_HEIGHT; band++) {
+        bandStarts[band + 1]++;
+      }
+    }
+    for (int band = 0; band < bands; band++) {
+      bandStarts[band + 1] += bandStarts[band];
+    }
+    bandEdges = new int[bandStarts[bands]];
+    int[] next = Arrays.copyOf(bandStarts, bands);
+    for (int k = 0; k < edges; k++) {
+      int i = (int) keys[k];
+      for (int band = firstRows[i] / BAND_HEIGHT; band <= lastRows[i] / BAND_HEIGHT; band++) {
+        bandEdges[next[band]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Fills the inside of closed outlines into a framebuffer.
+   *
+   * @param outline The segments of one or more closed outlines, in world coordinates
+   * @param view The mapping from world coordinates to pixels
+   * @param rule How to decide which pixels are inside
+   * @param pixels The framebuffer, view.width() * view.height() ARGB pixels in row order
+   * @param argb The color to fill with as ARGB
+   */
+  public static void fill(SegmentBuffer outline, Viewport view, FillRule rule, int[] pixels, int argb) {
+    ScanlineFiller filler = new ScanlineFiller(outline, view);
+    IntStream.range(0, filler.bandStarts.length - 1).parallel().forEach(band -> filler.fillBand(band, rule, pixels, argb));
+  }
+
+  /**
+   * Fills a snowflake fractal: its outline is one closed curve around the whole snowflake.
+   *
+   * @param fractal The snowflake
+   * @param view The mapping from world coordinates to pixels
+   * @param rule How to decide which pixels are inside
+   * @param pixels The framebuffer
+   * @param argb The color to fill with as ARGB
+   * @param budget The limits generating the outline has to stay within
+   * @return True if the snowflake was filled, false if the deadline passed while generating
+   */
+  public static boolean fillSnowflake(SnowflakeFractal<?> fractal, Viewport view, FillRule rule,
+                                      int[] pixels, int argb, GenerationBudget budget) {
+    return fillOutlines(fractal, view, rule, pixels, argb, budget);
+  }
+
+  /**
+   * Fills the cells of a rectangle fractal: each cell's edges are a closed outline of its
+   * own, and cells never overlap, so either rule fills exactly the cells.
+   *
+   * @param fractal The rectangle fractal
+   * @param view The mapping from world coordinates to pixels
+   * @param rule How to decide which pixels are inside
+   * @param pixels The framebuffer
+   * @param argb The color to fill with as ARGB
+   * @param budget The limits generating the cells has to stay within
+   * @return True if the cells were filled, false if the deadline passed while generating
+   */
+  public static boolean fillCarpet(RectangleFractal<?> fractal, Viewport view, FillRule rule,
+                                   int[] pixels, int argb, GenerationBudget budget) {
+    return fillOutlines(fractal, view, rule, pixels, argb, budget);
+  }
+
+  /**
+   * Generates a fractal's outlines and fills them.
+   *
+   * @param fractal The fractal, whose segments form closed outlines
+   * @param view The mapping from world coordinates to pixels
+   * @param rule How to decide which pixels are inside
+   * @param pixels The framebuffer
+   * @param argb The color to fill with as ARGB
+   * @param budget The limits generating the outlines has to stay within
+   * @return True if the outlines were filled, false if the deadline passed while generating
+   */
+  private static boolean fillOutlines(Fractal<?> fractal, Viewport view, FillRule rule,
+                                      int[] pixels, int argb, GenerationBudget budget) {
+    SegmentBuffer outline = new SegmentBuffer();
+    if (!fractal.generate(outline, budget)) {
+      return false;
+    }
+    fill(outline, view, rule, pixels, argb);
+    return true;
+  }
+
+  /**
+   * Fills the scanlines of one band with its own active edge table.
+   *
+   * @param band The band to fill
+   * @param rule How to decide which pixels are inside
+   * @param pixels The framebuffer
+   * @param argb The color to fill with as ARGB
+   */
+  private void fillBand(int band, FillRule rule, int[] pixels, int argb) {
+    int top = band * BAND_HEIGHT;
+    int bottom = Math.min(top + BAND_HEIGHT, height);
+    int next = bandStarts[band];
+    int end = bandStarts[band + 1];
+
+    // The active edges and where they cross the current row, kept sorted by that crossing
+    int[] active = new int[16];
+    double[] crossings = new double[16];
+    int activeCount = 0;
+
+    for (int row = top; row < bottom; row++) {
+      // Drop the edges that ended on an earlier row and move the rest to this row
+      int kept = 0;
+      for (int k = 0; k < activeCount; k++) {
+        int edge = active[k];
+        if (lastRows[edge] >= row) {
+          active[kept] = edge;
+          crossings[kept] = startXs[edge] + (row - firstRows[edge]) * slopes[edge];
+          kept++;
+        }
+      }
+      activeCount = kept;
+
+      // Add the edges starting on this row, or before the band for its first row
+      while (next < end && Math.max(firstRows[bandEdges[next]], top) <= row) {
+        int edge = bandEdges[next++];
+        if (activeCount == active.length) {
+          active = Arrays.copyOf(active, activeCount * 2);
+          crossings = Arrays.copyOf(crossings, activeCount * 2);
+        }
+        active[activeCount] = edge;
+        crossings[activeCount] = startXs[edge] + (row - firstRows[edge]) * slopes[edge];
+        activeCount++;
+      }
+
+      // The order barely changes from row to row, so insertion sort is close to linear
+      for (int k = 1; k < activeCount; k++) {
+        int edge = active[k];
+        double crossing = crossings[k];
+        int j = k - 1;
+        while (j >= 0 && crossings[j] > crossing) {
+          active[j + 1] = active[j];
+          crossings[j + 1] = crossings[j];
+          j--;
+        }
+        active[j + 1] = edge;
+        crossings[j + 1] = crossing;
+      }
+
+      int offset = row * width;
+      if (rule == FillRule.EVEN_ODD) {
+        for (int k = 0; k + 1 < activeCount; k += 2) {
+          fillSpan(pixels, offset, crossings[k], crossings[k + 1], argb);
+        }
+      } else {
+        int winding = 0;
+        for (int k = 0; k < activeCount; k++) {
+          int before = winding;
+          winding += directions[active[k]];
+          if (before == 0 && winding != 0) {
+            // The span starts here and ends at the edge that brings the count back to zero
+            int spanEnd = k + 1;
+            while (spanEnd < activeCount && winding != 0) {
+              winding += directions[active[spanEnd]];
+              spanEnd++;
+            }
+            fillSpan(pixels, offset, crossings[k], crossings[Math.min(spanEnd, activeCount) - 1], argb);
+            k = spanEnd - 1;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Fills the pixels of a row whose centers lie between two crossings.
+   *
+   * @param pixels The framebuffer
+   * @param offset The index of the row's first pixel
+   * @param left The crossing where the span starts
+   * @param right The crossing where the span ends
+   * @param argb The color to fill with as ARGB
+   */
+  private void fillSpan(int[] pixels, int offset, double left, double right, int argb) {
+    int from = (int) Math.max(0, Math.ceil(left - 0.5));
+    int to = (int) Math.min(width, Math.ceil(right - 0.5));
+    if (from < to) {
+      Arrays.fill(pixels, offset + from, offset + to, argb);
+    }
+  }
+}
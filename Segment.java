@@ -0,0 +1,73 @@
+/**
+ * Represents an immutable line segment between two vertices. Unlike Line, a Segment
+ * and its endpoints never change once created. Fractal.getSegments() returns the
+ * generated geometry as segments, so it can be read by several threads at once and
+ * shared freely.
+ * 
+ * @param first The first endpoint of the segment
+ * @param second The second endpoint of the segment
+ * @author Ethan Hunt
+ */
+public record Segment(Vertex first, Vertex second) {
+
+  /**
+   * Creates a Segment with the current endpoints of a Line.
+   * 
+   * @param line The line to copy
+   * @return A segment between the same positions as the line
+   */
+  public static Segment of(Line line) {
+    return new Segment(Vertex.of(line.getFirstPoint()), Vertex.of(line.getSecondPoint()));
+  }
+
+  /**
+   * Returns a Segment with the same second endpoint and a new first endpoint.
+   * 
+   * @param first The new first endpoint
+   * @return The derived segment
+   */
+  public Segment withFirst(Vertex first) {
+    return new Segment(first, this.second);
+  }
+
+  /**
+   * Returns a Segment with the same first endpoint and a new second endpoint.
+   * 
+   * @param second The new second endpoint
+   * @return The derived segment
+   */
+  public Segment withSecond(Vertex second) {
+    return new Segment(this.first, second);
+  }
+
+  /**
+   * Returns this Segment moved by an offset.
+   * 
+   * @param xDiff The offset along the x axis
+   * @param yDiff The offset along the y axis
+   * @return The moved segment
+   */
+  public Segment translate(double xDiff, double yDiff) {
+    return new Segment(this.first.translate(xDiff, yDiff), this.second.translate(xDiff, yDiff));
+  }
+
+  /**
+   * Returns this Segment rotated about a vertex by an angle in radians.
+   * 
+   * @param center The vertex around which the segment is rotated
+   * @param angle The angle in radians to rotate by
+   * @return The rotated segment
+   */
+  public Segment rotateAbout(Vertex center, double angle) {
+    return new Segment(this.first.rotateAbout(center, angle), this.second.rotateAbout(center, angle));
+  }
+
+  /**
+   * Returns a new Line with mutable copies of this Segment's endpoints.
+   * 
+   * @return A line between the same positions
+   */
+  public Line toLine() {
+    return new Line(this.first.toPoint(), this.second.toPoint());
+  }
+}
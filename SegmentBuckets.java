@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Collects tagged segments into one bucket per depth or per subtree, so a renderer can
+ * color every bucket differently while setting the stroke only once per bucket. Each
+ * bucket is a SegmentBuffer and keeps the generation order of its segments. Buckets
+ * are created as their first segment arrives, so the number of buckets is the highest
+ * key seen plus one.
+ *
+ * @author Ethan Hunt
+ */
+public class SegmentBuckets implements TaggedSegmentSink {
+
+  /**
+   * The tag that chooses a segment's bucket.
+   */
+  public enum Key {
+    DEPTH, SUBTREE
+  }
+
+  // The tag that chooses a segment's bucket
+  private final Key key;
+
+  // The buckets by key; a key with no segments has no buffer
+  private SegmentBuffer[] buckets = new SegmentBuffer[8];
+
+  // The number of buckets, the highest key seen plus one
+  private int bucketCount = 0;
+
+  // The number of segments in all buckets
+  private int size = 0;
+
+  /**
+   * Constructs an empty set of buckets.
+   *
+   * @param key The tag that chooses a segment's bucket
+   */
+  public SegmentBuckets(Key key) {
+    this.key = key;
+  }
+
+  /**
+   * Adds a segment to the bucket of its depth or subtree.
+   *
+   * @param firstX The x-coordinate of the first endpoint
+   * @param firstY The y-coordinate of the first endpoint
+   * @param secondX The x-coordinate of the second endpoint
+   * @param secondY The y-coordinate of the second endpoint
+   * @param depth The level at which the first endpoint was created
+   * @param subtree The top-level branch the segment belongs to
+   */
+  @Override
+  public void add(double firstX, double firstY, double secondX, double secondY, int depth, int subtree) {
+    int bucket = key == Key.DEPTH ? depth : subtree;
+    if (bucket >= buckets.length) {
+      buckets = Arrays.copyOf(buckets, Math.max(buckets.length * 2, bucket + 1));
+    }
+    if (buckets[bucket] == null) {
+      buckets[bucket] = new SegmentBuffer();
+    }
+    buckets[bucket].add(firstX, firstY, secondX, secondY);
+    bucketCount = Math.max(bucketCount, bucket + 1);
+    size++;
+  }
+
+  /**
+   * Returns the tag that chooses a segment's bucket.
+   *
+   * @return The key
+   */
+  public Key getKey() {
+    return key;
+  }
+
+  /**
+   * Returns the number of buckets, including empty ones below the highest key.
+   *
+   * @return The highest key seen plus one
+   */
+  public int getBucketCount() {
+    return bucketCount;
+  }
+
+  /**
+   * Returns the segments of one bucket.
+   *
+   * @param bucket The depth or subtree of the bucket
+   * @return The segments, or null if no segment has that key
+   */
+  public SegmentBuffer getBucket(int bucket) {
+    return buckets[bucket];
+  }
+
+  /**
+   * Returns the number of segments in all buckets.
+   *
+   * @return The number of segments
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the approximate number of bytes the buckets take up.
+   *
+   * @return The number of bytes
+   */
+  public long estimateBytes() {
+    long bytes = 16 + 8L * buckets.length;
+    for (int i = 0; i < bucketCount; i++) {
+      if (buckets[i] != null) {
+        bytes += buckets[i].estimateBytes();
+      }
+    }
+    return bytes;
+  }
+}
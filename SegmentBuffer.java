@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * Represents a growable list of line segments stored as packed coordinates.
+ * Each segment takes four consecutive doubles (first x, first y, second x, second y),
+ * so a buffer holds the geometry of a fractal without a Line and two Point objects
+ * per segment. Used to retain generated geometry for redrawing.
+ *
+ * @author Ethan Hunt
+ */
+public class SegmentBuffer implements SegmentSink {
+
+  /** The number of doubles used to store one segment */
+  private static final int STRIDE = 4;
+
+  /** The packed segment coordinates */
+  private double[] coords;
+
+  /** The number of segments currently stored */
+  private int size = 0;
+
+  /**
+   * Constructs an empty SegmentBuffer with a small initial capacity.
+   */
+  public SegmentBuffer() {
+    this(16);
+  }
+
+  /**
+   * Constructs an empty SegmentBuffer able to hold the given number of segments
+   * before it has to grow.
+   *
+   * @param capacity The initial number of segments the buffer can hold
+   */
+  public SegmentBuffer(int capacity) {
+    this.coords = new double[Math.max(1, capacity) * STRIDE];
+  }
+
+  /**
+   * Creates a SegmentBuffer holding the coordinates of the given lines, in order.
+   *
+   * @param lines The lines to copy into the buffer
+   * @return A new buffer containing one segment per line
+   */
+  public static SegmentBuffer of(Line[] lines) {
+    SegmentBuffer buffer = new SegmentBuffer(lines.length);
+    for (Line line : lines) {
+      buffer.add(line.getFirstPoint().getX(), line.getFirstPoint().getY(),
+                 line.getSecondPoint().getX(), line.getSecondPoint().getY());
+    }
+    return buffer;
+  }
+
+  /**
+   * Appends a segment to the end of the buffer.
+   *
+   * @param firstX The x-coordinate of the first endpoint
+   * @param firstY The y-coordinate of the first endpoint
+   * @param secondX The x-coordinate of the second endpoint
+   * @param secondY The y-coordinate of the second endpoint
+   */
+  @Override
+  public void add(double firstX, double firstY, double secondX, double secondY) {
+    if ((size + 1) * STRIDE > coords.length) {
+      coords = Arrays.copyOf(coords, coords.length * 2);
+    }
+    int offset = size * STRIDE;
+    coords[offset] = firstX;
+    coords[offset + 1] = firstY;
+    coords[offset + 2] = secondX;
+    coords[offset + 3] = secondY;
+    size++;
+  }
+
+  /**
+   * Returns the number of segments in the buffer.
+   *
+   * @return The number of segments stored
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the x-coordinate of the first endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The x-coordinate of the segment's first endpoint
+   */
+  public double getFirstX(int index) {
+    return coords[index * STRIDE];
+  }
+
+  /**
+   * Returns the y-coordinate of the first endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The y-coordinate of the segment's first endpoint
+   */
+  public double getFirstY(int index) {
+    return coords[index * STRIDE + 1];
+  }
+
+  /**
+   * Returns the x-coordinate of the second endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The x-coordinate of the segment's second endpoint
+   */
+  public double getSecondX(int index) {
+    return coords[index * STRIDE + 2];
+  }
+
+  /**
+   * Returns the y-coordinate of the second endpoint of a segment.
+   *
+   * @param index The index of the segment
+   * @return The y-coordinate of the segment's second endpoint
+   */
+  public double getSecondY(int index) {
+    return coords[index * STRIDE + 3];
+  }
+
+  /**
+   * Moves and scales every segment in place: each coordinate becomes its offset from an
+   * origin, multiplied by a scale.
+   *
+   * @param originX The x-coordinate that moves to 0
+   * @param originY The y-coordinate that moves to 0
+   * @param scale The factor every offset is multiplied by
+   */
+  public void transform(double originX, double originY, double scale) {
+    for (int i = 0; i < size * STRIDE; i += 2) {
+      coords[i] = (coords[i] - originX) * scale;
+      coords[i + 1] = (coords[i + 1] - originY) * scale;
+    }
+  }
+
+  /**
+   * Returns the approximate memory the buffer occupies, including unused capacity.
+   *
+   * @return The approximate size of the buffer in bytes
+   */
+  public long estimateBytes() {
+    return 16L + 8L * coords.length;
+  }
+
+  /**
+   * Removes all segments from the buffer, keeping its capacity for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+}
@@ -0,0 +1,373 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Represents a packed R-tree over the segments of a SegmentBuffer, bulk loaded once and
+ * then queried many times. Segments are sorted along a Z-order (Morton) curve by the
+ * center of their bounding boxes and grouped into nodes of NODE_SIZE entries, level by
+ * level, so the whole tree is stored in a few flat arrays.
+ *
+ * Supports window queries (every segment crossing a rectangle) for selection and for
+ * culling segments outside the viewport, and nearest-segment queries for picking.
+ *
+ * @author Ethan Hunt
+ */
+public class SegmentIndex {
+
+  /** The number of children per node */
+  private static final int NODE_SIZE = 16;
+
+  // The indexed segments
+  private final SegmentBuffer segments;
+
+  // Bounding boxes (minX, minY, maxX, maxY) of every entry: the segments in sorted order, then the nodes level by level
+  private final double[] boxes;
+
+  // For a segment entry the segment's index in the buffer; for a node the entry index of its first child
+  private final int[] indices;
+
+  // The entry index at which each level ends; the last level holds only the root
+  private final int[] levelEnds;
+
+  /**
+   * Builds an index over every segment currently in a buffer. Segments added to the
+   * buffer afterwards are not indexed.
+   *
+   * @param segments The segments to index
+   */
+  public SegmentIndex(SegmentBuffer segments) {
+    this.segments = segments;
+    int count = segments.size();
+
+    // Count the entries on every level of the tree
+    int[] ends = new int[32];
+    int levels = 0;
+    int total = count;
+    int levelSize = count;
+    ends[levels++] = total;
+    do {
+      levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+      total += levelSize;
+      ends[levels++] = total;
+    } while (levelSize > 1);
+    this.levelEnds = Arrays.copyOf(ends, levels);
+    this.boxes = new double[4 * total];
+    this.indices = new int[total];
+
+    // Bounds of all segments, used to quantize the centers for sorting
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      minX = Math.min(minX, Math.min(segments.getFirstX(i), segments.getSecondX(i)));
+      minY = Math.min(minY, Math.min(segments.getFirstY(i), segments.getSecondY(i)));
+      maxX = Math.max(maxX, Math.max(segments.getFirstX(i), segments.getSecondX(i)));
+      maxY = Math.max(maxY, Math.max(segments.getFirstY(i), segments.getSecondY(i)));
+    }
+    double scaleX = (maxX > minX) ? 65535 / (maxX - minX) : 0;
+    double scaleY = (maxY > minY) ? 65535 / (maxY - minY) : 0;
+
+    // Sort the segments by the Morton code of their centers, packed with the index so a primitive sort suffices
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      double centerX = (segments.getFirstX(i) + segments.getSecondX(i)) / 2;
+      double centerY = (segments.getFirstY(i) + segments.getSecondY(i)) / 2;
+      long code = morton((int) ((centerX - minX) * scaleX), (int) ((centerY - minY) * scaleY));
+      keys[i] = (code << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    for (int entry = 0; entry < count; entry++) {
+      int i = (int) keys[entry];
+      indices[entry] = i;
+      boxes[4 * entry] = Math.min(segments.getFirstX(i), segments.getSecondX(i));
+      boxes[4 * entry + 1] = Math.min(segments.getFirstY(i), segments.getSecondY(i));
+      boxes[4 * entry + 2] = Math.max(segments.getFirstX(i), segments.getSecondX(i));
+      boxes[4 * entry + 3] = Math.max(segments.getFirstY(i), segments.getSecondY(i));
+    }
+
+    // Build each level of nodes from the level below it
+    int entry = count;
+    int childStart = 0;
+    for (int level = 1; level < levels; level++) {
+      int childEnd = levelEnds[level - 1];
+      for (int first = childStart; first < childEnd; first += NODE_SIZE) {
+        int last = Math.min(first + NODE_SIZE, childEnd);
+        double nodeMinX = Double.POSITIVE_INFINITY;
+        double nodeMinY = Double.POSITIVE_INFINITY;
+        double nodeMaxX = Double.NEGATIVE_INFINITY;
+        double nodeMaxY = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < last; child++) {
+          nodeMinX = Math.min(nodeMinX, boxes[4 * child]);
+          nodeMinY = Math.min(nodeMinY, boxes[4 * child + 1]);
+          nodeMaxX = Math.max(nodeMaxX, boxes[4 * child + 2]);
+          nodeMaxY = Math.max(nodeMaxY, boxes[4 * child + 3]);
+        }
+        boxes[4 * entry] = nodeMinX;
+        boxes[4 * entry + 1] = nodeMinY;
+        boxes[4 * entry + 2] = nodeMaxX;
+        boxes[4 * entry + 3] = nodeMaxY;
+        indices[entry] = first;
+        entry++;
+      }
+      childStart = childEnd;
+    }
+  }
+
+  /**
+   * Returns the number of indexed segments.
+   *
+   * @return The number of segments
+   */
+  public int size() {
+    return levelEnds[0];
+  }
+
+  /**
+   * Returns whether every indexed segment lies inside a rectangle.
+   *
+   * @param minX The left edge of the rectangle
+   * @param minY The bottom edge of the rectangle
+   * @param maxX The right edge of the rectangle
+   * @param maxY The top edge of the rectangle
+   * @return True if the bounding box of all segments is inside the rectangle
+   */
+  public boolean isWithin(double minX, double minY, double maxX, double maxY) {
+    int root = 4 * (boxes.length / 4 - 1);
+    return size() == 0 || (boxes[root] >= minX && boxes[root + 1] >= minY
+                           && boxes[root + 2] <= maxX && boxes[root + 3] <= maxY);
+  }
+
+  /**
+   * Visits every segment that crosses or lies inside a rectangle. Segments are visited
+   * in index order, not in the order they were added.
+   *
+   * @param minX The left edge of the rectangle
+   * @param minY The bottom edge of the rectangle
+   * @param maxX The right edge of the rectangle
+   * @param maxY The top edge of the rectangle
+   * @param visitor Receives the buffer index of each segment found
+   */
+  public void query(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+    if (size() == 0) {
+      return;
+    }
+    int[] stack = new int[NODE_SIZE * levelEnds.length + 1];
+    int top = 0;
+    stack[top++] = indices.length - 1;
+
+    while (top > 0) {
+      int node = stack[--top];
+      int first = indices[node];
+      int last = Math.min(first + NODE_SIZE, levelEndContaining(first));
+      for (int child = first; child < last; child++) {
+        if (boxes[4 * child] > maxX || boxes[4 * child + 1] > maxY
+            || boxes[4 * child + 2] < minX || boxes[4 * child + 3] < minY) {
+          continue;
+        }
+        if (child < size()) {
+          int segment = indices[child];
+          if (crossesRectangle(segment, minX, minY, maxX, maxY)) {
+            visitor.accept(segment);
+          }
+        } else {
+          stack[top++] = child;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the segment closest to a point, searching nodes nearest first and skipping
+   * every node farther away than the best segment found so far.
+   *
+   * @param x The x-coordinate of the point
+   * @param y The y-coordinate of the point
+   * @param maxDistance Segments farther from the point than this are ignored
+   * @return The buffer index of the closest segment, or -1 if none is within maxDistance
+   */
+  public int nearest(double x, double y, double maxDistance) {
+    if (size() == 0) {
+      return -1;
+    }
+    double bestDistance = maxDistance * maxDistance;
+    int best = -1;
+
+    // A binary min-heap of entries keyed by their squared distance to the point
+    double[] heapKeys = new double[64];
+    int[] heapEntries = new int[64];
+    int heapSize = 0;
+    int node = indices.length - 1;
+
+    while (true) {
+      int first = indices[node];
+      int last = Math.min(first + NODE_SIZE, levelEndContaining(first));
+      for (int child = first; child < last; child++) {
+        double distance = (child < size()) ? segmentDistanceSquared(indices[child], x, y)
+                                           : boxDistanceSquared(child, x, y);
+        if (distance > bestDistance) {
+          continue;
+        }
+        if (child < size()) {
+          bestDistance = distance;
+          best = indices[child];
+          continue;
+        }
+        if (heapSize == heapKeys.length) {
+          heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+          heapEntries = Arrays.copyOf(heapEntries, heapSize * 2);
+        }
+        // Sift the new node up
+        int pos = heapSize++;
+        while (pos > 0 && heapKeys[(pos - 1) / 2] > distance) {
+          heapKeys[pos] = heapKeys[(pos - 1) / 2];
+          heapEntries[pos] = heapEntries[(pos - 1) / 2];
+          pos = (pos - 1) / 2;
+        }
+        heapKeys[pos] = distance;
+        heapEntries[pos] = child;
+      }
+
+      // Stop once the nearest unvisited node is farther than the best segment
+      if (heapSize == 0 || heapKeys[0] > bestDistance) {
+        return best;
+      }
+      node = heapEntries[0];
+
+      // Pop the root and sift the last entry down
+      heapSize--;
+      double key = heapKeys[heapSize];
+      int value = heapEntries[heapSize];
+      int pos = 0;
+      while (2 * pos + 1 < heapSize) {
+        int child = 2 * pos + 1;
+        if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+          child++;
+        }
+        if (heapKeys[child] >= key) {
+          break;
+        }
+        heapKeys[pos] = heapKeys[child];
+        heapEntries[pos] = heapEntries[child];
+        pos = child;
+      }
+      heapKeys[pos] = key;
+      heapEntries[pos] = value;
+    }
+  }
+
+  /**
+   * Returns the end of the level that contains an entry.
+   *
+   * @param entry The entry index
+   * @return The entry index at which that level ends
+   */
+  private int levelEndContaining(int entry) {
+    for (int end : levelEnds) {
+      if (entry < end) {
+        return end;
+      }
+    }
+    return indices.length;
+  }
+
+  /**
+   * Returns the squared distance from a point to the bounding box of an entry.
+   *
+   * @param entry The entry index
+   * @param x The x-coordinate of the point
+   * @param y The y-coordinate of the point
+   * @return The squared distance, 0 if the point is inside the box
+   */
+  private double boxDistanceSquared(int entry, double x, double y) {
+    double dx = Math.max(0, Math.max(boxes[4 * entry] - x, x - boxes[4 * entry + 2]));
+    double dy = Math.max(0, Math.max(boxes[4 * entry + 1] - y, y - boxes[4 * entry + 3]));
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Returns the squared distance from a point to a segment.
+   *
+   * @param segment The buffer index of the segment
+   * @param x The x-coordinate of the point
+   * @param y The y-coordinate of the point
+   * @return The squared distance
+   */
+  private double segmentDistanceSquared(int segment, double x, double y) {
+    double firstX = segments.getFirstX(segment);
+    double firstY = segments.getFirstY(segment);
+    double dx = segments.getSecondX(segment) - firstX;
+    double dy = segments.getSecondY(segment) - firstY;
+    double lengthSquared = dx * dx + dy * dy;
+    double t = (lengthSquared == 0) ? 0 : ((x - firstX) * dx + (y - firstY) * dy) / lengthSquared;
+    t = Math.max(0, Math.min(1, t));
+    double offX = firstX + t * dx - x;
+    double offY = firstY + t * dy - y;
+    return offX * offX + offY * offY;
+  }
+
+  /**
+   * Returns whether a segment crosses or lies inside a rectangle, by clipping it
+   * against the rectangle's edges (Liang-Barsky).
+   *
+   * @param segment The buffer index of the segment
+   * @param minX The left edge of the rectangle
+   * @param minY The bottom edge of the rectangle
+   * @param maxX The right edge of the rectangle
+   * @param maxY The top edge of the rectangle
+   * @return True if part of the segment is inside the rectangle
+   */
+  private boolean crossesRectangle(int segment, double minX, double minY, double maxX, double maxY) {
+    double firstX = segments.getFirstX(segment);
+    double firstY = segments.getFirstY(segment);
+    double dx = segments.getSecondX(segment) - firstX;
+    double dy = segments.getSecondY(segment) - firstY;
+    double enter = 0;
+    double exit = 1;
+    for (int edge = 0; edge < 4; edge++) {
+      // The direction and distance of the segment's start relative to each edge
+      double p = (edge == 0) ? -dx : (edge == 1) ? dx : (edge == 2) ? -dy : dy;
+      double q = (edge == 0) ? firstX - minX : (edge == 1) ? maxX - firstX : (edge == 2) ? firstY - minY : maxY - firstY;
+      if (p == 0) {
+        if (q < 0) {
+          return false;
+        }
+      } else {
+        double t = q / p;
+        if (p < 0) {
+          enter = Math.max(enter, t);
+        } else {
+          exit = Math.min(exit, t);
+        }
+      }
+    }
+    return enter <= exit;
+  }
+
+  /**
+   * Interleaves the bits of two 16-bit coordinates into a 32-bit Morton code.
+   *
+   * @param x The x-coordinate, 0 to 65535
+   * @param y The y-coordinate, 0 to 65535
+   * @return The Morton code, x in the even bits and y in the odd bits
+   */
+  static long morton(int x, int y) {
+    return spreadBits(x) | (spreadBits(y) << 1);
+  }
+
+  /**
+   * Spreads the low 16 bits of a number so there is a zero bit between each of them.
+   *
+   * @param v The number to spread
+   * @return The spread bits
+   */
+  private static long spreadBits(int v) {
+    long x = v & 0xFFFFL;
+    x = (x | (x << 8)) & 0x00FF00FFL;
+    x = (x | (x << 4)) & 0x0F0F0F0FL;
+    x = (x | (x << 2)) & 0x33333333L;
+    x = (x | (x << 1)) & 0x55555555L;
+    return x;
+  }
+}
@@ -0,0 +1,21 @@
+/**
+ * Receives line segments one at a time as a fractal generates them.
+ * Implementations decide what to do with each segment, such as drawing it
+ * straight away or storing it, so a fractal can be produced without building
+ * an array of every line first.
+ * 
+ * @author Ethan Hunt 
+ */
+@FunctionalInterface
+public interface SegmentSink {
+
+    /**
+     * Accepts one segment.
+     * 
+     * @param firstX The x-coordinate of the first endpoint.
+     * @param firstY The y-coordinate of the first endpoint.
+     * @param secondX The x-coordinate of the second endpoint.
+     * @param secondY The y-coordinate of the second endpoint.
+     */
+    void add(double firstX, double firstY, double secondX, double secondY);
+}
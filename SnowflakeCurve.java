@@ -0,0 +1,339 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Represents the output of a SnowflakeFractal compactly as the edges of its base polygon,
+ * its level and a packed stream of turns. Every segment that replaces an edge has the
+ * same length, 1/3^n of the edge, and points in the direction of the edge turned by a
+ * multiple of 60 degrees, so a segment is fully described by the turn from the previous
+ * one: 0 at the start of an edge, then -60, +120 or -60 degrees, the turns between the
+ * four pieces of each subdivided segment. The turns take 2 bits per segment, and since
+ * every edge is subdivided the same way, one edge's turns are stored for all of them.
+ * A turtle walks the turns to produce the segments again on the fly.
+ *
+ * Positions are accumulated step by step and snapped back to the exact base vertex at the
+ * end of every edge, so they match the generators to within floating-point rounding.
+ *
+ * @author Ethan Hunt
+ */
+public class SnowflakeCurve {
+
+  /** The deepest level whose turns fit in an array of longs */
+  public static final int MAX_LEVELS = 17;
+
+  // The turn codes, 2 bits per segment; the first segment of every edge keeps TURN_NONE
+  private static final int TURN_NONE = 0;
+  private static final int TURN_RIGHT = 1;
+  private static final int TURN_BACK = 2;
+
+  /** The number of turn codes packed into one long */
+  private static final int TURNS_PER_LONG = 32;
+
+  // The edges of the base polygon, four doubles (first x, first y, second x, second y) per edge
+  private final double[] edges;
+
+  // The level of the curve
+  private final int numLevels;
+
+  // The turn before every segment of one edge, 2 bits each
+  private final long[] turns;
+
+  /**
+   * Constructs a SnowflakeCurve from its parts. The arrays are used directly, not copied.
+   *
+   * @param edges The edges of the base polygon, first x, first y, second x, second y for each edge
+   * @param numLevels The level of the curve
+   * @param turns The packed turns of one edge
+   */
+  private SnowflakeCurve(double[] edges, int numLevels, long[] turns) {
+    this.edges = edges;
+    this.numLevels = numLevels;
+    this.turns = turns;
+  }
+
+  /**
+   * Creates the compressed curve of a snowflake fractal at its current level.
+   *
+   * @param fractal The snowflake fractal to compress
+   * @return The compressed curve
+   * @throws IllegalArgumentException If the fractal has more than MAX_LEVELS levels
+   */
+  public static SnowflakeCurve of(SnowflakeFractal<?> fractal) {
+    int numLevels = fractal.getNumLevels();
+    checkLevels(numLevels);
+
+    Line[] baseLines = fractal.getBaseShape().getLines();
+    double[] edges = new double[4 * baseLines.length];
+    for (int i = 0; i < baseLines.length; i++) {
+      edges[4 * i] = baseLines[i].getFirstPoint().getX();
+      edges[4 * i + 1] = baseLines[i].getFirstPoint().getY();
+      edges[4 * i + 2] = baseLines[i].getSecondPoint().getX();
+      edges[4 * i + 3] = baseLines[i].getSecondPoint().getY();
+    }
+    return new SnowflakeCurve(edges, numLevels, encodeTurns(numLevels));
+  }
+
+  /**
+   * Reads a curve written by writeTo.
+   *
+   * @param in The input to read from
+   * @return The curve
+   * @throws IOException If the input cannot be read or does not hold a valid curve
+   */
+  public static SnowflakeCurve readFrom(DataInput in) throws IOException {
+    int numLevels = in.readInt();
+    int edgeCount = in.readInt();
+    // No base shape has more sides than FractalSpec allows, so a larger edge count is corrupt input
+    if (numLevels < 0 || numLevels > MAX_LEVELS || edgeCount < 0 || edgeCount > FractalSpec.MAX_SIDES) {
+      throw new IOException("Not a snowflake curve: " + edgeCount + " edges at level " + numLevels);
+    }
+    double[] edges = new double[4 * edgeCount];
+    for (int i = 0; i < edges.length; i++) {
+      edges[i] = in.readDouble();
+    }
+    long[] turns = new long[turnArrayLength(numLevels)];
+    for (int i = 0; i < turns.length; i++) {
+      turns[i] = in.readLong();
+    }
+    return new SnowflakeCurve(edges, numLevels, turns);
+  }
+
+  /**
+   * Writes the curve: the level, the base edges and the packed turns.
+   *
+   * @param out The output to write to
+   * @throws IOException If the output cannot be written
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(numLevels);
+    out.writeInt(edges.length / 4);
+    for (double coordinate : edges) {
+      out.writeDouble(coordinate);
+    }
+    for (long packed : turns) {
+      out.writeLong(packed);
+    }
+  }
+
+  /**
+   * Returns the level of the curve.
+   *
+   * @return The number of recursive levels
+   */
+  public int getNumLevels() {
+    return numLevels;
+  }
+
+  /**
+   * Returns the number of segments the curve decodes to.
+   *
+   * @return The number of segments
+   */
+  public long getSegmentCount() {
+    return (edges.length / 4) * segmentsPerEdge();
+  }
+
+  /**
+   * Returns the approximate memory the curve occupies.
+   *
+   * @return The approximate size of the curve in bytes
+   */
+  public long estimateBytes() {
+    return 16 + 8L * edges.length + 16 + 8L * turns.length + 32;
+  }
+
+  /**
+   * Returns a turtle positioned before the first segment of the curve.
+   *
+   * @return A new turtle over the curve
+   */
+  public Turtle turtle() {
+    return new Turtle();
+  }
+
+  /**
+   * Decodes every segment of the curve and sends it to a sink, in the order the generators emit them.
+   *
+   * @param sink The sink receiving the segments
+   */
+  public void forEachSegment(SegmentSink sink) {
+    Turtle turtle = new Turtle();
+    while (turtle.next()) {
+      sink.add(turtle.getFirstX(), turtle.getFirstY(), turtle.getSecondX(), turtle.getSecondY());
+    }
+  }
+
+  /**
+   * Walks the turns of a curve one segment at a time without allocating.
+   */
+  public class Turtle {
+
+    // The six step vectors of the current edge, the edge step turned by k * 60 degrees
+    private final double[] steps = new double[12];
+
+    // The current edge and segment within it, and the direction as a multiple of 60 degrees
+    private int edge = -1;
+    private long segment = segmentsPerEdge();
+    private int direction = 0;
+
+    // The endpoints of the current segment
+    private double firstX;
+    private double firstY;
+    private double secondX;
+    private double secondY;
+
+    /**
+     * Moves to the next segment.
+     *
+     * @return True if there is a next segment, false if the curve has ended
+     */
+    public boolean next() {
+      long perEdge = segmentsPerEdge();
+      if (segment == perEdge) {
+        if (edge + 1 >= edges.length / 4) {
+          return false;
+        }
+        startEdge(edge + 1);
+      }
+
+      int turn = turnCode(segment);
+      if (turn == TURN_RIGHT) {
+        direction = (direction + 5) % 6;
+      } else if (turn == TURN_BACK) {
+        direction = (direction + 2) % 6;
+      }
+
+      firstX = secondX;
+      firstY = secondY;
+      segment++;
+      if (segment == perEdge) {
+        // End exactly on the base vertex so rounding does not carry over to the next edge
+        secondX = edges[4 * edge + 2];
+        secondY = edges[4 * edge + 3];
+      } else {
+        secondX = firstX + steps[2 * direction];
+        secondY = firstY + steps[2 * direction + 1];
+      }
+      return true;
+    }
+
+    /**
+     * Returns the x-coordinate of the first endpoint of the current segment.
+     *
+     * @return The x-coordinate
+     */
+    public double getFirstX() {
+      return firstX;
+    }
+
+    /**
+     * Returns the y-coordinate of the first endpoint of the current segment.
+     *
+     * @return The y-coordinate
+     */
+    public double getFirstY() {
+      return firstY;
+    }
+
+    /**
+     * Returns the x-coordinate of the second endpoint of the current segment.
+     *
+     * @return The x-coordinate
+     */
+    public double getSecondX() {
+      return secondX;
+    }
+
+    /**
+     * Returns the y-coordinate of the second endpoint of the current segment.
+     *
+     * @return The y-coordinate
+     */
+    public double getSecondY() {
+      return secondY;
+    }
+
+    /**
+     * Positions the turtle at the start of an edge and computes its step vectors.
+     *
+     * @param next The index of the edge
+     */
+    private void startEdge(int next) {
+      edge = next;
+      segment = 0;
+      direction = 0;
+      secondX = edges[4 * edge];
+      secondY = edges[4 * edge + 1];
+
+      double scale = Math.pow(3, numLevels);
+      double stepX = (edges[4 * edge + 2] - secondX) / scale;
+      double stepY = (edges[4 * edge + 3] - secondY) / scale;
+      for (int k = 0; k < 6; k++) {
+        double angle = k * Math.PI / 3;
+        steps[2 * k] = stepX * Math.cos(angle) - stepY * Math.sin(angle);
+        steps[2 * k + 1] = stepX * Math.sin(angle) + stepY * Math.cos(angle);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of segments each base edge is replaced by.
+   *
+   * @return 4^n
+   */
+  private long segmentsPerEdge() {
+    return 1L << (2 * numLevels);
+  }
+
+  /**
+   * Returns the turn before a segment of an edge.
+   *
+   * @param segment The index of the segment within its edge
+   * @return The turn code
+   */
+  private int turnCode(long segment) {
+    return (int) (turns[(int) (segment / TURNS_PER_LONG)] >>> (2 * (segment % TURNS_PER_LONG))) & 3;
+  }
+
+  /**
+   * Packs the turns of one edge at a level. The turn before segment i is decided by the
+   * lowest non-zero base-4 digit of i, which tells which of the four pieces of its parent
+   * the segment starts: the second and fourth pieces turn by -60 degrees, the third by +120.
+   *
+   * @param numLevels The level of the curve
+   * @return The packed turns
+   */
+  private static long[] encodeTurns(int numLevels) {
+    long count = 1L << (2 * numLevels);
+    long[] turns = new long[turnArrayLength(numLevels)];
+    for (long i = 1; i < count; i++) {
+      int digit = (int) ((i >>> (Long.numberOfTrailingZeros(i) & ~1)) & 3);
+      long code = digit == 2 ? TURN_BACK : TURN_RIGHT;
+      turns[(int) (i / TURNS_PER_LONG)] |= code << (2 * (i % TURNS_PER_LONG));
+    }
+    return turns;
+  }
+
+  /**
+   * Returns the number of longs holding the turns of one edge.
+   *
+   * @param numLevels The level of the curve
+   * @return The length of the packed turn array
+   */
+  private static int turnArrayLength(int numLevels) {
+    return (int) (((1L << (2 * numLevels)) + TURNS_PER_LONG - 1) / TURNS_PER_LONG);
+  }
+
+  /**
+   * Checks that a level is supported.
+   *
+   * @param numLevels The level to check
+   * @throws IllegalArgumentException If the level is negative or above MAX_LEVELS
+   */
+  private static void checkLevels(int numLevels) {
+    if (numLevels < 0 || numLevels > MAX_LEVELS) {
+      throw new IllegalArgumentException("Snowflake curves support 0 to " + MAX_LEVELS + " levels, not " + numLevels);
+    }
+  }
+}
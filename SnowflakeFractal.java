@@ -10,6 +10,13 @@ import java.util.ArrayList;
  */
 public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal<T> {
 
+    /** The angle each middle segment is turned by to form the spike */
+    private static final double SPIKE_ANGLE = -(Math.PI / 3);
+
+    /** The cosine and sine of the spike angle */
+    private static final double SPIKE_COS = Math.cos(SPIKE_ANGLE);
+    private static final double SPIKE_SIN = Math.sin(SPIKE_ANGLE);
+
     /**
      * Constructs a SnowflakeFractal instance with a base polygon and number of levels.
      * 
@@ -21,13 +28,194 @@ public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal
     }
 
     /**
-     * Returns an array of lines that form the fractal.
+     * Returns the number of segments at a given level: every edge of the base shape
+     * becomes 4^n segments.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of segments, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long estimateSegmentCount(int numLevels) {
+        return saturatedMultiply(getBaseShape().getPoints().length, saturatedPower(4, numLevels));
+    }
+
+    /**
+     * Returns the bounding box at a given level. From level 1 on, the curve over each edge
+     * of the base shape stays inside the triangle of the edge and the tip of its first
+     * spike, and all three corners of that triangle are on the curve, so the box of those
+     * points is exact at every level.
      * 
+     * @param numLevels The number of recursive levels.
+     * @return The bounding box.
+     */
+    @Override
+    public Bounds boundingBox(int numLevels) {
+        Point[] points = getBaseShape().getPoints();
+        Bounds bounds = Bounds.of(points);
+        if (numLevels == 0) {
+            return bounds;
+        }
+        for (Line line : getBaseShape().getSharedLines()) {
+            double firstX = line.getFirstPoint().getX();
+            double firstY = line.getFirstPoint().getY();
+            double fifthX = line.getSecondPoint().getX();
+            double fifthY = line.getSecondPoint().getY();
+
+            // The tip of the first spike, with the same arithmetic as emitFractalSegments
+            double secondX = firstX + (fifthX - firstX) / 3;
+            double secondY = firstY + (fifthY - firstY) / 3;
+            double subX = firstX + (fifthX - firstX) * 2 / 3 - secondX;
+            double subY = firstY + (fifthY - firstY) * 2 / 3 - secondY;
+            bounds = bounds.include(((subX * SPIKE_COS) - (subY * SPIKE_SIN)) + secondX,
+                                    ((subX * SPIKE_SIN) + (subY * SPIKE_COS)) + secondY);
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the length of the curve at a given level: every level makes it 4/3 as long.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The perimeter.
+     */
+    @Override
+    public double perimeter(int numLevels) {
+        return basePerimeter() * Math.pow(4.0 / 3.0, numLevels);
+    }
+
+    /**
+     * Returns the number of vertices at a given level: the curve is closed, so it has as
+     * many vertices as segments.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of vertices, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long vertexCount(int numLevels) {
+        return estimateSegmentCount(numLevels);
+    }
+
+    /**
+     * Returns the fractal at its current level as a compressed turn sequence, which
+     * takes 2 bits per segment of one edge instead of a Line per segment.
+     * 
+     * @return The compressed curve of the fractal.
+     */
+    public SnowflakeCurve getCurve() {
+        return SnowflakeCurve.of(this);
+    }
+
+    /**
+     * Creates an array of lines that form the fractal.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal structure.
      */
     @Override
-    public Line[] getLines() {
-        return createFractalLines(getBaseShape().getLines(), getNumLevels());
+    protected Line[] createLines(int numLevels, GenerationBudget budget) {
+        return createFractalLines(getBaseShape().getLines(), numLevels, budget);
+    }
+
+    /**
+     * Returns the number of partitions at the top of the recursion: each edge of the base shape is one.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of edges of the base shape.
+     */
+    @Override
+    protected int topPartitionCount(int numLevels) {
+        return getBaseShape().getSharedLines().length;
+    }
+
+    /**
+     * Returns the number of pieces each segment is replaced with.
+     * 
+     * @return 4.
+     */
+    @Override
+    protected int partitionBranching() {
+        return 4;
+    }
+
+    /**
+     * Returns the deepest split depth: the edges, then each level of pieces below them.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return One more than the number of levels.
+     */
+    @Override
+    protected int maxPartitionDepth(int numLevels) {
+        return numLevels + 1;
+    }
+
+    /**
+     * Streams the tagged segments grown from one edge of the base shape, which is also their
+     * subtree, or from the pieces of it on the route.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param partition The edge of the base shape.
+     * @param route The piece to take at each level below the edge.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    @Override
+    protected void emitPartition(int numLevels, int partition, int[] route, TaggedSegmentSink sink, GenerationBudget budget) {
+        Line edge = getBaseShape().getSharedLines()[partition];
+        Point first = edge.getFirstPoint();
+        Point second = edge.getSecondPoint();
+        emitFractalSegments(first.getX(), first.getY(), second.getX(), second.getY(), 0, 1, numLevels, partition,
+                            route, sink, budget);
+    }
+
+    /**
+     * Recursively streams the segments that replace one segment. Computes the same points,
+     * with the same arithmetic, as createFractalLines without allocating any of them.
+     * 
+     * @param firstX The x-coordinate of the segment's first endpoint.
+     * @param firstY The y-coordinate of the segment's first endpoint.
+     * @param fifthX The x-coordinate of the segment's second endpoint.
+     * @param fifthY The y-coordinate of the segment's second endpoint.
+     * @param firstDepth The level at which the first endpoint was created.
+     * @param level The level of the points this call creates.
+     * @param levelsLeft The number of recursive levels remaining.
+     * @param subtree The edge of the base shape the segment belongs to.
+     * @param route The piece to take at each level, starting with the pieces of level 1.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    private void emitFractalSegments(double firstX, double firstY, double fifthX, double fifthY, int firstDepth, int level,
+                                     int levelsLeft, int subtree, int[] route, TaggedSegmentSink sink, GenerationBudget budget) {
+        if (levelsLeft == 0) {
+            sink.add(firstX, firstY, fifthX, fifthY, firstDepth, subtree);
+            return;
+        }
+        budget.checkDeadline();
+
+        double secondX = firstX + (fifthX - firstX) / 3;
+        double secondY = firstY + (fifthY - firstY) / 3;
+        double fourthX = firstX + (fifthX - firstX) * 2 / 3;
+        double fourthY = firstY + (fifthY - firstY) * 2 / 3;
+
+        // Rotate the fourth point about the second one, as Point.rotateAbout does
+        double subX = fourthX - secondX;
+        double subY = fourthY - secondY;
+        double thirdX = ((subX * SPIKE_COS) - (subY * SPIKE_SIN)) + secondX;
+        double thirdY = ((subX * SPIKE_SIN) + (subY * SPIKE_COS)) + secondY;
+
+        // Only the first piece starts at an existing point; the other three start at new ones
+        if (onRoute(route, level - 1, 0)) {
+            emitFractalSegments(firstX, firstY, secondX, secondY, firstDepth, level + 1, levelsLeft - 1, subtree, route, sink, budget);
+        }
+        if (onRoute(route, level - 1, 1)) {
+            emitFractalSegments(secondX, secondY, thirdX, thirdY, level, level + 1, levelsLeft - 1, subtree, route, sink, budget);
+        }
+        if (onRoute(route, level - 1, 2)) {
+            emitFractalSegments(thirdX, thirdY, fourthX, fourthY, level, level + 1, levelsLeft - 1, subtree, route, sink, budget);
+        }
+        if (onRoute(route, level - 1, 3)) {
+            emitFractalSegments(fourthX, fourthY, fifthX, fifthY, level, level + 1, levelsLeft - 1, subtree, route, sink, budget);
+        }
     }
 
     /**
@@ -36,9 +224,10 @@ public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal
      * 
      * @param shapeLines The lines of the base shape to generate fractal lines from.
      * @param levelsLeft The number of recursive levels remaining.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal at the current level.
      */
-    private Line[] createFractalLines(Line[] shapeLines, int levelsLeft) {
+    private Line[] createFractalLines(Line[] shapeLines, int levelsLeft, GenerationBudget budget) {
         if (levelsLeft == 0) {
             return shapeLines;
         }
@@ -47,6 +236,7 @@ public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal
 
         // Iterate over each line to subdivide it into smaller segments
         for (Line line : shapeLines) { 
+            budget.checkDeadline();
             Point firstP = line.getFirstPoint();
             Point fifthP = line.getSecondPoint();
 
@@ -61,8 +251,14 @@ public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal
                 firstP.getY() + (fifthP.getY() - firstP.getY()) * 2 / 3
             );
 
-            Point thirdP = new Point(fourthP.getX(), fourthP.getY());
-            thirdP.rotateAbout(secondP, -(Math.PI / 3));
+            // Rotate the fourth point about the second one into a new point, as Point.rotateAbout
+            // does, without mutating a point that has been handed out
+            double subX = fourthP.getX() - secondP.getX();
+            double subY = fourthP.getY() - secondP.getY();
+            Point thirdP = new Point(
+                ((subX * SPIKE_COS) - (subY * SPIKE_SIN)) + secondP.getX(),
+                ((subX * SPIKE_SIN) + (subY * SPIKE_COS)) + secondP.getY()
+            );
 
             // Add the four segments of the transformed line
             levelLines.add(new Line(firstP, secondP));
@@ -72,6 +268,6 @@ public class SnowflakeFractal<T extends Polygon & Snowflakeable> extends Fractal
         }
 
         // Recursively generate lines for the next level
-        return createFractalLines(levelLines.toArray(new Line[levelLines.size()]), levelsLeft - 1);
+        return createFractalLines(levelLines.toArray(new Line[levelLines.size()]), levelsLeft - 1, budget);
     }
 }
@@ -0,0 +1,72 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Streams the segments of any fractal to a sink as they are generated, without
+ * retaining them. This is the engine behind drawing a fractal straight onto a canvas.
+ *
+ * @author Ethan Hunt
+ */
+public class StreamingEngine implements FractalEngine {
+
+  /** The approximate time to generate and hand over one segment, in nanoseconds */
+  private static final long NANOS_PER_SEGMENT = 20;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "streaming"
+   */
+  @Override
+  public String getName() {
+    return "streaming";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Streaming
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.STREAMING);
+  }
+
+  /**
+   * Supports every fractal streamed to a sink.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.CANVAS;
+  }
+
+  /**
+   * Estimates the cost from the number of segments the budget lets the fractal generate.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    return Fractal.saturatedMultiply(Math.min(fractal.estimateSegmentCount(), budget.getMaxSegments()), NANOS_PER_SEGMENT);
+  }
+
+  /**
+   * Streams the segments to the request's sink.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if every segment was streamed, false if the deadline passed first
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    return fractal.generate(request.sink(), budget);
+  }
+}
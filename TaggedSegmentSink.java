@@ -0,0 +1,26 @@
+/**
+ * Receives line segments one at a time as a fractal generates them, each tagged with
+ * where in the recursion it came from. The depth is the level at which the segment's
+ * first endpoint was created: 0 for a corner of the base shape, up to the number of
+ * levels for a point created by the last subdivision. The subtree is the top-level
+ * branch the segment belongs to: the edge of the base shape for a snowflake, and the
+ * piece of the first subdivision for the triangle and rectangle fractals (the edge of
+ * the base shape at level 0).
+ *
+ * @author Ethan Hunt
+ */
+@FunctionalInterface
+public interface TaggedSegmentSink {
+
+    /**
+     * Accepts one tagged segment.
+     *
+     * @param firstX The x-coordinate of the first endpoint.
+     * @param firstY The y-coordinate of the first endpoint.
+     * @param secondX The x-coordinate of the second endpoint.
+     * @param secondY The y-coordinate of the second endpoint.
+     * @param depth The level at which the first endpoint was created.
+     * @param subtree The top-level branch the segment belongs to.
+     */
+    void add(double firstX, double firstY, double secondX, double secondY, int depth, int subtree);
+}
@@ -0,0 +1,257 @@
+import java.util.Arrays;
+
+/**
+ * Sorts segments into square screen tiles so each tile can be rasterized on its own, with
+ * its pixels hot in cache. The generators emit segments in recursion order, which jumps
+ * all over the image; after binning, the segments of one tile are contiguous and the
+ * tiles are ordered along a Z-order (Morton) curve, so neighbouring tiles are processed
+ * close together in time.
+ *
+ * Binning takes two passes over the segments and allocates only primitive arrays: the
+ * first pass counts the segments whose bounding box touches each tile, a prefix sum turns
+ * the counts into the start of each tile's bin, and the second pass scatters the segment
+ * indices into their bins. Segments that miss the image entirely are dropped.
+ *
+ * @author Ethan Hunt
+ */
+public class TileBinner {
+
+  /** The default width and height of a tile in pixels */
+  public static final int DEFAULT_TILE_SIZE = 32;
+
+  // The binned segments and the viewport mapping them to pixels
+  private final SegmentBuffer segments;
+  private final Viewport view;
+
+  // The size of a tile and the number of tiles across and down the image
+  private final int tileSize;
+  private final int tilesX;
+  private final int tilesY;
+
+  // The tiles in Morton order, each as row * tilesX + column
+  private final int[] tileOrder;
+
+  // The start of each tile's bin in binnedSegments, by Morton rank, with the total at the end
+  private final int[] binStarts;
+
+  // The indices of the segments, grouped by tile in Morton order
+  private final int[] binnedSegments;
+
+  /**
+   * Constructs a TileBinner from its arrays.
+   *
+   * @param segments The binned segments
+   * @param view The mapping from world coordinates to pixels
+   * @param tileSize The width and height of a tile in pixels
+   * @param tileOrder The tiles in Morton order
+   * @param binStarts The start of each tile's bin, by Morton rank
+   * @param binnedSegments The segment indices grouped by tile
+   */
+  private TileBinner(SegmentBuffer segments, Viewport view, int tileSize,
+                     int[] tileOrder, int[] binStarts, int[] binnedSegments) {
+    this.segments = segments;
+    this.view = view;
+    this.tileSize = tileSize;
+    this.tilesX = (view.width() + tileSize - 1) / tileSize;
+    this.tilesY = (view.height() + tileSize - 1) / tileSize;
+    this.tileOrder = tileOrder;
+    this.binStarts = binStarts;
+    this.binnedSegments = binnedSegments;
+  }
+
+  /**
+   * Bins segments into the tiles of an image.
+   *
+   * @param segments The segments, in world coordinates
+   * @param view The mapping from world coordinates to pixels
+   * @param tileSize The width and height of a tile in pixels
+   * @return The binned segments
+   */
+  public static TileBinner bin(SegmentBuffer segments, Viewport view, int tileSize) {
+    int tilesX = (view.width() + tileSize - 1) / tileSize;
+    int tilesY = (view.height() + tileSize - 1) / tileSize;
+    int tileCount = tilesX * tilesY;
+    int[] tileOrder = mortonOrder(tilesX, tilesY);
+    int[] rankOfTile = new int[tileCount];
+    for (int rank = 0; rank < tileCount; rank++) {
+      rankOfTile[tileOrder[rank]] = rank;
+    }
+
+    // First pass: count the segments touching each tile
+    int[] binStarts = new int[tileCount + 1];
+    int[] range = new int[4];
+    for (int i = 0; i < segments.size(); i++) {
+      if (!tileRange(segments, i, view, tileSize, tilesX, tilesY, range)) {
+        continue;
+      }
+      for (int ty = range[1]; ty <= range[3]; ty++) {
+        for (int tx = range[0]; tx <= range[2]; tx++) {
+          binStarts[rankOfTile[ty * tilesX + tx] + 1]++;
+        }
+      }
+    }
+
+    // Prefix sum: each bin starts where the previous one ends
+    for (int rank = 0; rank < tileCount; rank++) {
+      binStarts[rank + 1] += binStarts[rank];
+    }
+
+    // Second pass: scatter the segment indices into their bins
+    int[] binnedSegments = new int[binStarts[tileCount]];
+    int[] next = new int[tileCount];
+    System.arraycopy(binStarts, 0, next, 0, tileCount);
+    for (int i = 0; i < segments.size(); i++) {
+      if (!tileRange(segments, i, view, tileSize, tilesX, tilesY, range)) {
+        continue;
+      }
+      for (int ty = range[1]; ty <= range[3]; ty++) {
+        for (int tx = range[0]; tx <= range[2]; tx++) {
+          binnedSegments[next[rankOfTile[ty * tilesX + tx]]++] = i;
+        }
+      }
+    }
+    return new TileBinner(segments, view, tileSize, tileOrder, binStarts, binnedSegments);
+  }
+
+  /**
+   * Returns the binned segments.
+   *
+   * @return The segments, in world coordinates
+   */
+  public SegmentBuffer getSegments() {
+    return segments;
+  }
+
+  /**
+   * Returns the mapping from world coordinates to pixels.
+   *
+   * @return The viewport
+   */
+  public Viewport getView() {
+    return view;
+  }
+
+  /**
+   * Returns the width and height of a tile.
+   *
+   * @return The tile size in pixels
+   */
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * Returns the number of tiles.
+   *
+   * @return The number of tiles covering the image
+   */
+  public int getTileCount() {
+    return tileOrder.length;
+  }
+
+  /**
+   * Returns the left pixel column of a tile.
+   *
+   * @param rank The Morton rank of the tile
+   * @return The x-coordinate of the tile's left edge in pixels
+   */
+  public int getTileLeft(int rank) {
+    return (tileOrder[rank] % tilesX) * tileSize;
+  }
+
+  /**
+   * Returns the top pixel row of a tile.
+   *
+   * @param rank The Morton rank of the tile
+   * @return The y-coordinate of the tile's top edge in pixels
+   */
+  public int getTileTop(int rank) {
+    return (tileOrder[rank] / tilesX) * tileSize;
+  }
+
+  /**
+   * Returns the position of a tile's first segment in the binned order.
+   *
+   * @param rank The Morton rank of the tile
+   * @return The start of the tile's bin
+   */
+  public int getBinStart(int rank) {
+    return binStarts[rank];
+  }
+
+  /**
+   * Returns the position after a tile's last segment in the binned order.
+   *
+   * @param rank The Morton rank of the tile
+   * @return The end of the tile's bin
+   */
+  public int getBinEnd(int rank) {
+    return binStarts[rank + 1];
+  }
+
+  /**
+   * Returns the segment at a position in the binned order.
+   *
+   * @param position The position, from a tile's bin start to its bin end
+   * @return The index of the segment in the segment buffer
+   */
+  public int getBinnedSegment(int position) {
+    return binnedSegments[position];
+  }
+
+  /**
+   * Returns the tiles of a grid ordered along a Z-order curve.
+   *
+   * @param tilesX The number of tiles across
+   * @param tilesY The number of tiles down
+   * @return The tiles, each as row * tilesX + column, in Morton order
+   */
+  private static int[] mortonOrder(int tilesX, int tilesY) {
+    // Sort the Morton codes with the tile in the low bits, then keep the tiles
+    long[] keys = new long[tilesX * tilesY];
+    for (int ty = 0; ty < tilesY; ty++) {
+      for (int tx = 0; tx < tilesX; tx++) {
+        int tile = ty * tilesX + tx;
+        keys[tile] = (SegmentIndex.morton(tx, ty) << 32) | tile;
+      }
+    }
+    Arrays.sort(keys);
+    int[] order = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      order[i] = (int) keys[i];
+    }
+    return order;
+  }
+
+  /**
+   * Finds the tiles covered by a segment's bounding box in pixels.
+   *
+   * @param segments The segments
+   * @param i The index of the segment
+   * @param view The mapping from world coordinates to pixels
+   * @param tileSize The width and height of a tile in pixels
+   * @param tilesX The number of tiles across
+   * @param tilesY The number of tiles down
+   * @param range Receives the first column, first row, last column and last row of tiles
+   * @return False if the segment misses the image
+   */
+  private static boolean tileRange(SegmentBuffer segments, int i, Viewport view, int tileSize,
+                                   int tilesX, int tilesY, int[] range) {
+    double x1 = view.toPixelX(segments.getFirstX(i));
+    double y1 = view.toPixelY(segments.getFirstY(i));
+    double x2 = view.toPixelX(segments.getSecondX(i));
+    double y2 = view.toPixelY(segments.getSecondY(i));
+    double minX = Math.min(x1, x2);
+    double maxX = Math.max(x1, x2);
+    double minY = Math.min(y1, y2);
+    double maxY = Math.max(y1, y2);
+    if (maxX < 0 || maxY < 0 || minX >= view.width() || minY >= view.height() || Double.isNaN(minX + minY)) {
+      return false;
+    }
+    range[0] = Math.max(0, (int) Math.floor(minX) / tileSize);
+    range[1] = Math.max(0, (int) Math.floor(minY) / tileSize);
+    range[2] = Math.min(tilesX - 1, (int) Math.floor(Math.min(maxX, view.width() - 1)) / tileSize);
+    range[3] = Math.min(tilesY - 1, (int) Math.floor(Math.min(maxY, view.height() - 1)) / tileSize);
+    return true;
+  }
+}
@@ -0,0 +1,90 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Draws the outline of any fractal into a framebuffer by generating its segments,
+ * binning them into tiles and rasterizing the tiles in parallel. The cost grows with
+ * the number of segments, so it suits shallow fractals best.
+ *
+ * @author Ethan Hunt
+ */
+public class TileRasterEngine implements FractalEngine {
+
+  /** The approximate time to generate, retain and bin one segment, in nanoseconds */
+  private static final long NANOS_PER_SEGMENT = 80;
+
+  /** The approximate time to rasterize one segment on one thread, in nanoseconds */
+  private static final long NANOS_PER_RASTERIZED_SEGMENT = 100;
+
+  /** The number of bytes SegmentBuffer keeps per segment */
+  private static final long BYTES_PER_SEGMENT = 32;
+
+  /**
+   * Returns the name of the engine.
+   *
+   * @return "tile-raster"
+   */
+  @Override
+  public String getName() {
+    return "tile-raster";
+  }
+
+  /**
+   * Returns what the engine can do.
+   *
+   * @return Parallel
+   */
+  @Override
+  public Set<Capability> getCapabilities() {
+    return EnumSet.of(Capability.PARALLEL);
+  }
+
+  /**
+   * Supports every fractal drawn into a framebuffer.
+   *
+   * @param fractal The fractal
+   * @param target The kind of target
+   * @return True if the engine supports the pair
+   */
+  @Override
+  public boolean supports(Fractal<?> fractal, Target target) {
+    return target == Target.RASTER;
+  }
+
+  /**
+   * Estimates the cost from the number of segments, which are all retained while they are binned.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return The estimated time in nanoseconds, or Long.MAX_VALUE if the segments would not fit the byte limit
+   */
+  @Override
+  public long estimateCost(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    long segments = Math.min(fractal.estimateSegmentCount(), budget.getMaxSegments());
+    if (segments > Integer.MAX_VALUE / 4 || segments * BYTES_PER_SEGMENT > budget.getMaxBytes()) {
+      return Long.MAX_VALUE;
+    }
+    int threads = Runtime.getRuntime().availableProcessors();
+    return segments * NANOS_PER_SEGMENT + segments * NANOS_PER_RASTERIZED_SEGMENT / threads;
+  }
+
+  /**
+   * Generates the segments, then bins and rasterizes them into the request's framebuffer.
+   *
+   * @param fractal The fractal
+   * @param request The target of the render
+   * @param budget The limits the render has to stay within
+   * @return True if the fractal was drawn, false if the deadline passed while generating
+   */
+  @Override
+  public boolean render(Fractal<?> fractal, RenderRequest request, GenerationBudget budget) {
+    SegmentBuffer segments = new SegmentBuffer();
+    if (!fractal.generate(segments, budget)) {
+      return false;
+    }
+    TileRasterizer.rasterize(TileBinner.bin(segments, request.view(), TileBinner.DEFAULT_TILE_SIZE),
+                             request.pixels(), request.argb());
+    return true;
+  }
+}
@@ -0,0 +1,153 @@
+import java.util.stream.IntStream;
+
+/**
+ * Draws binned segments into a framebuffer one tile at a time, with the tiles spread over
+ * several threads. Each tile only writes its own pixels, so tiles need no locking, and
+ * the pixels a tile writes stay in cache while all of its segments are drawn. Segments
+ * are drawn one pixel wide without anti-aliasing: every column (or row, for steep
+ * segments) the segment crosses gets the pixel its center line passes through.
+ *
+ * @author Ethan Hunt
+ */
+public class TileRasterizer {
+
+  /**
+   * Draws every binned segment into a framebuffer.
+   *
+   * @param bins The segments binned into the tiles of the image
+   * @param pixels The framebuffer, width * height ARGB pixels in row order
+   * @param argb The color to draw with as ARGB
+   */
+  public static void rasterize(TileBinner bins, int[] pixels, int argb) {
+    IntStream.range(0, bins.getTileCount()).parallel().forEach(rank -> rasterizeTile(bins, rank, pixels, argb));
+  }
+
+  /**
+   * Draws the segments of one tile, clipped to the tile.
+   *
+   * @param bins The binned segments
+   * @param rank The Morton rank of the tile
+   * @param pixels The framebuffer
+   * @param argb The color to draw with as ARGB
+   */
+  private static void rasterizeTile(TileBinner bins, int rank, int[] pixels, int argb) {
+    Viewport view = bins.getView();
+    SegmentBuffer segments = bins.getSegments();
+    int left = bins.getTileLeft(rank);
+    int top = bins.getTileTop(rank);
+    int right = Math.min(left + bins.getTileSize(), view.width());
+    int bottom = Math.min(top + bins.getTileSize(), view.height());
+
+    for (int position = bins.getBinStart(rank); position < bins.getBinEnd(rank); position++) {
+      int i = bins.getBinnedSegment(position);
+      double x1 = view.toPixelX(segments.getFirstX(i));
+      double y1 = view.toPixelY(segments.getFirstY(i));
+      double x2 = view.toPixelX(segments.getSecondX(i));
+      double y2 = view.toPixelY(segments.getSecondY(i));
+      if (Math.abs(x2 - x1) >= Math.abs(y2 - y1)) {
+        drawSpan(x1, y1, x2, y2, left, right, top, bottom, pixels, view.width(), argb, false);
+      } else {
+        drawSpan(y1, x1, y2, x2, top, bottom, left, right, pixels, view.width(), argb, true);
+      }
+    }
+  }
+
+  /**
+   * Draws a segment along its major axis, one pixel per step, within the tile. The axes
+   * are swapped for steep segments so the same loop serves both.
+   *
+   * @param major1 The first endpoint along the major axis
+   * @param minor1 The first endpoint along the minor axis
+   * @param major2 The second endpoint along the major axis
+   * @param minor2 The second endpoint along the minor axis
+   * @param majorFrom The first pixel of the tile along the major axis
+   * @param majorTo The pixel after the tile along the major axis
+   * @param minorFrom The first pixel of the tile along the minor axis
+   * @param minorTo The pixel after the tile along the minor axis
+   * @param pixels The framebuffer
+   * @param width The width of the framebuffer
+   * @param argb The color to draw with as ARGB
+   * @param steep True if the major axis is y
+   */
+  private static void drawSpan(double major1, double minor1, double major2, double minor2,
+                               int majorFrom, int majorTo, int minorFrom, int minorTo,
+                               int[] pixels, int width, int argb, boolean steep) {
+    if (major1 > major2) {
+      double swap = major1;
+      major1 = major2;
+      major2 = swap;
+      swap = minor1;
+      minor1 = minor2;
+      minor2 = swap;
+    }
+    double slope = major2 > major1 ? (minor2 - minor1) / (major2 - major1) : 0;
+    int first = Math.max(majorFrom, (int) Math.floor(major1));
+    int last = Math.min(majorTo - 1, (int) Math.floor(major2));
+    for (int major = first; major <= last; major++) {
+      // Sample at the pixel center, kept within the segment at its ends
+      double at = Math.min(Math.max(major + 0.5, major1), major2);
+      int minor = (int) Math.floor(minor1 + (at - major1) * slope);
+      if (minor >= minorFrom && minor < minorTo) {
+        pixels[steep ? major * width + minor : minor * width + major] = argb;
+      }
+    }
+  }
+
+  /**
+   * Widens everything drawn in a framebuffer to a given line width by stamping a square
+   * brush of that width on every drawn pixel. The brush is applied to the rows and then
+   * to the columns, each line on its own and in parallel, so the cost does not grow with
+   * the width.
+   *
+   * @param pixels The framebuffer, width * height ARGB pixels in row order; pixels that are 0 are empty
+   * @param width The width of the framebuffer
+   * @param height The height of the framebuffer
+   * @param lineWidth The line width in pixels; nothing changes for 1 or less
+   * @param argb The color to draw with as ARGB
+   */
+  public static void widen(int[] pixels, int width, int height, int lineWidth, int argb) {
+    if (lineWidth <= 1) {
+      return;
+    }
+    int before = (lineWidth - 1) / 2;
+    int after = lineWidth / 2;
+    IntStream.range(0, height).parallel().forEach(y -> widenLine(pixels, y * width, 1, width, before, after, argb));
+    IntStream.range(0, width).parallel().forEach(x -> widenLine(pixels, x, width, height, before, after, argb));
+  }
+
+  /**
+   * Widens one row or column of a framebuffer: a pixel is drawn if a drawn pixel lies
+   * within the brush around it. The drawn pixels are read before any is written.
+   *
+   * @param pixels The framebuffer
+   * @param start The index of the first pixel of the line
+   * @param stride The distance between neighboring pixels of the line
+   * @param length The number of pixels in the line
+   * @param before How far the brush reaches before a drawn pixel
+   * @param after How far the brush reaches after a drawn pixel
+   * @param argb The color to draw with as ARGB
+   */
+  private static void widenLine(int[] pixels, int start, int stride, int length, int before, int after, int argb) {
+    boolean[] drawn = new boolean[length];
+    for (int i = 0; i < length; i++) {
+      drawn[i] = pixels[start + i * stride] != 0;
+    }
+
+    // The number of drawn pixels from i - after to i + before, updated as i moves along
+    int count = 0;
+    for (int j = 0; j <= Math.min(before, length - 1); j++) {
+      count += drawn[j] ? 1 : 0;
+    }
+    for (int i = 0; i < length; i++) {
+      if (count > 0) {
+        pixels[start + i * stride] = argb;
+      }
+      if (i + 1 + before < length && drawn[i + 1 + before]) {
+        count++;
+      }
+      if (i - after >= 0 && drawn[i - after]) {
+        count--;
+      }
+    }
+  }
+}
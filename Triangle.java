@@ -10,9 +10,6 @@
  */
 public class Triangle extends Polygon implements TriangleShape{
 
-  /** The calculated center (centroid) of the triangle */
-  private Point center = new Point(0,0);
-  
   /** The first vertex of the triangle */
   private Point p1;
   
@@ -39,14 +36,13 @@ public class Triangle extends Polygon implements TriangleShape{
   /**
    * Calculates and returns the centroid of the triangle, which serves as its center.
    * The centroid is calculated as the average of the x and y coordinates of the vertices.
+   * A new Point is returned on every call, so reading the center never writes to the triangle.
    *
    * @return The center (centroid) of the triangle
    */
   @Override
   public Point getCenter() {
-    this.center.setX((p1.getX() + p2.getX() + p3.getX()) / 3);
-    this.center.setY((p1.getY() + p2.getY() + p3.getY()) / 3);
-    return this.center;
+    return new Point((p1.getX() + p2.getX() + p3.getX()) / 3, (p1.getY() + p2.getY() + p3.getY()) / 3);
   }
 
   /**
@@ -58,16 +54,17 @@ public class Triangle extends Polygon implements TriangleShape{
    */
   @Override
   public void setCenter(Point newCenter) {
-    double xDiff = newCenter.getX() - this.getCenter().getX();
-    double yDiff = newCenter.getY() - this.getCenter().getY();
+    Point oldCenter = this.getCenter();
+    double xDiff = newCenter.getX() - oldCenter.getX();
+    double yDiff = newCenter.getY() - oldCenter.getY();
     
-    // Translate each vertex by the difference between the old and new center
+    // Translate each vertex by the difference between the old and new center. The vertices
+    // may be shared with other triangles, so new points are created rather than moved in place
     this.p1 = new Point(this.p1.getX() + xDiff, this.p1.getY() + yDiff);
     this.p2 = new Point(this.p2.getX() + xDiff, this.p2.getY() + yDiff);
     this.p3 = new Point(this.p3.getX() + xDiff, this.p3.getY() + yDiff);
 
     // Update the vertices in the Polygon superclass
     super.setPoints(new Point[] {p1, p2, p3});
-    this.center = newCenter;
   }
 }
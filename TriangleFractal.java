@@ -21,14 +21,172 @@ public class TriangleFractal<T extends Polygon & TriangleShape> extends Fractal<
     }
     
     /**
-     * Returns an array of lines that form the fractal.
+     * Returns the number of segments at a given level: 3^n triangles of 3 edges each.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of segments, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long estimateSegmentCount(int numLevels) {
+        return saturatedMultiply(3, saturatedPower(3, numLevels));
+    }
+
+    /**
+     * Returns the bounding box, which is the base triangle's at every level: every
+     * triangle has two corners of the base triangle and a center inside it.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The bounding box.
+     */
+    @Override
+    public Bounds boundingBox(int numLevels) {
+        return Bounds.of(this.getBaseShape().getPoints());
+    }
+
+    /**
+     * Returns the perimeter, which is the base triangle's at every level: the three
+     * triangles around each center exactly cover the base triangle.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The perimeter.
+     */
+    @Override
+    public double perimeter(int numLevels) {
+        return basePerimeter();
+    }
+
+    /**
+     * Returns the number of vertices at a given level: the three corners of the base
+     * triangle, plus one center shared by each group of three sibling triangles.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of vertices, or Long.MAX_VALUE if it does not fit in a long.
+     */
+    @Override
+    public long vertexCount(int numLevels) {
+        if (numLevels == 0) {
+            return 3;
+        }
+        long centers = saturatedPower(3, numLevels - 1);
+        return centers == Long.MAX_VALUE ? Long.MAX_VALUE : centers + 3;
+    }
+
+    /**
+     * Creates an array of lines that form the fractal.
      * Currently only supports the Triangle shape.
      * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal structure.
      */
     @Override
-    public Line[] getLines() {
-        return createFractalLinesForTriangle(this.getBaseShape(), getNumLevels());
+    protected Line[] createLines(int numLevels, GenerationBudget budget) {
+        return createFractalLinesForTriangle(this.getBaseShape(), numLevels, budget);
+    }
+
+    /**
+     * Returns the number of partitions at the top of the recursion: each edge of the base
+     * triangle is one at level 0, and each triangle of the first subdivision is one at deeper levels.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return 3, at every level.
+     */
+    @Override
+    protected int topPartitionCount(int numLevels) {
+        return 3;
+    }
+
+    /**
+     * Returns the number of triangles each triangle is split into.
+     * 
+     * @return 3.
+     */
+    @Override
+    protected int partitionBranching() {
+        return 3;
+    }
+
+    /**
+     * Returns the deepest split depth: the first subdivision, then each level of triangles below it.
+     * 
+     * @param numLevels The number of recursive levels.
+     * @return The number of levels, or 1 at level 0.
+     */
+    @Override
+    protected int maxPartitionDepth(int numLevels) {
+        return Math.max(1, numLevels);
+    }
+
+    /**
+     * Streams the tagged segments of one partition, one triangle at a time. Each side of the
+     * first subdivision is its own subtree.
+     * 
+     * @param numLevels The number of recursive levels to generate.
+     * @param partition The edge of the base triangle at level 0, or the side of the first subdivision.
+     * @param route The triangle to take at each level below the first subdivision.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    @Override
+    protected void emitPartition(int numLevels, int partition, int[] route, TaggedSegmentSink sink, GenerationBudget budget) {
+        if (numLevels == 0) {
+            Line edge = this.getBaseShape().getLines()[partition];
+            sink.add(edge.getFirstPoint().getX(), edge.getFirstPoint().getY(),
+                     edge.getSecondPoint().getX(), edge.getSecondPoint().getY(), 0, partition);
+            return;
+        }
+
+        Point[] endPoints = this.getBaseShape().getPoints();
+        double[] endXs = {endPoints[0].getX(), endPoints[1].getX(), endPoints[2].getX()};
+        double[] endYs = {endPoints[0].getY(), endPoints[1].getY(), endPoints[2].getY()};
+        Point center = this.getBaseShape().getCenter();
+        emitFractalSegments(center.getX(), center.getY(), 1, partition, endXs, endYs, numLevels - 1, partition,
+                            route, sink, budget);
+    }
+
+    /**
+     * Recursively streams the edges of the triangle formed by a center point and one side of the
+     * base triangle. Computes the same points, with the same arithmetic, as createFractalLinesForTriangle
+     * without allocating any triangles.
+     * 
+     * @param centerX The x-coordinate of the triangle's first vertex.
+     * @param centerY The y-coordinate of the triangle's first vertex.
+     * @param centerDepth The level at which the triangle's first vertex was created.
+     * @param side The side of the base triangle forming the other two vertices.
+     * @param endXs The x-coordinates of the base triangle's vertices.
+     * @param endYs The y-coordinates of the base triangle's vertices.
+     * @param levelsLeft The number of recursive levels remaining.
+     * @param subtree The side of the first subdivision the triangle belongs to.
+     * @param route The triangle to take at each level, starting with the triangles around the center of depth 2.
+     * @param sink The sink receiving each tagged segment.
+     * @param budget The budget whose deadline the generation has to respect.
+     */
+    private void emitFractalSegments(double centerX, double centerY, int centerDepth, int side, double[] endXs, double[] endYs,
+                                     int levelsLeft, int subtree, int[] route, TaggedSegmentSink sink, GenerationBudget budget) {
+        double firstX = endXs[side];
+        double firstY = endYs[side];
+        double secondX = endXs[(side + 1) % 3];
+        double secondY = endYs[(side + 1) % 3];
+
+        if (levelsLeft == 0) {
+            // The other two vertices are always corners of the base triangle
+            sink.add(centerX, centerY, firstX, firstY, centerDepth, subtree);
+            sink.add(firstX, firstY, secondX, secondY, 0, subtree);
+            sink.add(secondX, secondY, centerX, centerY, 0, subtree);
+            return;
+        }
+        budget.checkDeadline();
+
+        // The centroid of this triangle, as Triangle.getCenter computes it
+        double newCenterX = (centerX + firstX + secondX) / 3;
+        double newCenterY = (centerY + firstY + secondY) / 3;
+
+        for (int newSide = 0; newSide < 3; newSide++) {
+            if (onRoute(route, centerDepth - 1, newSide)) {
+                emitFractalSegments(newCenterX, newCenterY, centerDepth + 1, newSide, endXs, endYs, levelsLeft - 1, subtree,
+                                    route, sink, budget);
+            }
+        }
     }
 
     /**
@@ -37,12 +195,14 @@ public class TriangleFractal<T extends Polygon & TriangleShape> extends Fractal<
      * 
      * @param t The base polygon to generate lines from.
      * @param levelsLeft The number of recursive levels remaining.
+     * @param budget The budget whose deadline the generation has to respect.
      * @return An array of lines representing the fractal at the current level.
      */
-    private Line[] createFractalLinesForTriangle(Polygon t, int levelsLeft) {
+    private Line[] createFractalLinesForTriangle(Polygon t, int levelsLeft, GenerationBudget budget) {
         if (levelsLeft == 0) {
             return t.getLines();
         }
+        budget.checkDeadline();
 
         // Get the vertices of the triangle
         Point[] endPoints = this.getBaseShape().getPoints();
@@ -60,13 +220,13 @@ public class TriangleFractal<T extends Polygon & TriangleShape> extends Fractal<
         ArrayList<Line> levelLines = new ArrayList<Line>();
 
         // Recursively generate lines for each smaller triangle
-        for (Line line : createFractalLinesForTriangle(firstT, levelsLeft - 1)) {
+        for (Line line : createFractalLinesForTriangle(firstT, levelsLeft - 1, budget)) {
             levelLines.add(line);
         }
-        for (Line line : createFractalLinesForTriangle(secondT, levelsLeft - 1)) {
+        for (Line line : createFractalLinesForTriangle(secondT, levelsLeft - 1, budget)) {
             levelLines.add(line);
         }
-        for (Line line : createFractalLinesForTriangle(thirdT, levelsLeft - 1)) {
+        for (Line line : createFractalLinesForTriangle(thirdT, levelsLeft - 1, budget)) {
             levelLines.add(line);
         }
 
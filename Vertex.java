@@ -0,0 +1,81 @@
+/**
+ * Represents an immutable point in 2D space. Unlike Point, a Vertex never changes
+ * once created: every transformation returns a new Vertex. Shapes and generators work
+ * on Points; Vertices are the read-only view they hand out, through
+ * Polygon.getVertices() and Fractal.getSegments(), so the result can be shared between
+ * threads without copying.
+ * 
+ * @param x The x-coordinate of the vertex
+ * @param y The y-coordinate of the vertex
+ * @author Ethan Hunt
+ */
+public record Vertex(double x, double y) {
+
+  /**
+   * Creates a Vertex with the current coordinates of a Point.
+   * 
+   * @param p The point to copy
+   * @return A vertex at the same position as the point
+   */
+  public static Vertex of(Point p) {
+    return new Vertex(p.getX(), p.getY());
+  }
+
+  /**
+   * Returns a Vertex with the same y-coordinate and a new x-coordinate.
+   * 
+   * @param x The new x-coordinate
+   * @return The derived vertex
+   */
+  public Vertex withX(double x) {
+    return new Vertex(x, this.y);
+  }
+
+  /**
+   * Returns a Vertex with the same x-coordinate and a new y-coordinate.
+   * 
+   * @param y The new y-coordinate
+   * @return The derived vertex
+   */
+  public Vertex withY(double y) {
+    return new Vertex(this.x, y);
+  }
+
+  /**
+   * Returns this Vertex moved by an offset.
+   * 
+   * @param xDiff The offset along the x axis
+   * @param yDiff The offset along the y axis
+   * @return The moved vertex
+   */
+  public Vertex translate(double xDiff, double yDiff) {
+    return new Vertex(this.x + xDiff, this.y + yDiff);
+  }
+
+  /**
+   * Returns this Vertex rotated about another Vertex by an angle in radians.
+   * Uses the same formula as Point.rotateAbout, so both give identical coordinates.
+   * 
+   * @param center The vertex around which this vertex is rotated
+   * @param angle The angle in radians to rotate by
+   * @return The rotated vertex
+   */
+  public Vertex rotateAbout(Vertex center, double angle) {
+    double subX = this.x - center.x;
+    double subY = this.y - center.y;
+    
+    double rotatedX = (subX * Math.cos(angle)) - (subY * Math.sin(angle));
+    double rotatedY = (subX * Math.sin(angle)) + (subY * Math.cos(angle));
+    
+    return new Vertex(rotatedX + center.x, rotatedY + center.y);
+  }
+
+  /**
+   * Returns a new mutable Point at the position of this Vertex.
+   * 
+   * @return A point with the same coordinates
+   */
+  public Point toPoint() {
+    return new Point(this.x, this.y);
+  }
+}
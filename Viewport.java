@@ -0,0 +1,73 @@
+/**
+ * Represents the mapping between world coordinates, where fractals are generated
+ * with y pointing up, and the pixels of a raster image, where y points down.
+ * The world point (centerX, centerY) lands in the middle of the image, and one
+ * world unit spans scale pixels.
+ * 
+ * @param width The width of the image in pixels
+ * @param height The height of the image in pixels
+ * @param centerX The x-coordinate of the world point at the middle of the image
+ * @param centerY The y-coordinate of the world point at the middle of the image
+ * @param scale The number of pixels per world unit
+ * @author Ethan Hunt
+ */
+public record Viewport(int width, int height, double centerX, double centerY, double scale) {
+
+  /**
+   * Returns the viewport that centers bounds in an image and scales them as large as fits
+   * inside a margin. Bounds of zero size keep a scale of 1.
+   * 
+   * @param bounds The bounds to fit
+   * @param width The width of the image in pixels
+   * @param height The height of the image in pixels
+   * @param margin The number of pixels to keep free on every side
+   * @return The viewport
+   */
+  public static Viewport fit(Bounds bounds, int width, int height, double margin) {
+    double scale = Math.min((width - 2 * margin) / bounds.width(), (height - 2 * margin) / bounds.height());
+    if (!(scale > 0) || Double.isInfinite(scale)) {
+      scale = 1;
+    }
+    return new Viewport(width, height, bounds.centerX(), bounds.centerY(), scale);
+  }
+
+  /**
+   * Returns the horizontal pixel position of a world x-coordinate.
+   * 
+   * @param x The world x-coordinate
+   * @return The pixel x-coordinate, which may lie outside the image
+   */
+  public double toPixelX(double x) {
+    return (x - centerX) * scale + width / 2.0;
+  }
+
+  /**
+   * Returns the vertical pixel position of a world y-coordinate.
+   * 
+   * @param y The world y-coordinate
+   * @return The pixel y-coordinate, which may lie outside the image
+   */
+  public double toPixelY(double y) {
+    return height / 2.0 - (y - centerY) * scale;
+  }
+
+  /**
+   * Returns the world x-coordinate of a horizontal pixel position.
+   * 
+   * @param pixelX The pixel x-coordinate
+   * @return The world x-coordinate
+   */
+  public double toWorldX(double pixelX) {
+    return (pixelX - width / 2.0) / scale + centerX;
+  }
+
+  /**
+   * Returns the world y-coordinate of a vertical pixel position.
+   * 
+   * @param pixelY The pixel y-coordinate
+   * @return The world y-coordinate
+   */
+  public double toWorldY(double pixelY) {
+    return (height / 2.0 - pixelY) / scale + centerY;
+  }
+}